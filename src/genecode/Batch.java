@@ -0,0 +1,108 @@
+package genecode;
+
+import genecode.Context.Identifier;
+import genecode.function.Column;
+
+/**
+ * A batch of {@link Context}s, over which a {@link Program} may be
+ * evaluated all at once, via {@link Program#evaluate(Batch)}.
+ *
+ * <p>Values are accessed from the batch a column at a time, rather
+ * than a context at a time. Implementations which can supply those
+ * columns directly should override {@link #access(Identifier)}.
+ *
+ * <p>Implementations may also keep hold of the columns which programs
+ * compute, by overriding {@link #getCached(Object)} and {@link
+ * #putCached(Object,Column)}, so that other programs which compute
+ * the same values over the same contexts don't have to do so again.
+ *
+ * <p>Instances are not thread-safe.
+ */
+public abstract class Batch
+{
+    /**
+     * The number of contexts in this batch.
+     *
+     * @return The number of contexts, and rows.
+     */
+    public abstract int size();
+
+    /**
+     * Get the context for a given row of the batch. The returned
+     * instance may be reused by subsequent calls to this method.
+     *
+     * @param row The row to get the context for.
+     *
+     * @return The context.
+     *
+     * @throws IndexOutOfBoundsException If the given row was not in
+     *                                   bounds.
+     */
+    public abstract Context get(final int row)
+        throws IndexOutOfBoundsException;
+
+    /**
+     * Access the values for a given {@link Identifier} from every
+     * context in the batch. The returned column must not be modified.
+     *
+     * @param id The identifier to get the values for.
+     *
+     * @return The column of values, one per context.
+     */
+    public Column access(final Identifier<?> id)
+    {
+        final int size = size();
+        final Column column = Column.create(id.getValueType(), size);
+        for (int row=0; row < size; row++) {
+            column.set(row, get(row).access(id));
+        }
+        return column;
+    }
+
+    /**
+     * Access the values for a given {@link Identifier} from every
+     * context in the batch, where the identifier may have been bound to
+     * a slot; see {@link Context#access(int,Identifier)}. By default
+     * this just defers to {@link #access(Identifier)}.
+     *
+     * @param slot The slot which the identifier was bound to, or {@code
+     *             -1} if it was not.
+     * @param id   The identifier to get the values for.
+     *
+     * @return The column of values, one per context.
+     */
+    public Column access(final int slot, final Identifier<?> id)
+    {
+        return access(id);
+    }
+
+    /**
+     * Get a column which was previously given to {@link
+     * #putCached(Object,Column)}, for a batch over the same contexts as
+     * this one. By default nothing is cached.
+     *
+     * @param key The key which the column was cached under.
+     *
+     * @return The column, or {@code null} if none was cached. This must
+     *         not be modified.
+     */
+    public Column getCached(final Object key)
+    {
+        return null;
+    }
+
+    /**
+     * Offer up a column for caching. Two keys are equal only when their
+     * columns hold the same values, when computed over the same
+     * contexts. Implementations are free to ignore any column which
+     * they are given.
+     *
+     * @param key    The key to cache the column under.
+     * @param column The column to cache. This will not be modified
+     *               subsequently.
+     */
+    public void putCached(final Object key, final Column column)
+    {
+        // Nothing by default
+    }
+}
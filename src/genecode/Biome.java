@@ -5,15 +5,17 @@ import genecode.gene.Gene;
 import java.io.Serializable;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.logging.Logger;
-import java.util.function.Function;
+import java.util.function.IntConsumer;
 import java.util.function.Supplier;
 
 /**
@@ -174,24 +176,32 @@ public class Biome
      *                     genome instance.
      */
     public void nextGeneration(final Genome.Health genomeHealth)
+    {
+        nextGeneration(genomeHealth, null);
+    }
+
+    /**
+     * Create the next generation within this biome, using the given pool
+     * to create the offspring in parallel. The health interface, and the
+     * maker, must be thread-safe if a pool is given. The order of the
+     * next generation does not depend on how the work was scheduled.
+     *
+     * @param genomeHealth How to determine the health of a particular
+     *                     genome instance.
+     * @param pool         The pool to do the work on, or {@code null} to
+     *                     do it all in the calling thread.
+     */
+    public void nextGeneration(final Genome.Health genomeHealth,
+                               final ForkJoinPool  pool)
     {
         // Do nothing if we have no genomes
         if (myGenomes.size() == 0) {
             return;
         }
 
-        // First, sort the genomes we have. We invert the sort so that the
-        // healthiest ones are at the front. Precompute all the healths to speed
-        // things up.
-        final Map<Genome,Double> healths = new HashMap<>();
-        for (int i=0; i < myGenomes.size(); i++) {
-            final Genome genome = myGenomes.get(i);
-            healths.put(genome, genomeHealth.healthOf(genome));
-        }
-        Collections.sort(
-            myGenomes,
-            (a, b) -> -compare(a, b, genome -> healths.get(genome))
-        );
+        // First, sort the genomes we have so that the healthiest ones are
+        // at the front
+        rank(genomeHealth);
 
         // How much of the current generation to copy so that we have
         // space for the next generation
@@ -221,7 +231,7 @@ public class Biome
 
         // Shuffle the new genomes so that we have some randomness in the
         // breeding that we do below
-        Collections.shuffle(genomes);
+        Collections.shuffle(genomes, ThreadLocalRandom.current());
 
         // How many genomes to create via reproduction. The (mySize-copyTo)
         // value is how much space we have left in the biome.
@@ -232,25 +242,26 @@ public class Biome
         // asexually spawning
         final int breedTo = (int)(genomes.size() * myBreedFactor);
 
-        // Now we can breed
-        int bred = 0;
+        // Now we can breed. We choose the parents, and their partners,
+        // here and then do the costly mutating and breeding below. The
+        // copies are also taken here since copying a genome counts as
+        // modifying it.
+        final int          first    = genomes.size();
+        final List<Genome> partners = new ArrayList<>();
         for (int i=0;
-             i < copyTo && bred < reproductionCount;
+             i < copyTo && partners.size() < reproductionCount;
              i++)
         {
             // See if this one may breed. We only let it do so if it was able to
             // apply itself to "enough" contexts. (This compares with a virus
             // finding a host cell within which it may reproduce.)
             final double coverage = genomeHealth.coverage(genomes.get(i));
-            if (coverage < Math.random()) {
+            if (coverage < ThreadLocalRandom.current().nextDouble()) {
                 continue;
             }
 
             // Take a copy of a genome
-            final Genome genome = genomes.get(i).clone();
-
-            // Mutate it a bit
-            genome.mutate();
+            genomes.add(genomes.get(i).clone());
 
             // Possibly breed a bit
             if (i < breedTo) {
@@ -262,55 +273,187 @@ public class Biome
                         0.0,
                         Math.min(
                             1.0,
-                            Math.pow(Math.random(), 1.0 - myBreedSkew)
+                            Math.pow(ThreadLocalRandom.current().nextDouble(),
+                                     1.0 - myBreedSkew)
                         )
                     );
-                final Genome partner =
-                    myGenomes.get((int)(myGenomes.size() * fraction));
-
-                // And breed with it
-                genome.copyFrom(partner);
+                partners.add(myGenomes.get((int)(myGenomes.size() * fraction)));
+            }
+            else {
+                partners.add(null);
             }
-
-            // Finally add it to the mix and remember that we bred one
-            genomes.add(genome);
-            bred++;
         }
 
-        // Now pad with generated genomes
+        // Leave room for the generated genomes
+        final int bredTo = genomes.size();
         while (genomes.size() < mySize) {
-            genomes.add(myMaker.get());
+            genomes.add(null);
         }
-        
+
+        // Mutate each copy a bit, and possibly breed it, and then pad with
+        // generated genomes. Each of these only touches its own genome,
+        // and its own place in the list, so they may be done in parallel.
+        forEach(
+            pool,
+            first,
+            genomes.size(),
+            i -> {
+                if (i < bredTo) {
+                    final Genome genome  = genomes.get(i);
+                    final Genome partner = partners.get(i - first);
+                    genome.mutate();
+                    if (partner != null) {
+                        genome.copyFrom(partner);
+                    }
+                }
+                else {
+                    genomes.set(i, myMaker.get());
+                }
+            }
+        );
+
         // And assign it over
         myGenomes = genomes;
     }
 
+    /**
+     * Get copies of the healthiest genomes in this biome, to send to
+     * another one. This sorts the biome's genomes.
+     *
+     * @param count        The most genomes to give back.
+     * @param genomeHealth How to determine the health of a particular
+     *                     genome instance.
+     *
+     * @return The copies, healthiest first.
+     */
+    public List<Genome> emigrants(final int           count,
+                                  final Genome.Health genomeHealth)
+    {
+        rank(genomeHealth);
+
+        final List<Genome> result = new ArrayList<>(count);
+        for (int i=0; i < count && i < myGenomes.size(); i++) {
+            if (myGenomes.get(i) != null) {
+                result.add(myGenomes.get(i).clone());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Take in genomes from another biome, in place of our least healthy
+     * ones. This sorts the biome's genomes.
+     *
+     * @param migrants     The genomes to take in. These must not be in
+     *                     use elsewhere.
+     * @param genomeHealth How to determine the health of a particular
+     *                     genome instance.
+     */
+    public void immigrate(final Collection<Genome> migrants,
+                          final Genome.Health      genomeHealth)
+    {
+        rank(genomeHealth);
+
+        int index = myGenomes.size();
+        for (Genome migrant : migrants) {
+            if (index == 0) {
+                break;
+            }
+            myGenomes.set(--index, migrant);
+        }
+    }
+
     // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
     /**
-     * Compare two genomes using the given health interface. Ties will be broken
-     * with the graph size (fewer nodes is better).
+     * Sort the genomes, healthiest first. Snapshot all the healths up
+     * front so that the sort only looks at an array. Sizes are only
+     * needed to break ties, and genomes remember theirs.
+     */
+    private void rank(final Genome.Health genomeHealth)
+    {
+        final Genome[]  ranked  = myGenomes.toArray(new Genome[0]);
+        final double[]  healths = new double [ranked.length];
+        final Integer[] order   = new Integer[ranked.length];
+        for (int i=0; i < ranked.length; i++) {
+            if (ranked[i] != null) {
+                healths[i] = genomeHealth.healthOf(ranked[i]);
+            }
+            order[i] = i;
+        }
+
+        // We invert the sort so that the healthiest ones are at the front
+        Arrays.sort(order, (a, b) -> -compare(ranked, healths, a, b));
+        for (int i=0; i < ranked.length; i++) {
+            myGenomes.set(i, ranked[order[i]]);
+        }
+    }
+
+    /**
+     * Apply an action to each of a range of indices, in contiguous runs
+     * on the given pool, or in the calling thread if there is no pool.
+     */
+    private static void forEach(final ForkJoinPool pool,
+                                final int          from,
+                                final int          to,
+                                final IntConsumer  action)
+    {
+        if (pool == null) {
+            for (int i = from; i < to; i++) {
+                action.accept(i);
+            }
+            return;
+        }
+
+        // Enough runs that there is something to steal
+        final int chunk = Math.max(1, (to - from) / (4 * pool.getParallelism()));
+        final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+        for (int start = from; start < to; start += chunk) {
+            final int runFrom = start;
+            final int runTo   = Math.min(to, start + chunk);
+            tasks.add(ForkJoinTask.adapt(() -> {
+                for (int i = runFrom; i < runTo; i++) {
+                    action.accept(i);
+                }
+            }));
+        }
+
+        // Join in if we're already working for the pool, rather than
+        // blocking one of its threads
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+        }
+        else {
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        }
+    }
+
+    /**
+     * Compare two genomes, by their indices in a snapshot of them, using
+     * their healths. Ties will be broken with the graph size (fewer nodes
+     * is better).
      */
-    private int compare(final Genome                  a,
-                        final Genome                  b,
-                        final Function<Genome,Double> health)
+    private int compare(final Genome[] genomes,
+                        final double[] healths,
+                        final int      a,
+                        final int      b)
     {
-        if (a == null && b == null) {
+        if (genomes[a] == null && genomes[b] == null) {
             return 0;
         }
-        else if (a == null) {
+        else if (genomes[a] == null) {
             return 1;
         }
-        else if (b == null) {
+        else if (genomes[b] == null) {
             return -1;
         }
         else {
-            final int cmp = Double.compare(health.apply(a),
-                                           health.apply(b));
+            final int cmp = Double.compare(healths[a], healths[b]);
             if (cmp == 0) {
-                return -Integer.compare(a.getGraphSize(),
-                                        b.getGraphSize());
+                return -Integer.compare(genomes[a].getGraphSize(),
+                                        genomes[b].getGraphSize());
             }
             else {
                 return cmp;
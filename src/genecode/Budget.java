@@ -0,0 +1,182 @@
+package genecode;
+
+/**
+ * A limit on how much work an evaluation may do, so that a single
+ * pathological genome can't stall a thread, or exhaust the heap, by
+ * allocating enormous arrays or strings, or by doing a huge amount of
+ * computation.
+ *
+ * <p>Work is measured in two ways: operations, which are instructions
+ * executed, genes evaluated and elements visited by functions like
+ * {@link genecode.function.Map}; and elements, which are the sizes of
+ * the arrays and strings which functions create. Evaluators and
+ * functions charge these against whichever budget the calling thread
+ * has {@link #enter()}ed, via {@link #spend(long)} and {@link
+ * #allocate(long)}, before doing the work. Once either limit is gone
+ * past the charge throws {@link ExceededException}, which unwinds all
+ * the way out of the evaluation. When no budget is in force the charges
+ * cost nothing.
+ *
+ * <p>Instances are not thread-safe; a budget should only be used by the
+ * thread which entered it.
+ */
+public final class Budget
+{
+    /**
+     * Thrown when a budget is exceeded. This carries no stack trace,
+     * since it's only ever caught by whoever entered the budget.
+     */
+    public static final class ExceededException
+        extends RuntimeException
+    {
+        private static final long serialVersionUID = 8127346512098371L;
+
+        /**
+         * CTOR.
+         */
+        private ExceededException()
+        {
+            super("Evaluation budget exceeded", null, false, false);
+        }
+    }
+
+    /**
+     * The exception which we throw, which may as well be shared since
+     * it has no state.
+     */
+    private static final ExceededException EXCEEDED = new ExceededException();
+
+    /**
+     * The budget which each thread is currently evaluating under, if any.
+     */
+    private static final ThreadLocal<Budget> ourCurrent = new ThreadLocal<>();
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * The maximum number of operations.
+     */
+    private final long myMaxOps;
+
+    /**
+     * The maximum number of elements.
+     */
+    private final long myMaxElements;
+
+    /**
+     * The number of operations spent so far.
+     */
+    private long myOps;
+
+    /**
+     * The number of elements allocated so far.
+     */
+    private long myElements;
+
+    /**
+     * Charge operations against the calling thread's budget, if it has
+     * one.
+     *
+     * @param ops The number of operations which are about to be done.
+     *
+     * @throws ExceededException If this exceeded the budget.
+     */
+    public static void spend(final long ops)
+        throws ExceededException
+    {
+        final Budget budget = ourCurrent.get();
+        if (budget != null && (budget.myOps += ops) > budget.myMaxOps) {
+            throw EXCEEDED;
+        }
+    }
+
+    /**
+     * Charge allocated elements against the calling thread's budget, if
+     * it has one.
+     *
+     * @param elements The number of array elements, or characters, which
+     *                 are about to be allocated.
+     *
+     * @throws ExceededException If this exceeded the budget.
+     */
+    public static void allocate(final long elements)
+        throws ExceededException
+    {
+        final Budget budget = ourCurrent.get();
+        if (budget != null &&
+            (budget.myElements += elements) > budget.myMaxElements)
+        {
+            throw EXCEEDED;
+        }
+    }
+
+    /**
+     * CTOR.
+     *
+     * @param maxOps      The maximum number of operations.
+     * @param maxElements The maximum number of elements which may be
+     *                    allocated.
+     */
+    public Budget(final long maxOps, final long maxElements)
+    {
+        myMaxOps      = maxOps;
+        myMaxElements = maxElements;
+        myOps         = 0;
+        myElements    = 0;
+    }
+
+    /**
+     * Make this the calling thread's budget. This should be paired with
+     * a call to {@link #exit(Budget)}, in a {@code finally} block.
+     *
+     * @return The budget which was in force before, if any.
+     */
+    public Budget enter()
+    {
+        final Budget previous = ourCurrent.get();
+        ourCurrent.set(this);
+        return previous;
+    }
+
+    /**
+     * Stop using this as the calling thread's budget.
+     *
+     * @param previous What {@link #enter()} gave back.
+     */
+    public void exit(final Budget previous)
+    {
+        ourCurrent.set(previous);
+    }
+
+    /**
+     * The number of operations spent so far.
+     *
+     * @return The number of operations.
+     */
+    public long getOps()
+    {
+        return myOps;
+    }
+
+    /**
+     * The number of elements allocated so far.
+     *
+     * @return The number of elements.
+     */
+    public long getElements()
+    {
+        return myElements;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "Budget[" +
+                   "ops="      + myOps      + "/" + myMaxOps      + ", " +
+                   "elements=" + myElements + "/" + myMaxElements +
+               "]";
+    }
+}
@@ -0,0 +1,218 @@
+package genecode;
+
+import java.util.Arrays;
+
+/**
+ * A list which is held in fixed-size chunks, which are shared with any
+ * copies of the list until one of them writes to them. Copying a list
+ * is therefore cheap, and modifying a copy only costs as many chunks as
+ * it touches.
+ *
+ * <p>Elements are removed by moving the last element into their place,
+ * so the order of a list is not preserved by {@link #remove(int)}.
+ *
+ * <p>Instances are not thread-safe. Note that {@link #copy()} counts as
+ * a modification of the list being copied.
+ */
+public final class ChunkedList<T>
+{
+    /**
+     * log2 of the number of elements in a chunk.
+     */
+    private static final int SHIFT = 5;
+
+    /**
+     * The number of elements in a chunk.
+     */
+    private static final int CHUNK = 1 << SHIFT;
+
+    /**
+     * The mask for an element's index in its chunk.
+     */
+    private static final int MASK = CHUNK - 1;
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * The chunks of elements.
+     */
+    private Object[][] myChunks;
+
+    /**
+     * Which of the chunks belong only to us, and so may be modified.
+     */
+    private boolean[] myOwned;
+
+    /**
+     * The number of elements.
+     */
+    private int mySize;
+
+    /**
+     * CTOR.
+     */
+    public ChunkedList()
+    {
+        myChunks = new Object[0][];
+        myOwned  = new boolean[0];
+        mySize   = 0;
+    }
+
+    /**
+     * Copy CTOR.
+     */
+    private ChunkedList(final ChunkedList<T> that)
+    {
+        myChunks = that.myChunks.clone();
+        myOwned  = new boolean[myChunks.length];
+        mySize   = that.mySize;
+    }
+
+    /**
+     * Create a copy of this list, which shares all of its chunks.
+     *
+     * @return The copy.
+     */
+    public ChunkedList<T> copy()
+    {
+        // Neither of us may write to the shared chunks now
+        Arrays.fill(myOwned, false);
+        return new ChunkedList<>(this);
+    }
+
+    /**
+     * The number of elements in the list.
+     *
+     * @return The size.
+     */
+    public int size()
+    {
+        return mySize;
+    }
+
+    /**
+     * Whether the list is empty.
+     *
+     * @return Whether it is.
+     */
+    public boolean isEmpty()
+    {
+        return mySize == 0;
+    }
+
+    /**
+     * Get an element.
+     *
+     * @param index The index of the element.
+     *
+     * @return The element.
+     *
+     * @throws IndexOutOfBoundsException If the index was not in bounds.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(final int index)
+        throws IndexOutOfBoundsException
+    {
+        checkIndex(index);
+        return (T)myChunks[index >>> SHIFT][index & MASK];
+    }
+
+    /**
+     * Set an element.
+     *
+     * @param index   The index of the element.
+     * @param element The new element.
+     *
+     * @throws IndexOutOfBoundsException If the index was not in bounds.
+     */
+    public void set(final int index, final T element)
+        throws IndexOutOfBoundsException
+    {
+        checkIndex(index);
+        own(index >>> SHIFT)[index & MASK] = element;
+    }
+
+    /**
+     * Append an element.
+     *
+     * @param element The element to add.
+     */
+    public void add(final T element)
+    {
+        final int chunk = mySize >>> SHIFT;
+        if (chunk == myChunks.length) {
+            myChunks = Arrays.copyOf(myChunks, chunk + 1);
+            myOwned  = Arrays.copyOf(myOwned,  chunk + 1);
+            myChunks[chunk] = new Object[CHUNK];
+            myOwned [chunk] = true;
+        }
+        own(chunk)[mySize & MASK] = element;
+        mySize++;
+    }
+
+    /**
+     * Remove an element, moving the last element into its place.
+     *
+     * @param index The index of the element.
+     *
+     * @return The removed element.
+     *
+     * @throws IndexOutOfBoundsException If the index was not in bounds.
+     */
+    public T remove(final int index)
+        throws IndexOutOfBoundsException
+    {
+        final T element = get(index);
+        final int last = mySize - 1;
+        if (index != last) {
+            set(index, get(last));
+        }
+        own(last >>> SHIFT)[last & MASK] = null;
+        mySize--;
+        return element;
+    }
+
+    /**
+     * Find the index of an element.
+     *
+     * @param element The element to look for.
+     *
+     * @return The index, or {@code -1} if it was not found.
+     */
+    public int indexOf(final Object element)
+    {
+        for (int i=0; i < mySize; i++) {
+            if (element.equals(myChunks[i >>> SHIFT][i & MASK])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Get a chunk which we may write to, copying it if need be.
+     */
+    private Object[] own(final int chunk)
+    {
+        if (!myOwned[chunk]) {
+            myChunks[chunk] = myChunks[chunk].clone();
+            myOwned [chunk] = true;
+        }
+        return myChunks[chunk];
+    }
+
+    /**
+     * Ensure that an index is in bounds.
+     */
+    private void checkIndex(final int index)
+        throws IndexOutOfBoundsException
+    {
+        if (index < 0 || index >= mySize) {
+            throw new IndexOutOfBoundsException(
+                "Index " + index + " not in [0.." + mySize + ")"
+            );
+        }
+    }
+}
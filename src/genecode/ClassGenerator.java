@@ -0,0 +1,864 @@
+package genecode;
+
+import genecode.Context.Identifier;
+import genecode.function.Function;
+import genecode.gene.Gene;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.lang.invoke.MethodHandles;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Turns a {@link Program} into JVM bytecode.
+ *
+ * <p>Each program becomes a hidden class with a single straight-line
+ * {@code evaluate()} method. Every instruction's value is held in a
+ * local variable and every operand (constant, identifier, function or
+ * gene) lives in its own {@code static final} field, so the JIT
+ * compiler sees each function call with a constant receiver and may
+ * inline it. Primitive slots are held in {@code double} or {@code long}
+ * locals, alongside a {@code boolean} local which says whether the value
+ * is present; a primitive instruction is always computed, and is present
+ * only when its arguments are. This means that there are no branches in
+ * the generated code. Calls which may fail are routed through {@link
+ * Program#safeCall}.
+ */
+/*package*/ final class ClassGenerator
+{
+    // Class file constants
+    private static final int MAGIC         = 0xCAFEBABE;
+    private static final int MAJOR_VERSION = 52; // Java 8, no stack maps
+    private static final int ACC_PUBLIC    = 0x0001;
+    private static final int ACC_STATIC    = 0x0008;
+    private static final int ACC_FINAL     = 0x0010;
+    private static final int ACC_SUPER     = 0x0020;
+    private static final int MAX_CODE      = 65535;
+
+    // Constant pool tags
+    private static final int CONSTANT_Utf8               = 1;
+    private static final int CONSTANT_Integer            = 3;
+    private static final int CONSTANT_Class              = 7;
+    private static final int CONSTANT_String             = 8;
+    private static final int CONSTANT_Fieldref           = 9;
+    private static final int CONSTANT_Methodref          = 10;
+    private static final int CONSTANT_InterfaceMethodref = 11;
+    private static final int CONSTANT_NameAndType        = 12;
+
+    // The opcodes which we use
+    private static final int ACONST_NULL     = 0x01;
+    private static final int SIPUSH          = 0x11;
+    private static final int LDC_W           = 0x13;
+    private static final int ILOAD           = 0x15;
+    private static final int LLOAD           = 0x16;
+    private static final int DLOAD           = 0x18;
+    private static final int ALOAD           = 0x19;
+    private static final int ALOAD_0         = 0x2a;
+    private static final int AALOAD          = 0x32;
+    private static final int ISTORE          = 0x36;
+    private static final int LSTORE          = 0x37;
+    private static final int DSTORE          = 0x39;
+    private static final int ASTORE          = 0x3a;
+    private static final int ASTORE_0        = 0x4b;
+    private static final int AASTORE         = 0x53;
+    private static final int DUP             = 0x59;
+    private static final int IAND            = 0x7e;
+    private static final int RETURN          = 0xb1;
+    private static final int GETSTATIC       = 0xb2;
+    private static final int PUTSTATIC       = 0xb3;
+    private static final int INVOKEVIRTUAL   = 0xb6;
+    private static final int INVOKESPECIAL   = 0xb7;
+    private static final int INVOKESTATIC    = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+    private static final int ANEWARRAY       = 0xbd;
+    private static final int CHECKCAST       = 0xc0;
+    private static final int WIDE            = 0xc4;
+
+    // The types which we refer to
+    private static final String OBJECT   = "java/lang/Object";
+    private static final String CONTEXT  = internalName(Context.class);
+    private static final String GENOME   = internalName(Genome.class);
+    private static final String FUNCTION = internalName(Function.class);
+    private static final String GENE     = internalName(Gene.class);
+    private static final String IDENT    = internalName(Identifier.class);
+    private static final String PROGRAM  = internalName(Program.class);
+    private static final String COMPILED = internalName(Program.Compiled.class);
+
+    /**
+     * The name of the class which we generate. The JVM will append a
+     * unique suffix to this.
+     */
+    private static final String GENERATED = PROGRAM + "Class";
+
+    /**
+     * The name of the field which holds the genome.
+     */
+    private static final String GENOME_FIELD = "genome";
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Generate the class for the given program and create an instance
+     * of it.
+     *
+     * @param genome      The genome which the program was compiled from.
+     * @param opcodes     The program's opcodes.
+     * @param argSlots    The program's argument slots.
+     * @param operands    The program's operands.
+     * @param accessSlots The slots which the program's access
+     *                    instructions are bound to, or {@code -1}.
+     * @param outputSlots The slots holding the program's outputs.
+     *
+     * @return The compiled form of the program.
+     *
+     * @throws IllegalArgumentException If the program could not be turned
+     *                                  into a class.
+     */
+    public static Program.Compiled generate(final Genome   genome,
+                                            final int[]    opcodes,
+                                            final int[][]  argSlots,
+                                            final Object[] operands,
+                                            final int[]    accessSlots,
+                                            final int[]    outputSlots)
+        throws IllegalArgumentException
+    {
+        // Local 0 is "this", 1 the context and 2 the registers; each
+        // primitive slot then needs three locals
+        if (3 * opcodes.length + 3 > 0xffff) {
+            throw new IllegalArgumentException(
+                "Too many instructions: " + opcodes.length
+            );
+        }
+
+        try {
+            final ClassGenerator generator = new ClassGenerator();
+            final byte[] bytes =
+                generator.toBytes(opcodes, argSlots, operands, accessSlots,
+                                  outputSlots);
+
+            // The class data is the genome followed by the operands
+            final Object[] data = new Object[operands.length + 1];
+            data[0] = genome;
+            System.arraycopy(operands, 0, data, 1, operands.length);
+
+            final MethodHandles.Lookup lookup =
+                MethodHandles.lookup()
+                             .defineHiddenClassWithClassData(bytes, data, true);
+            return (Program.Compiled)lookup.lookupClass()
+                                           .getDeclaredConstructor()
+                                           .newInstance();
+        }
+        catch (IOException | ReflectiveOperationException | LinkageError e) {
+            throw new IllegalArgumentException(
+                "Failed to generate class for program", e
+            );
+        }
+    }
+
+    /**
+     * Get the internal name of a class.
+     */
+    private static String internalName(final Class<?> klass)
+    {
+        return klass.getName().replace('.', '/');
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * The constant pool, as it is built up.
+     */
+    private final ByteArrayOutputStream myPoolBytes = new ByteArrayOutputStream();
+
+    /**
+     * How we write into the constant pool.
+     */
+    private final DataOutputStream myPool = new DataOutputStream(myPoolBytes);
+
+    /**
+     * The entries which we have in the constant pool, keyed by a string
+     * form of their contents.
+     */
+    private final Map<String,Integer> myPoolIndices = new HashMap<>();
+
+    /**
+     * The next index into the constant pool.
+     */
+    private int myNextPoolIndex = 1;
+
+    /**
+     * CTOR.
+     */
+    private ClassGenerator()
+    {
+        // Nothing
+    }
+
+    /**
+     * Create the class file bytes.
+     */
+    private byte[] toBytes(final int[]    opcodes,
+                           final int[][]  argSlots,
+                           final Object[] operands,
+                           final int[]    accessSlots,
+                           final int[]    outputSlots)
+        throws IOException
+    {
+        // The class itself
+        final int thisClass  = classRef(GENERATED);
+        final int superClass = classRef(OBJECT);
+        final int iface      = classRef(COMPILED);
+
+        // The fields; one for each operand which we need to hold
+        final List<int[]> fields = new ArrayList<>();
+        final String[] fieldNames = new String[operands.length];
+        final String[] fieldTypes = new String[operands.length];
+        for (int i=0; i < operands.length; i++) {
+            if (operands[i] != null) {
+                fieldNames[i] = "k" + i;
+                fieldTypes[i] = "L" + operandType(opcodes[i]) + ";";
+                fields.add(new int[] { utf8(fieldNames[i]),
+                                       utf8(fieldTypes[i]) });
+            }
+        }
+        fields.add(new int[] { utf8(GENOME_FIELD), utf8("L" + GENOME + ";") });
+
+        // Where each slot lives. Object slots have a single local;
+        // primitive ones have two for the value and one for whether it
+        // is present.
+        final int[] locals   = new int[opcodes.length];
+        final int[] presents = new int[opcodes.length];
+        int numLocals = 3;
+        for (int i=0; i < opcodes.length; i++) {
+            locals[i] = numLocals;
+            if (Program.kind(opcodes[i]) == Program.KIND_OBJECT) {
+                numLocals += 1;
+            }
+            else {
+                presents[i] = numLocals + 2;
+                numLocals += 3;
+            }
+        }
+
+        // The methods
+        final byte[] init     = initCode();
+        final byte[] clinit   = clinitCode(opcodes, operands,
+                                           fieldNames, fieldTypes);
+        final byte[] evaluate = evaluateCode(opcodes, argSlots, operands,
+                                             accessSlots,
+                                             fieldNames, fieldTypes,
+                                             locals, presents,
+                                             outputSlots);
+        final int codeName = utf8("Code");
+        final int[][] methods = {
+            { ACC_PUBLIC, utf8("<init>"), utf8("()V"), 1, 1 },
+            { ACC_STATIC, utf8("<clinit>"), utf8("()V"), 3, 1 },
+            { ACC_PUBLIC,
+              utf8("evaluate"),
+              utf8("(L" + CONTEXT + ";[L" + OBJECT + ";)V"),
+              9, // A long value, and checkDefined()'s arguments
+              numLocals },
+        };
+        final byte[][] code = { init, clinit, evaluate };
+        for (byte[] bytes : code) {
+            if (bytes.length > MAX_CODE) {
+                throw new IOException("Method too large: " + bytes.length);
+            }
+        }
+
+        // Now we can write it all out
+        myPool.flush();
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeShort(0);
+        out.writeShort(MAJOR_VERSION);
+        out.writeShort(myNextPoolIndex);
+        out.write(myPoolBytes.toByteArray());
+        out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.writeShort(thisClass);
+        out.writeShort(superClass);
+        out.writeShort(1);
+        out.writeShort(iface);
+
+        out.writeShort(fields.size());
+        for (int[] field : fields) {
+            out.writeShort(ACC_STATIC | ACC_FINAL);
+            out.writeShort(field[0]);
+            out.writeShort(field[1]);
+            out.writeShort(0); // attributes
+        }
+
+        out.writeShort(methods.length);
+        for (int i=0; i < methods.length; i++) {
+            out.writeShort(methods[i][0]);
+            out.writeShort(methods[i][1]);
+            out.writeShort(methods[i][2]);
+            out.writeShort(1); // attributes
+            out.writeShort(codeName);
+            out.writeInt(12 + code[i].length);
+            out.writeShort(methods[i][3]); // max stack
+            out.writeShort(methods[i][4]); // max locals
+            out.writeInt(code[i].length);
+            out.write(code[i]);
+            out.writeShort(0); // exception table
+            out.writeShort(0); // attributes
+        }
+
+        out.writeShort(0); // class attributes
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The code for the constructor.
+     */
+    private byte[] initCode()
+        throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream code = new DataOutputStream(bytes);
+        code.writeByte(ALOAD_0);
+        code.writeByte(INVOKESPECIAL);
+        code.writeShort(methodRef(OBJECT, "<init>", "()V"));
+        code.writeByte(RETURN);
+        code.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The code for the static initialiser. This pulls the operands out
+     * of the class data and into their fields.
+     */
+    private byte[] clinitCode(final int[]    opcodes,
+                              final Object[] operands,
+                              final String[] fieldNames,
+                              final String[] fieldTypes)
+        throws IOException
+    {
+        final String lookup = "java/lang/invoke/MethodHandles$Lookup";
+
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream code = new DataOutputStream(bytes);
+
+        // Object[] data = MethodHandles.classData(lookup(), "_", Object[].class)
+        code.writeByte(INVOKESTATIC);
+        code.writeShort(methodRef("java/lang/invoke/MethodHandles",
+                                  "lookup",
+                                  "()L" + lookup + ";"));
+        code.writeByte(LDC_W);
+        code.writeShort(string("_"));
+        code.writeByte(LDC_W);
+        code.writeShort(classRef("[L" + OBJECT + ";"));
+        code.writeByte(INVOKESTATIC);
+        code.writeShort(
+            methodRef("java/lang/invoke/MethodHandles",
+                      "classData",
+                      "(L" + lookup + ";Ljava/lang/String;Ljava/lang/Class;)" +
+                      "L" + OBJECT + ";")
+        );
+        code.writeByte(CHECKCAST);
+        code.writeShort(classRef("[L" + OBJECT + ";"));
+        code.writeByte(ASTORE_0);
+
+        // The genome
+        code.writeByte(ALOAD_0);
+        pushInt(code, 0);
+        code.writeByte(AALOAD);
+        code.writeByte(CHECKCAST);
+        code.writeShort(classRef(GENOME));
+        code.writeByte(PUTSTATIC);
+        code.writeShort(fieldRef(GENOME_FIELD, "L" + GENOME + ";"));
+
+        // And the operands
+        for (int i=0; i < operands.length; i++) {
+            if (fieldNames[i] != null) {
+                code.writeByte(ALOAD_0);
+                pushInt(code, i + 1);
+                code.writeByte(AALOAD);
+                code.writeByte(CHECKCAST);
+                code.writeShort(classRef(operandType(opcodes[i])));
+                code.writeByte(PUTSTATIC);
+                code.writeShort(fieldRef(fieldNames[i], fieldTypes[i]));
+            }
+        }
+
+        code.writeByte(RETURN);
+        code.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The code for the {@code evaluate(Context,Object[])} method.
+     */
+    private byte[] evaluateCode(final int[]    opcodes,
+                                final int[][]  argSlots,
+                                final Object[] operands,
+                                final int[]    accessSlots,
+                                final String[] fieldNames,
+                                final String[] fieldTypes,
+                                final int[]    locals,
+                                final int[]    presents,
+                                final int[]    outputSlots)
+        throws IOException
+    {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream code = new DataOutputStream(bytes);
+
+        final String function = "L" + FUNCTION + ";";
+        for (int i=0; i < opcodes.length; i++) {
+            final int[] args = argSlots[i];
+            switch (opcodes[i]) {
+            case Program.OP_CONSTANT:
+                // The operand is the value
+                if (fieldNames[i] == null) {
+                    code.writeByte(ACONST_NULL);
+                }
+                else {
+                    getOperand(code, fieldNames[i], fieldTypes[i]);
+                }
+                break;
+
+            case Program.OP_ACCESS:
+                // context.access(slot, identifier)
+                load(code, ALOAD, 1);
+                pushInt(code, accessSlots[i]);
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                code.writeByte(INVOKEVIRTUAL);
+                code.writeShort(methodRef(CONTEXT,
+                                          "access",
+                                          "(IL" + IDENT + ";)L" + OBJECT + ";"));
+                break;
+
+            case Program.OP_CALL: {
+                // Program.safeCall(function, new Object[] { ... })
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                pushInt(code, args.length);
+                code.writeByte(ANEWARRAY);
+                code.writeShort(classRef(OBJECT));
+                for (int j=0; j < args.length; j++) {
+                    code.writeByte(DUP);
+                    pushInt(code, j);
+                    load(code, ALOAD, locals[args[j]]);
+                    code.writeByte(AASTORE);
+                }
+                code.writeByte(INVOKESTATIC);
+                code.writeShort(
+                    methodRef(PROGRAM,
+                              "safeCall",
+                              "(L" + FUNCTION + ";[L" + OBJECT + ";)" +
+                              "L" + OBJECT + ";")
+                );
+                break;
+            }
+
+            case Program.OP_GENE:
+                // gene.evaluate(context, genome)
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                load(code, ALOAD, 1);
+                code.writeByte(GETSTATIC);
+                code.writeShort(fieldRef(GENOME_FIELD, "L" + GENOME + ";"));
+                code.writeByte(INVOKEINTERFACE);
+                code.writeShort(
+                    interfaceMethodRef(GENE,
+                                       "evaluate",
+                                       "(L" + CONTEXT + ";L" + GENOME + ";)" +
+                                       "L" + OBJECT + ";")
+                );
+                code.writeByte(3); // count
+                code.writeByte(0);
+                break;
+
+            case Program.OP_BOX_DOUBLE:
+                // Program.box(value, present)
+                load(code, DLOAD, locals  [args[0]]);
+                load(code, ILOAD, presents[args[0]]);
+                invokeProgram(code, "box", "(DZ)L" + OBJECT + ";");
+                break;
+
+            case Program.OP_BOX_LONG:
+                // Program.box(value, present)
+                load(code, LLOAD, locals  [args[0]]);
+                load(code, ILOAD, presents[args[0]]);
+                invokeProgram(code, "box", "(JZ)L" + OBJECT + ";");
+                break;
+
+            case Program.OP_UNBOX_DOUBLE:
+                // value = Program.toDouble(object)
+                // present = Program.isDouble(object)
+                load(code, ALOAD, locals[args[0]]);
+                invokeProgram(code, "toDouble", "(L" + OBJECT + ";)D");
+                load(code, ALOAD, locals[args[0]]);
+                invokeProgram(code, "isDouble", "(L" + OBJECT + ";)Z");
+                break;
+
+            case Program.OP_UNBOX_LONG:
+                // value = Program.toLong(object)
+                // present = Program.isLong(object)
+                load(code, ALOAD, locals[args[0]]);
+                invokeProgram(code, "toLong", "(L" + OBJECT + ";)J");
+                load(code, ALOAD, locals[args[0]]);
+                invokeProgram(code, "isLong", "(L" + OBJECT + ";)Z");
+                break;
+
+            case Program.OP_DOUBLE_UNARY:
+                // value = function.applyAsDouble(a)
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                load(code, DLOAD, locals[args[0]]);
+                invokeFunction(code, "applyAsDouble", "(D)D");
+                load(code, ILOAD, presents[args[0]]);
+                break;
+
+            case Program.OP_LONG_UNARY:
+                // value = function.applyAsLong(a)
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                load(code, LLOAD, locals[args[0]]);
+                invokeFunction(code, "applyAsLong", "(J)J");
+                load(code, ILOAD, presents[args[0]]);
+                break;
+
+            case Program.OP_DOUBLE_TO_LONG:
+                // value = function.applyAsLong(a)
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                load(code, DLOAD, locals[args[0]]);
+                invokeFunction(code, "applyAsLong", "(D)J");
+                load(code, ILOAD, presents[args[0]]);
+                break;
+
+            case Program.OP_LONG_TO_DOUBLE:
+                // value = function.applyAsDouble(a)
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                load(code, LLOAD, locals[args[0]]);
+                invokeFunction(code, "applyAsDouble", "(J)D");
+                load(code, ILOAD, presents[args[0]]);
+                break;
+
+            case Program.OP_DOUBLE_BINARY:
+                // value = function.applyAsDouble(a, b)
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                load(code, DLOAD, locals[args[0]]);
+                load(code, DLOAD, locals[args[1]]);
+                invokeFunction(code, "applyAsDouble", "(DD)D");
+                load(code, ILOAD, presents[args[0]]);
+                load(code, ILOAD, presents[args[1]]);
+                code.writeByte(IAND);
+                break;
+
+            case Program.OP_LONG_BINARY:
+                // value = function.applyAsLong(a, b)
+                // present = function.checkDefined(a, b, ... & ...)
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                load(code, LLOAD, locals[args[0]]);
+                load(code, LLOAD, locals[args[1]]);
+                invokeFunction(code, "applyAsLong", "(JJ)J");
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                load(code, LLOAD, locals[args[0]]);
+                load(code, LLOAD, locals[args[1]]);
+                load(code, ILOAD, presents[args[0]]);
+                load(code, ILOAD, presents[args[1]]);
+                code.writeByte(IAND);
+                invokeFunction(code, "checkDefined", "(JJZ)Z");
+                break;
+
+            case Program.OP_DOUBLE_PREDICATE:
+                // Program.box(function.test(a, b), present)
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                load(code, DLOAD, locals[args[0]]);
+                load(code, DLOAD, locals[args[1]]);
+                invokeFunction(code, "test", "(DD)Z");
+                load(code, ILOAD, presents[args[0]]);
+                load(code, ILOAD, presents[args[1]]);
+                code.writeByte(IAND);
+                invokeProgram(code, "box", "(ZZ)L" + OBJECT + ";");
+                break;
+
+            case Program.OP_LONG_PREDICATE:
+                // Program.box(function.test(a, b), present)
+                getOperand(code, fieldNames[i], fieldTypes[i]);
+                load(code, LLOAD, locals[args[0]]);
+                load(code, LLOAD, locals[args[1]]);
+                invokeFunction(code, "test", "(JJ)Z");
+                load(code, ILOAD, presents[args[0]]);
+                load(code, ILOAD, presents[args[1]]);
+                code.writeByte(IAND);
+                invokeProgram(code, "box", "(ZZ)L" + OBJECT + ";");
+                break;
+
+            default:
+                throw new IOException("Unknown opcode: " + opcodes[i]);
+            }
+
+            // And remember it; primitive instructions leave the value
+            // and whether it's present on the stack
+            switch (Program.kind(opcodes[i])) {
+            case Program.KIND_DOUBLE:
+                store(code, ISTORE, presents[i]);
+                store(code, DSTORE, locals  [i]);
+                break;
+
+            case Program.KIND_LONG:
+                store(code, ISTORE, presents[i]);
+                store(code, LSTORE, locals  [i]);
+                break;
+
+            default:
+                store(code, ASTORE, locals[i]);
+                break;
+            }
+        }
+
+        // Copy the outputs into the registers
+        for (int slot : outputSlots) {
+            load(code, ALOAD, 2);
+            pushInt(code, slot);
+            load(code, ALOAD, locals[slot]);
+            code.writeByte(AASTORE);
+        }
+
+        code.writeByte(RETURN);
+        code.flush();
+        return bytes.toByteArray();
+    }
+
+    /**
+     * The type of the field for an instruction's operand.
+     */
+    private static String operandType(final int opcode)
+    {
+        switch (opcode) {
+        case Program.OP_CONSTANT: return OBJECT;
+        case Program.OP_ACCESS:   return IDENT;
+        case Program.OP_GENE:     return GENE;
+        default:                  return FUNCTION;
+        }
+    }
+
+    /**
+     * Push one of our operand fields onto the stack.
+     */
+    private void getOperand(final DataOutputStream code,
+                            final String           name,
+                            final String           type)
+        throws IOException
+    {
+        code.writeByte(GETSTATIC);
+        code.writeShort(fieldRef(name, type));
+    }
+
+    /**
+     * Call one of the static helper methods on {@link Program}.
+     */
+    private void invokeProgram(final DataOutputStream code,
+                               final String           name,
+                               final String           type)
+        throws IOException
+    {
+        code.writeByte(INVOKESTATIC);
+        code.writeShort(methodRef(PROGRAM, name, type));
+    }
+
+    /**
+     * Call one of the primitive methods on the {@link Function} which is
+     * on the stack.
+     */
+    private void invokeFunction(final DataOutputStream code,
+                                final String           name,
+                                final String           type)
+        throws IOException
+    {
+        code.writeByte(INVOKEVIRTUAL);
+        code.writeShort(methodRef(FUNCTION, name, type));
+    }
+
+    /**
+     * Push a non-negative integer onto the stack.
+     */
+    private void pushInt(final DataOutputStream code, final int value)
+        throws IOException
+    {
+        if (value <= Short.MAX_VALUE) {
+            code.writeByte(SIPUSH);
+            code.writeShort(value);
+        }
+        else {
+            code.writeByte(LDC_W);
+            code.writeShort(integer(value));
+        }
+    }
+
+    /**
+     * Load a value from a local variable, with the given load opcode.
+     */
+    private static void load(final DataOutputStream code,
+                             final int              opcode,
+                             final int              local)
+        throws IOException
+    {
+        code.writeByte(WIDE);
+        code.writeByte(opcode);
+        code.writeShort(local);
+    }
+
+    /**
+     * Store a value into a local variable, with the given store opcode.
+     */
+    private static void store(final DataOutputStream code,
+                              final int              opcode,
+                              final int              local)
+        throws IOException
+    {
+        code.writeByte(WIDE);
+        code.writeByte(opcode);
+        code.writeShort(local);
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Add a UTF-8 entry to the constant pool.
+     */
+    private int utf8(final String value)
+        throws IOException
+    {
+        final String key = "U:" + value;
+        Integer index = myPoolIndices.get(key);
+        if (index == null) {
+            myPool.writeByte(CONSTANT_Utf8);
+            myPool.writeUTF(value);
+            index = add(key);
+        }
+        return index;
+    }
+
+    /**
+     * Add an integer entry to the constant pool.
+     */
+    private int integer(final int value)
+        throws IOException
+    {
+        final String key = "I:" + value;
+        Integer index = myPoolIndices.get(key);
+        if (index == null) {
+            myPool.writeByte(CONSTANT_Integer);
+            myPool.writeInt(value);
+            index = add(key);
+        }
+        return index;
+    }
+
+    /**
+     * Add a class entry to the constant pool.
+     */
+    private int classRef(final String name)
+        throws IOException
+    {
+        final String key = "C:" + name;
+        Integer index = myPoolIndices.get(key);
+        if (index == null) {
+            final int nameIndex = utf8(name);
+            myPool.writeByte(CONSTANT_Class);
+            myPool.writeShort(nameIndex);
+            index = add(key);
+        }
+        return index;
+    }
+
+    /**
+     * Add a string entry to the constant pool.
+     */
+    private int string(final String value)
+        throws IOException
+    {
+        final String key = "S:" + value;
+        Integer index = myPoolIndices.get(key);
+        if (index == null) {
+            final int valueIndex = utf8(value);
+            myPool.writeByte(CONSTANT_String);
+            myPool.writeShort(valueIndex);
+            index = add(key);
+        }
+        return index;
+    }
+
+    /**
+     * Add a reference to one of our own static fields to the constant
+     * pool.
+     */
+    private int fieldRef(final String name, final String type)
+        throws IOException
+    {
+        return memberRef(CONSTANT_Fieldref, GENERATED, name, type);
+    }
+
+    /**
+     * Add a method reference to the constant pool.
+     */
+    private int methodRef(final String owner,
+                          final String name,
+                          final String type)
+        throws IOException
+    {
+        return memberRef(CONSTANT_Methodref, owner, name, type);
+    }
+
+    /**
+     * Add an interface method reference to the constant pool.
+     */
+    private int interfaceMethodRef(final String owner,
+                                   final String name,
+                                   final String type)
+        throws IOException
+    {
+        return memberRef(CONSTANT_InterfaceMethodref, owner, name, type);
+    }
+
+    /**
+     * Add a member reference to the constant pool.
+     */
+    private int memberRef(final int    tag,
+                          final String owner,
+                          final String name,
+                          final String type)
+        throws IOException
+    {
+        final String key = tag + ":" + owner + "." + name + ":" + type;
+        Integer index = myPoolIndices.get(key);
+        if (index == null) {
+            final int ownerIndex = classRef(owner);
+            final int nameIndex  = utf8(name);
+            final int typeIndex  = utf8(type);
+
+            myPool.writeByte(CONSTANT_NameAndType);
+            myPool.writeShort(nameIndex);
+            myPool.writeShort(typeIndex);
+            final int nameAndType = add("N:" + key);
+
+            myPool.writeByte(tag);
+            myPool.writeShort(ownerIndex);
+            myPool.writeShort(nameAndType);
+            index = add(key);
+        }
+        return index;
+    }
+
+    /**
+     * Note that an entry has just been written to the constant pool,
+     * giving back its index.
+     */
+    private int add(final String key)
+        throws IOException
+    {
+        final int index = myNextPoolIndex++;
+        if (index > 0xffff) {
+            throw new IOException("Constant pool too large");
+        }
+        myPoolIndices.put(key, index);
+        return index;
+    }
+}
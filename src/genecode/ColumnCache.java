@@ -0,0 +1,244 @@
+package genecode;
+
+import genecode.function.Column;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of the columns which programs compute, keyed by the
+ * structure of what computed them and by which batch of contexts they
+ * were computed over. This is shared by all the genomes in a population
+ * so that common subexpressions are only evaluated once. Since an
+ * offspring shares all of its parent's structure, bar what it mutated,
+ * this also means that evaluating the offspring only computes the
+ * parts of it which changed.
+ *
+ * <p>Only columns of numbers and booleans are cached, since their rows
+ * are small and of a fixed size; arrays and strings may be arbitrarily
+ * large. The cache is bounded by the total number of rows which it
+ * holds. Once it is full it simply stops accepting new columns, rather
+ * than evicting older ones, since the columns computed early on are
+ * just as likely to be useful as the later ones. Instead, columns which
+ * have not been used for a while are dropped by {@link #age()}, which
+ * is expected to be called periodically; e.g. once per generation.
+ *
+ * <p>Instances are thread-safe.
+ */
+/*package*/ final class ColumnCache
+{
+    /**
+     * The key which columns are held under.
+     */
+    private static final class Key
+    {
+        /**
+         * The structural key of the column.
+         */
+        private final Object myStructure;
+
+        /**
+         * The index of the batch of contexts which the column is for.
+         */
+        private final int myBatch;
+
+        /**
+         * CTOR.
+         */
+        public Key(final Object structure, final int batch)
+        {
+            myStructure = structure;
+            myBatch     = batch;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return myStructure.hashCode() * 31 + myBatch;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key)o;
+            return (that.myBatch == myBatch &&
+                    that.myStructure.equals(myStructure));
+        }
+    }
+
+    /**
+     * A cached column.
+     */
+    private static final class Entry
+    {
+        /**
+         * The column.
+         */
+        public final Column myColumn;
+
+        /**
+         * The last age in which the column was used.
+         */
+        public volatile int myAge;
+
+        /**
+         * CTOR.
+         */
+        public Entry(final Column column, final int age)
+        {
+            myColumn = column;
+            myAge    = age;
+        }
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * The cached columns.
+     */
+    private final Map<Key,Entry> myColumns = new ConcurrentHashMap<>();
+
+    /**
+     * The current age.
+     */
+    private volatile int myAge = 0;
+
+    /**
+     * The maximum number of rows which we may hold.
+     */
+    private final long myMaxRows;
+
+    /**
+     * The number of rows which we currently hold.
+     */
+    private final AtomicLong myRows = new AtomicLong();
+
+    /**
+     * How many lookups found a column.
+     */
+    private final LongAdder myHits = new LongAdder();
+
+    /**
+     * How many lookups did not find a column.
+     */
+    private final LongAdder myMisses = new LongAdder();
+
+    /**
+     * CTOR.
+     *
+     * @param maxRows The maximum number of rows, summed over all the
+     *                columns, which the cache may hold.
+     */
+    public ColumnCache(final long maxRows)
+    {
+        myMaxRows = maxRows;
+    }
+
+    /**
+     * Get a cached column.
+     *
+     * @param structure The structural key of the column.
+     * @param batch     The index of the batch of contexts it was
+     *                  computed over.
+     *
+     * @return The column, or {@code null} if it was not cached.
+     */
+    public Column get(final Object structure, final int batch)
+    {
+        final Entry entry = myColumns.get(new Key(structure, batch));
+        if (entry == null) {
+            myMisses.increment();
+            return null;
+        }
+        else {
+            // Avoid writing to the entry unless we need to
+            final int age = myAge;
+            if (entry.myAge != age) {
+                entry.myAge = age;
+            }
+            myHits.increment();
+            return entry.myColumn;
+        }
+    }
+
+    /**
+     * Cache a column, if there is room for it and it's of a type which
+     * we hold.
+     *
+     * @param structure The structural key of the column.
+     * @param batch     The index of the batch of contexts it was
+     *                  computed over.
+     * @param column    The column.
+     */
+    public void put(final Object structure,
+                    final int    batch,
+                    final Column column)
+    {
+        if (!(column instanceof Column.Doubles) &&
+            !(column instanceof Column.Longs)   &&
+            !Boolean.class.equals(column.getType()))
+        {
+            return;
+        }
+
+        // We may go over by a few columns when racing with other
+        // threads, but that's fine
+        if (myRows.get() + column.size() > myMaxRows) {
+            return;
+        }
+        if (myColumns.putIfAbsent(new Key(structure, batch),
+                                  new Entry(column, myAge)) == null)
+        {
+            myRows.addAndGet(column.size());
+        }
+    }
+
+    /**
+     * Drop all the columns which have not been used since the last time
+     * that this was called, and start counting afresh.
+     *
+     * <p>This may be called while the cache is otherwise in use. A
+     * column which is used while it's being aged may be dropped anyway,
+     * but that only costs a recomputation.
+     */
+    public synchronized void age()
+    {
+        final int age = myAge;
+        for (Map.Entry<Key,Entry> mapping : myColumns.entrySet()) {
+            final Entry entry = mapping.getValue();
+            if (entry.myAge != age &&
+                myColumns.remove(mapping.getKey(), entry))
+            {
+                myRows.addAndGet(-entry.myColumn.size());
+            }
+        }
+        myAge = age + 1;
+        myHits.reset();
+        myMisses.reset();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        return "ColumnCache[" +
+                   "columns=" + myColumns.size() + ", " +
+                   "rows="    + myRows.get()     + ", " +
+                   "hits="    + myHits.sum()     + ", " +
+                   "misses="  + myMisses.sum()   +
+               "]";
+    }
+}
@@ -112,4 +112,25 @@ public abstract class Context
     {
         return null;
     }
+
+    /**
+     * Access the value for a given {@link Identifier} from the context,
+     * where the identifier may have been bound to a slot by whatever
+     * created the context. Contexts which hold their values in slots may
+     * use it to find the value without looking the identifier up; by
+     * default this just defers to {@link #access(Identifier)}.
+     *
+     * <p>Implementations must not trust the slot blindly, since the
+     * identifier may have been bound for some other kind of context.
+     *
+     * @param slot The slot which the identifier was bound to, or {@code
+     *             -1} if it was not.
+     * @param id   The identifier to get the value for.
+     *
+     * @return {@code Double.NaN} if no such value exists.
+     */
+    public Object access(final int slot, final Identifier<?> id)
+    {
+        return access(id);
+    }
 }
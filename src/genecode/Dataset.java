@@ -0,0 +1,792 @@
+package genecode;
+
+import genecode.function.Column;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A table of sample rows, held in a binary columnar file which is
+ * memory-mapped rather than read onto the heap. Each column has a name
+ * and holds values of a single type: {@code Double}, {@code Long},
+ * {@code Boolean} or {@code String}. Any value may be missing.
+ *
+ * <p>Files are created from CSV with {@link #fromCsv(Path,Path)} and
+ * read with {@link #open(Path)}. The file starts with a header, which
+ * is followed by each of the columns in turn:
+ * <pre>
+ *   int     magic, "GCDS"
+ *   int     version
+ *   long    number of rows
+ *   int     number of columns
+ *   columns:
+ *     short   length of name, in bytes
+ *     byte[]  name, as UTF-8
+ *     byte    type
+ *     long    offset of the column's data in the file
+ *     long    length of the column's data
+ * </pre>
+ * A column's data starts with a bitset of which rows are present,
+ * packed 64 rows to a {@code long}. That's followed by the values: a
+ * {@code double} or {@code long} for each row, a bitset for booleans,
+ * and for strings the offset of each row's bytes, plus one for the end
+ * of the last one, followed by all the bytes as UTF-8. Everything is
+ * little-endian and the data of each column is aligned to 8 bytes.
+ *
+ * <p>Instances are immutable and thread-safe.
+ */
+public final class Dataset
+{
+    /**
+     * The magic number which files start with.
+     */
+    private static final int MAGIC = 0x47434453;
+
+    /**
+     * The version of the file format.
+     */
+    private static final int VERSION = 1;
+
+    /**
+     * The types of the columns, by their number in the file.
+     */
+    private static final Class<?>[] TYPES = {
+        Double.class, Long.class, Boolean.class, String.class
+    };
+
+    /**
+     * The numbers of the types.
+     */
+    private static final byte DOUBLE  = 0;
+    private static final byte LONG    = 1;
+    private static final byte BOOLEAN = 2;
+    private static final byte STRING  = 3;
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * The number of rows.
+     */
+    private final int mySize;
+
+    /**
+     * The names of the columns.
+     */
+    private final String[] myNames;
+
+    /**
+     * The type numbers of the columns.
+     */
+    private final byte[] myTypes;
+
+    /**
+     * The mapped data of each column.
+     */
+    private final ByteBuffer[] myData;
+
+    /**
+     * Where the values start in each column's data, after the bitset of
+     * which rows are present.
+     */
+    private final int myValuesStart;
+
+    /**
+     * Open a dataset file, mapping it into memory.
+     *
+     * @param file The file to open.
+     *
+     * @return The dataset.
+     *
+     * @throws IOException If the file could not be read, or was not a
+     *                     dataset which we can handle.
+     */
+    public static Dataset open(final Path file)
+        throws IOException
+    {
+        try (FileChannel channel = FileChannel.open(file,
+                                                    StandardOpenOption.READ))
+        {
+            // Read the header, which is small, rather than mapping the
+            // file to get at it; its fixed part comes first
+            final long length = channel.size();
+            if (length < 20) {
+                throw new IOException("Not a dataset file: " + file);
+            }
+            ByteBuffer header   = read(channel, file, 0, 20);
+            long       position = 20;
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a dataset file: " + file);
+            }
+            final int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException(
+                    "Unsupported dataset version " + version + ": " + file
+                );
+            }
+            final long rows       = header.getLong();
+            final int  numColumns = header.getInt();
+            if (rows < 0 || rows > Integer.MAX_VALUE || numColumns < 0) {
+                throw new IOException(
+                    "Can't handle " + rows + " rows and " +
+                    numColumns + " columns: " + file
+                );
+            }
+
+            final String[]     names = new String[numColumns];
+            final byte[]       types = new byte[numColumns];
+            final ByteBuffer[] data  = new ByteBuffer[numColumns];
+            for (int i=0; i < numColumns; i++) {
+                // Each column's entry is its name's length and then the
+                // rest of it
+                header = read(channel, file, position, 2);
+                final int nameLength = header.getShort() & 0xffff;
+                header = read(channel, file, position + 2, nameLength + 17);
+                position += 2 + nameLength + 17;
+
+                final byte[] name = new byte[nameLength];
+                header.get(name);
+                names[i] = new String(name, StandardCharsets.UTF_8);
+                types[i] = header.get();
+                final long offset = header.getLong();
+                final long size   = header.getLong();
+                if (types[i] < 0 || types[i] >= TYPES.length) {
+                    throw new IOException(
+                        "Bad type " + types[i] + " for column " + names[i]
+                    );
+                }
+                if (offset < 0 || size < 0 || offset + size > length ||
+                    size > Integer.MAX_VALUE)
+                {
+                    throw new IOException(
+                        "Bad extent for column " + names[i] + ": " +
+                        offset + "+" + size
+                    );
+                }
+                data[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                                      offset,
+                                      size)
+                                 .order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            // The mappings outlive the channel
+            return new Dataset((int)rows, names, types, data);
+        }
+    }
+
+    /**
+     * Convert a CSV file into a dataset file. The first line of the CSV
+     * must hold the names of the columns. The type of each column is
+     * the narrowest one which all of its values may be parsed as:
+     * {@code Long}, then {@code Double}, then {@code Boolean}, and
+     * otherwise {@code String}. Empty values are missing.
+     *
+     * <p>Fields are separated by commas and may be quoted with double
+     * quotes, in which case they may contain commas, newlines and
+     * doubled quotes. Blank lines are skipped.
+     *
+     * @param csv  The CSV file to read.
+     * @param file The dataset file to write.
+     *
+     * @throws IOException If the CSV could not be read or was malformed,
+     *                     or if the file could not be written.
+     */
+    public static void fromCsv(final Path csv, final Path file)
+        throws IOException
+    {
+        // The first pass works out the types and sizes
+        final List<String> fields = new ArrayList<>();
+        final String[] names;
+        final boolean[] longs;
+        final boolean[] doubles;
+        final boolean[] booleans;
+        final long[]    bytes;
+        long rows = 0;
+        try (BufferedReader reader =
+                 Files.newBufferedReader(csv, StandardCharsets.UTF_8))
+        {
+            if (!readRecord(reader, fields)) {
+                throw new IOException("No header in " + csv);
+            }
+            names    = fields.toArray(new String[fields.size()]);
+            longs    = new boolean[names.length];
+            doubles  = new boolean[names.length];
+            booleans = new boolean[names.length];
+            bytes    = new long   [names.length];
+            Arrays.fill(longs,    true);
+            Arrays.fill(doubles,  true);
+            Arrays.fill(booleans, true);
+            while (readRecord(reader, fields)) {
+                checkFields(csv, rows, names, fields);
+                for (int i=0; i < names.length; i++) {
+                    final String field = fields.get(i);
+                    if (field.isEmpty()) {
+                        continue;
+                    }
+                    longs   [i] &= (parseLong  (field) != null);
+                    doubles [i] &= (parseDouble(field) != null);
+                    booleans[i] &= (parseBoolean(field) != null);
+                    bytes   [i] += field.getBytes(StandardCharsets.UTF_8).length;
+                }
+                rows++;
+            }
+        }
+        if (rows > Integer.MAX_VALUE) {
+            throw new IOException("Too many rows in " + csv + ": " + rows);
+        }
+
+        // Now we can lay the file out
+        final byte[]   types   = new byte[names.length];
+        final byte[][] encoded = new byte[names.length][];
+        final long[]   offsets = new long[names.length];
+        final long[]   sizes   = new long[names.length];
+        long headerSize = 20;
+        for (int i=0; i < names.length; i++) {
+            encoded[i] = names[i].getBytes(StandardCharsets.UTF_8);
+            if (encoded[i].length > 0xffff) {
+                throw new IOException("Column name too long: " + names[i]);
+            }
+            types[i] = longs   [i] ? LONG    :
+                       doubles [i] ? DOUBLE  :
+                       booleans[i] ? BOOLEAN :
+                                     STRING;
+            headerSize += 2 + encoded[i].length + 1 + 8 + 8;
+        }
+        long offset = align(headerSize);
+        for (int i=0; i < names.length; i++) {
+            sizes  [i] = columnSize(types[i], (int)rows, bytes[i]);
+            offsets[i] = offset;
+            offset = align(offset + sizes[i]);
+            if (sizes[i] > Integer.MAX_VALUE) {
+                throw new IOException("Column too large: " + names[i]);
+            }
+        }
+
+        try (FileChannel channel =
+                 FileChannel.open(file,
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING,
+                                  StandardOpenOption.READ,
+                                  StandardOpenOption.WRITE))
+        {
+            // The header
+            final ByteBuffer header =
+                ByteBuffer.allocate((int)headerSize)
+                          .order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC);
+            header.putInt(VERSION);
+            header.putLong(rows);
+            header.putInt(names.length);
+            for (int i=0; i < names.length; i++) {
+                header.putShort((short)encoded[i].length);
+                header.put(encoded[i]);
+                header.put(types[i]);
+                header.putLong(offsets[i]);
+                header.putLong(sizes[i]);
+            }
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header, headerSize - header.remaining());
+            }
+
+            // The columns, which we write into in the second pass
+            final MappedByteBuffer[] data = new MappedByteBuffer[names.length];
+            final long[] stringOffsets    = new long[names.length];
+            for (int i=0; i < names.length; i++) {
+                data[i] = channel.map(FileChannel.MapMode.READ_WRITE,
+                                      offsets[i],
+                                      sizes[i]);
+                data[i].order(ByteOrder.LITTLE_ENDIAN);
+            }
+            try (BufferedReader reader =
+                     Files.newBufferedReader(csv, StandardCharsets.UTF_8))
+            {
+                readRecord(reader, fields);
+                final int valuesStart = 8 * Column.words((int)rows);
+                for (int row=0; row < rows; row++) {
+                    if (!readRecord(reader, fields)) {
+                        throw new IOException("CSV changed while reading: " + csv);
+                    }
+                    checkFields(csv, row, names, fields);
+                    for (int i=0; i < names.length; i++) {
+                        write(data[i], types[i], (int)rows, valuesStart,
+                              row, fields.get(i), stringOffsets, i);
+                    }
+                }
+            }
+            for (MappedByteBuffer buffer : data) {
+                buffer.force();
+            }
+        }
+    }
+
+    /**
+     * CTOR.
+     */
+    private Dataset(final int          size,
+                    final String[]     names,
+                    final byte[]       types,
+                    final ByteBuffer[] data)
+    {
+        mySize        = size;
+        myNames       = names;
+        myTypes       = types;
+        myData        = data;
+        myValuesStart = 8 * Column.words(size);
+    }
+
+    /**
+     * The number of rows.
+     *
+     * @return The number of rows.
+     */
+    public int size()
+    {
+        return mySize;
+    }
+
+    /**
+     * The number of columns.
+     *
+     * @return The number of columns.
+     */
+    public int numColumns()
+    {
+        return myNames.length;
+    }
+
+    /**
+     * The name of a column.
+     *
+     * @param column The index of the column.
+     *
+     * @return The name.
+     */
+    public String getName(final int column)
+    {
+        return myNames[column];
+    }
+
+    /**
+     * The type of the values in a column.
+     *
+     * @param column The index of the column.
+     *
+     * @return The type.
+     */
+    public Class<?> getType(final int column)
+    {
+        return TYPES[myTypes[column]];
+    }
+
+    /**
+     * Find a column by name.
+     *
+     * @param name The name of the column.
+     *
+     * @return The index of the column, or {@code -1} if there was none.
+     */
+    public int indexOf(final String name)
+    {
+        for (int i=0; i < myNames.length; i++) {
+            if (myNames[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get a value.
+     *
+     * @param column The index of the column.
+     * @param row    The index of the row.
+     *
+     * @return The value, or {@code null} if it was missing.
+     *
+     * @throws IndexOutOfBoundsException If the row was not in bounds.
+     */
+    public Object get(final int column, final int row)
+        throws IndexOutOfBoundsException
+    {
+        if (row < 0 || row >= mySize) {
+            throw new IndexOutOfBoundsException(
+                "Row " + row + " not in [0.." + mySize + ")"
+            );
+        }
+        final ByteBuffer data = myData[column];
+        if (!isBitSet(data, 0, row)) {
+            return null;
+        }
+        switch (myTypes[column]) {
+        case DOUBLE:
+            return data.getDouble(myValuesStart + 8 * row);
+        case LONG:
+            return data.getLong(myValuesStart + 8 * row);
+        case BOOLEAN:
+            return isBitSet(data, myValuesStart, row);
+        default:
+            return getString(data, row);
+        }
+    }
+
+    /**
+     * Read a run of rows of a column into a {@link Column}.
+     *
+     * @param column The index of the column.
+     * @param start  The index of the first row.
+     * @param size   The number of rows.
+     *
+     * @return The column of values.
+     *
+     * @throws IndexOutOfBoundsException If the rows were not in bounds.
+     */
+    public Column column(final int column, final int start, final int size)
+        throws IndexOutOfBoundsException
+    {
+        if (start < 0 || size < 0 || start + size > mySize) {
+            throw new IndexOutOfBoundsException(
+                "Rows [" + start + ".." + (start + size) + ") " +
+                "not in [0.." + mySize + ")"
+            );
+        }
+
+        final ByteBuffer data   = myData[column];
+        final Column     result = Column.create(getType(column), size);
+        for (int row=0; row < size; row++) {
+            result.setMissing(row, !isBitSet(data, 0, start + row));
+        }
+        switch (myTypes[column]) {
+        case DOUBLE: {
+            final double[] values = ((Column.Doubles)result).values();
+            data.duplicate()
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .position(myValuesStart + 8 * start)
+                .asDoubleBuffer()
+                .get(values, 0, size);
+            break;
+        }
+        case LONG: {
+            final long[] values = ((Column.Longs)result).values();
+            data.duplicate()
+                .order(ByteOrder.LITTLE_ENDIAN)
+                .position(myValuesStart + 8 * start)
+                .asLongBuffer()
+                .get(values, 0, size);
+            break;
+        }
+        case BOOLEAN: {
+            final Column.Booleans booleans = (Column.Booleans)result;
+            for (int row=0; row < size; row++) {
+                booleans.setBoolean(row,
+                                    isBitSet(data, myValuesStart, start + row));
+            }
+            break;
+        }
+        default: {
+            for (int row=0; row < size; row++) {
+                if (!result.isMissing(row)) {
+                    result.set(row, getString(data, start + row));
+                }
+            }
+            break;
+        }
+        }
+        return result;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append("Dataset[rows=").append(mySize);
+        for (int i=0; i < myNames.length; i++) {
+            sb.append(", ")
+              .append(getType(i).getSimpleName())
+              .append(':')
+              .append(myNames[i]);
+        }
+        return sb.append(']').toString();
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Get a string value, which is present.
+     */
+    private String getString(final ByteBuffer data, final int row)
+    {
+        final int    offsets = myValuesStart;
+        final int    bytes   = offsets + 8 * (mySize + 1);
+        final long   from    = data.getLong(offsets + 8 * row);
+        final long   to      = data.getLong(offsets + 8 * (row + 1));
+        final byte[] string  = new byte[(int)(to - from)];
+        data.get(bytes + (int)from, string);
+        return new String(string, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Read part of a file.
+     *
+     * @param channel  The file.
+     * @param file     Where the file is, for errors.
+     * @param position Where to read from.
+     * @param size     How many bytes to read.
+     *
+     * @return The bytes, ready to be read.
+     *
+     * @throws IOException If they could not be read, or the file was
+     *                     too short.
+     */
+    private static ByteBuffer read(final FileChannel channel,
+                                   final Path        file,
+                                   final long        position,
+                                   final int         size)
+        throws IOException
+    {
+        final ByteBuffer buffer =
+            ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Truncated dataset file: " + file);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Whether a bit of a bitset is set.
+     */
+    private static boolean isBitSet(final ByteBuffer data,
+                                    final int        start,
+                                    final int        bit)
+    {
+        return (data.getLong(start + 8 * (bit >>> 6)) & (1L << bit)) != 0;
+    }
+
+    /**
+     * Set a bit of a bitset.
+     */
+    private static void setBit(final ByteBuffer data,
+                               final int        start,
+                               final int        bit)
+    {
+        final int index = start + 8 * (bit >>> 6);
+        data.putLong(index, data.getLong(index) | (1L << bit));
+    }
+
+    /**
+     * Write a value from the CSV into the data of its column.
+     */
+    private static void write(final ByteBuffer data,
+                              final byte       type,
+                              final int        rows,
+                              final int        valuesStart,
+                              final int        row,
+                              final String     field,
+                              final long[]     stringOffsets,
+                              final int        column)
+    {
+        final boolean present = !field.isEmpty();
+        if (present) {
+            setBit(data, 0, row);
+        }
+        switch (type) {
+        case DOUBLE:
+            data.putDouble(valuesStart + 8 * row,
+                           present ? parseDouble(field) : Double.NaN);
+            break;
+
+        case LONG:
+            data.putLong(valuesStart + 8 * row,
+                         present ? parseLong(field) : 0L);
+            break;
+
+        case BOOLEAN:
+            if (present && parseBoolean(field)) {
+                setBit(data, valuesStart, row);
+            }
+            break;
+
+        default: {
+            // The offsets are followed by the bytes
+            final byte[] bytes = field.getBytes(StandardCharsets.UTF_8);
+            final int    start = valuesStart + 8 * (rows + 1);
+            final long   from  = stringOffsets[column];
+            data.put(start + (int)from, bytes);
+            stringOffsets[column] = from + bytes.length;
+            data.putLong(valuesStart + 8 *  row,      from);
+            data.putLong(valuesStart + 8 * (row + 1), from + bytes.length);
+            break;
+        }
+        }
+    }
+
+    /**
+     * The size of the data of a column, in bytes.
+     */
+    private static long columnSize(final byte type,
+                                   final int  rows,
+                                   final long bytes)
+    {
+        final long bitset = 8L * Column.words(rows);
+        switch (type) {
+        case DOUBLE:
+        case LONG:    return bitset + 8L * rows;
+        case BOOLEAN: return bitset + bitset;
+        default:      return bitset + 8L * (rows + 1) + bytes;
+        }
+    }
+
+    /**
+     * Round an offset up to a multiple of 8.
+     */
+    private static long align(final long offset)
+    {
+        return (offset + 7) & ~7L;
+    }
+
+    /**
+     * Ensure that a record of the CSV has the right number of fields.
+     */
+    private static void checkFields(final Path         csv,
+                                    final long         row,
+                                    final String[]     names,
+                                    final List<String> fields)
+        throws IOException
+    {
+        if (fields.size() != names.length) {
+            throw new IOException(
+                "Row " + row + " of " + csv + " has " + fields.size() + " " +
+                "fields but expected " + names.length
+            );
+        }
+    }
+
+    /**
+     * Parse a field as a {@code long}.
+     *
+     * @return The value, or {@code null} if it wasn't one.
+     */
+    private static Long parseLong(final String field)
+    {
+        try {
+            return Long.valueOf(field.trim());
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a field as a {@code double}.
+     *
+     * @return The value, or {@code null} if it wasn't one.
+     */
+    private static Double parseDouble(final String field)
+    {
+        try {
+            return Double.valueOf(field.trim());
+        }
+        catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Parse a field as a {@code boolean}.
+     *
+     * @return The value, or {@code null} if it wasn't one.
+     */
+    private static Boolean parseBoolean(final String field)
+    {
+        final String trimmed = field.trim();
+        return trimmed.equalsIgnoreCase("true")  ? Boolean.TRUE  :
+               trimmed.equalsIgnoreCase("false") ? Boolean.FALSE :
+                                                   null;
+    }
+
+    /**
+     * Read a record of the CSV, skipping any blank lines before it.
+     *
+     * @param reader Where to read from.
+     * @param fields Where to put the fields, replacing what was there.
+     *
+     * @return Whether there was a record; {@code false} at the end.
+     */
+    private static boolean readRecord(final BufferedReader reader,
+                                      final List<String>   fields)
+        throws IOException
+    {
+        fields.clear();
+        final StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean any    = false;
+        int c;
+        while ((c = reader.read()) >= 0) {
+            if (quoted) {
+                if (c == '"') {
+                    // A doubled quote is a quote, anything else ends it
+                    reader.mark(1);
+                    if (reader.read() == '"') {
+                        field.append('"');
+                    }
+                    else {
+                        reader.reset();
+                        quoted = false;
+                    }
+                }
+                else {
+                    field.append((char)c);
+                }
+            }
+            else if (c == '"') {
+                quoted = true;
+            }
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else if (c == '\n') {
+                if (any) {
+                    break;
+                }
+                else {
+                    // A blank line, which is not a record
+                    continue;
+                }
+            }
+            else if (c != '\r') {
+                field.append((char)c);
+            }
+
+            // Anything but the end of a line, even a quote, makes a record
+            if (c != '\r') {
+                any = true;
+            }
+        }
+        if (quoted) {
+            throw new IOException("Unterminated quote in CSV");
+        }
+        if (any) {
+            fields.add(field.toString());
+        }
+        return any;
+    }
+}
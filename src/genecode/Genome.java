@@ -3,7 +3,11 @@ package genecode;
 import genecode.gene.Gene;
 import genecode.gene.GeneFactory;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -11,17 +15,34 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.IntUnaryOperator;
 
 /**
  * A full genome.
  *
  * <p>Instances of this class are the canonical location for all the
- * genes in a single "organism". One gene instance may refer to
- * another via a handle; however that other gene may, or may not,
- * exist within the same genome. I.e. It's possible for one gene to
- * depend on another which isn't available to it.
+ * genes in a single "organism". Each gene lives in a numbered slot,
+ * and one gene instance may refer to another via its slot; however
+ * that other gene may, or may not, exist within the same genome. I.e.
+ * It's possible for one gene to depend on another which isn't
+ * available to it.
+ *
+ * <p>The slots are local to a genome, and its clones, so genes which
+ * are copied in from an unrelated genome have their references
+ * renumbered as they arrive. The gene's {@link Gene.Handle} is what
+ * identifies it across genomes. Slots which are emptied are not
+ * reused, so that anything which referred to the gene which was there
+ * still finds nothing; the slots are renumbered when too many of them
+ * are empty.
+ *
+ * <p>Genes are immutable, so genomes share gene instances freely; a
+ * genome which mutates one of its genes simply replaces it with the
+ * mutated copy. The structures which hold the genes are themselves
+ * shared with any clones of the genome, until one of them modifies
+ * them, so cloning a genome is cheap.
  */
 public class Genome
     implements Cloneable
@@ -76,6 +97,46 @@ public class Genome
         public double coverage(final Genome genome);
     }
 
+    /**
+     * The raw fitness of a genome, as computed by some {@link Health}
+     * implementation before it applies anything which varies from one
+     * generation to the next. This is remembered by the genome until it
+     * changes.
+     */
+    /*package*/ static final class Fitness
+    {
+        /**
+         * What computed the fitness.
+         */
+        public final Object myOwner;
+
+        /**
+         * How well the genome matched.
+         */
+        public final double myMatchness;
+
+        /**
+         * The genome's context coverage.
+         */
+        public final double myCoverage;
+
+        /**
+         * CTOR.
+         *
+         * @param owner     What computed the fitness.
+         * @param matchness How well the genome matched.
+         * @param coverage  The genome's context coverage.
+         */
+        public Fitness(final Object owner,
+                       final double matchness,
+                       final double coverage)
+        {
+            myOwner     = owner;
+            myMatchness = matchness;
+            myCoverage  = coverage;
+        }
+    }
+
     // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
     /**
@@ -88,6 +149,32 @@ public class Genome
      */
     private static final AtomicLong ourNextFamily = new AtomicLong();
 
+    /**
+     * How we uniquely number the versions of the genomes.
+     */
+    private static final AtomicLong ourNextVersion = new AtomicLong();
+
+    /**
+     * How we publish our fitness, once it's computed.
+     */
+    private static final VarHandle FITNESS;
+    static {
+        try {
+            FITNESS = MethodHandles.lookup().findVarHandle(Genome.class,
+                                                           "myFitness",
+                                                           Fitness.class);
+        }
+        catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    /**
+     * How many empty slots we tolerate, over and above as many as
+     * there are genes, before we renumber them.
+     */
+    private static final int MIN_EMPTY_SLOTS = 32;
+
     // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
     /**
@@ -126,19 +213,14 @@ public class Genome
     public final double myMaxMutationFactor;
 
     /**
-     * The mapping from handle to gene.
+     * The genes, by slot. Empty slots are {@code null}.
      */
-    private Map<Gene.Handle,Gene> myGenes;
+    private ChunkedList<Gene> myGenes;
 
     /**
-     * All the gene handles.
+     * The slots which hold genes, all together and by return type.
      */
-    private List<Gene.Handle> myHandles;
-
-    /**
-     * The gene handles, keyed by return type.
-     */
-    private Map<Class<?>,List<Gene.Handle>> myHandlesByClass;
+    private SlotPools mySlots;
 
     /**
      * The types of our outputs.
@@ -151,15 +233,36 @@ public class Genome
     private List<String> myOutputNames;
 
     /**
-     * The outputs of our genome.
+     * The slots of the genes which compute our outputs.
      */
-    private Gene.Handle[] myOutputs;
+    private int[] myOutputs;
 
     /**
      * The mutation factor.
      */
     private double myMutationFactor;
 
+    /**
+     * Our version, which changes whenever we do.
+     */
+    private long myVersion;
+
+    /**
+     * Our compiled form, if it has been created yet.
+     */
+    private volatile Program myProgram;
+
+    /**
+     * Our raw fitness, if it has been computed since we last changed.
+     */
+    private volatile Fitness myFitness;
+
+    /**
+     * Our graph size, or {@code -1} if it hasn't been computed since we
+     * last changed.
+     */
+    private volatile int myGraphSize = -1;
+
     // ----------------------------------------------------------------------
 
     /**
@@ -194,8 +297,9 @@ public class Genome
                   final double           maxMutationFactor)
     {
         // I am not a number! I am a-- oh wait...
-        myId     = ourNextId    .getAndIncrement();
-        myFamily = ourNextFamily.getAndIncrement();
+        myId      = ourNextId     .getAndIncrement();
+        myFamily  = ourNextFamily .getAndIncrement();
+        myVersion = ourNextVersion.getAndIncrement();
 
         // If we are newly generated then no parent and we are the
         // first generation
@@ -209,24 +313,24 @@ public class Genome
         myMaxSize = maxSize;
         myMaxMutationFactor = Math.max(0.0, Math.min(1.0, maxMutationFactor));
 
-        // All the genes
-        myGenes = new HashMap<>(genes.size());
-        genes.forEach(gene -> myGenes.put(gene.getHandle(), gene));
-
-        // Handles...
-        myHandles        = new ArrayList<>(myGenes.keySet());
-        myHandlesByClass = new HashMap<>();
-        for (Map.Entry<Gene.Handle,Gene> entry : myGenes.entrySet()) {
-            myHandlesByClass.computeIfAbsent(entry.getValue().getReturnType(),
-                                             klass -> new ArrayList<>())
-                            .add(entry.getKey());
+        // All the genes, and their slots
+        myGenes = new ChunkedList<>();
+        mySlots = new SlotPools();
+        final Set<Gene.Handle> handles = new HashSet<>();
+        for (Gene gene : genes) {
+            if (handles.add(gene.getHandle())) {
+                addGene(gene);
+            }
         }
 
         // Set up our parameter genes
-        myMutationFactor = Math.random() * myMaxMutationFactor;
+        myMutationFactor =
+            ThreadLocalRandom.current().nextDouble() * myMaxMutationFactor;
 
         // Init all the genes now
-        myGenes.values().forEach(gene -> gene.init(this));
+        for (int i=0; i < myGenes.size(); i++) {
+            myGenes.get(i).init(this);
+        }
 
         // And set up the outputs
         myOutputTypes =
@@ -241,9 +345,9 @@ public class Genome
         }
         myOutputNames =
             Collections.unmodifiableList(tweakedOutputNames);
-        myOutputs = new Gene.Handle[outputTypes.size()];
+        myOutputs = new int[outputTypes.size()];
         for (int i=0; i < myOutputs.length; i++) {
-            myOutputs[i] = pickAnyHandle(myOutputTypes.get(i));
+            myOutputs[i] = pickAnySlot(myOutputTypes.get(i));
         }
     }
 
@@ -257,6 +361,18 @@ public class Genome
         return myId;
     }
 
+    /**
+     * The genome's version. This is globally unique, and changes
+     * whenever the genome is modified, so anything which was worked out
+     * from the genome may be keyed by it.
+     *
+     * @return The version.
+     */
+    public long getVersion()
+    {
+        return myVersion;
+    }
+
     /**
      * The genome family's globally unique ID.
      *
@@ -288,36 +404,89 @@ public class Genome
     }
 
     /**
-     * Pick a handle at random from the genome.
+     * How this genome creates new gene instances.
+     *
+     * @return The gene factory.
+     */
+    public GeneFactory getGeneFactory()
+    {
+        return myFactory;
+    }
+
+    /**
+     * Pick the slot of a gene at random from the genome.
      *
      * @param klass  The return type of the gene.
      *
-     * @return The handle.
+     * @return The slot, or {@code -1} if there were no genes of the
+     *         given type.
      */
-    public Gene.Handle pickAnyHandle(final Class<?> klass)
+    public int pickAnySlot(final Class<?> klass)
     {
-        final List<Gene.Handle> handles =
-            myHandlesByClass.getOrDefault(klass, Collections.emptyList());
-        if (handles.isEmpty()) {
-            return null;
-        }
-        else {
-            return handles.get((int)(Math.random() * handles.size()));
+        return mySlots.pick(SlotPools.typeOf(klass));
+    }
+
+    /**
+     * Get the gene in the given slot, if any. Do <b>NOT</b> retain or
+     * mutate the value which you get back.
+     *
+     * @param slot The slot of the gene to get.
+     *
+     * @return The {@link Gene} in the given slot, or {@code null} if
+     *         there is none.
+     */
+    public Gene getInSlot(final int slot)
+    {
+        return (slot < 0 || slot >= myGenes.size()) ? null : myGenes.get(slot);
+    }
+
+    /**
+     * Find the slot of the gene with the given handle. This has to
+     * search the genome, so it should not be used for anything which
+     * needs to be fast.
+     *
+     * @param handle The handle of the gene to look for.
+     *
+     * @return The slot, or {@code -1} if there was no such gene.
+     */
+    public int slotOf(final Gene.Handle handle)
+    {
+        if (handle != null) {
+            for (int i=0; i < mySlots.size(); i++) {
+                final int slot = mySlots.get(i);
+                if (handle.equals(myGenes.get(slot).getHandle())) {
+                    return slot;
+                }
+            }
         }
+        return -1;
+    }
+
+    /**
+     * The number of slots in this genome. Every gene's slot is less
+     * than this, though not every slot holds a gene.
+     *
+     * @return The number of slots.
+     */
+    public int getNumSlots()
+    {
+        return myGenes.size();
     }
 
     /**
      * Get the gene with the given handle, if any. Do <b>NOT</b>
-     * retain or mutate the value which you get back.
+     * retain or mutate the value which you get back. Genes refer to
+     * each other by slot, via {@link #getInSlot(int)}, which is far
+     * cheaper than this.
      *
      * @param handle The handle of the gene to get.
      *
-     * @return The {@link Gene} for the given handle, or {@code nhll}
+     * @return The {@link Gene} for the given handle, or {@code null}
      *         if it does not exist.
      */
     public Gene get(final Gene.Handle handle)
     {
-        return myGenes.get(handle);
+        return getInSlot(slotOf(handle));
     }
 
     /**
@@ -330,7 +499,19 @@ public class Genome
      */
     public Gene get(final int index)
     {
-        return get(myHandles.get(index));
+        return myGenes.get(mySlots.get(index));
+    }
+
+    /**
+     * Get the slot of the gene at the given index.
+     *
+     * @param index The index of the gene to get.
+     *
+     * @return The slot.
+     */
+    public int getSlot(final int index)
+    {
+        return mySlots.get(index);
     }
 
     /**
@@ -342,7 +523,7 @@ public class Genome
      */
     public Gene.Handle getHandle(final int index)
     {
-        return myHandles.get(index);
+        return get(index).getHandle();
     }
 
     /**
@@ -352,7 +533,7 @@ public class Genome
      */
     public int getGenomeSize()
     {
-        return myHandles.size();
+        return mySlots.size();
     }
 
     /**
@@ -373,12 +554,18 @@ public class Genome
      */
     public int getGraphSize()
     {
-        int size = 0;
-        for (Gene.Handle handle : myOutputs) {
-            final Gene gene = myGenes.get(handle);
-            if (gene != null) {
-                size += gene.getGraphSize(this);
+        // Walking the graph is costly, so we remember the answer until
+        // we change. Racing threads will only compute the same value.
+        int size = myGraphSize;
+        if (size < 0) {
+            size = 0;
+            for (int slot : myOutputs) {
+                final Gene gene = getInSlot(slot);
+                if (gene != null) {
+                    size += gene.getGraphSize(this);
+                }
             }
+            myGraphSize = size;
         }
         return size;
     }
@@ -408,6 +595,89 @@ public class Genome
         return myOutputTypes.get(output);
     }
 
+    /**
+     * Get the slot of the gene which computes the given output.
+     *
+     * @param output The index of the required output.
+     *
+     * @return The slot, which may not hold a gene.
+     *
+     * @throws IndexOutOfBoundsException If the given output was not
+     *                                   in bounds.
+     */
+    public int getOutputSlot(final int output)
+        throws IndexOutOfBoundsException
+    {
+        return myOutputs[output];
+    }
+
+    /**
+     * Get the handle of the gene which computes the given output.
+     *
+     * @param output The index of the required output.
+     *
+     * @return The handle, or {@code null} if there is none.
+     *
+     * @throws IndexOutOfBoundsException If the given output was not
+     *                                   in bounds.
+     */
+    public Gene.Handle getOutputHandle(final int output)
+        throws IndexOutOfBoundsException
+    {
+        final Gene gene = getInSlot(myOutputs[output]);
+        return (gene == null) ? null : gene.getHandle();
+    }
+
+    /**
+     * Get the compiled form of this genome. This is created when it's
+     * first asked for and is what should be used when evaluating the
+     * genome many times.
+     *
+     * @return The program for this genome.
+     */
+    public Program getProgram()
+    {
+        // Benign race; two threads may compile at the same time but
+        // will get equivalent programs
+        Program program = myProgram;
+        if (program == null) {
+            program = Program.compile(this);
+            myProgram = program;
+        }
+        return program;
+    }
+
+    /**
+     * Get the raw fitness of this genome, computing it if it has not
+     * been computed by the given owner since the genome last changed.
+     *
+     * <p>This never blocks. Threads which race to compute the fitness
+     * will each do so, but only the first result is kept, and it's what
+     * they all give back. Since the fitness of a genome is a function of
+     * the genome, the results are all the same anyway.
+     *
+     * @param owner   What computes the fitness.
+     * @param compute How to compute the fitness.
+     *
+     * @return The fitness.
+     */
+    /*package*/ Fitness fitnessOf(final Object                   owner,
+                                  final Function<Genome,Fitness> compute)
+    {
+        final Fitness seen = myFitness;
+        if (seen != null && seen.myOwner == owner) {
+            return seen;
+        }
+
+        // Publish ours, unless someone beat us to it
+        final Fitness fitness = compute.apply(this);
+        final Fitness witness =
+            (Fitness)FITNESS.compareAndExchange(this, seen, fitness);
+        return (witness == seen || witness == null || witness.myOwner != owner)
+            ? fitness
+            : witness;
+    }
+
     /**
      * Evaluate the genome in the given context.
      *
@@ -422,7 +692,7 @@ public class Genome
     public Object evaluate(final Context context, final int output)
         throws IndexOutOfBoundsException
     {
-        final Gene gene = myGenes.get(myOutputs[output]);
+        final Gene gene = getInSlot(myOutputs[output]);
         return (gene == null) ? null : gene.evaluate(context, this);
     }
 
@@ -470,7 +740,7 @@ public class Genome
           .append("}");
 
         for (int i=0; i < myOutputs.length; i++) {
-            final Gene gene = myGenes.get(myOutputs[i]);
+            final Gene gene = getInSlot(myOutputs[i]);
             final String output;
             if (gene == null) {
                 output = "null";
@@ -497,23 +767,24 @@ public class Genome
         try {
             final Genome result = (Genome)super.clone();
             result.myId        = ourNextId.getAndIncrement();
+            result.myVersion   = ourNextVersion.getAndIncrement();
             // myFamily is inherited
             result.myParentId  = myId;
             result.myGeneration++;
             result.myOutputs   = result.myOutputs.clone();
-            // myOutputTypes is immutable so we can hold the cloned value
-            result.myGenes     = new HashMap<>();
-            for (Map.Entry<Gene.Handle,Gene> entry : myGenes.entrySet()) {
-                result.myGenes.put(entry.getKey(), entry.getValue().clone());
-            }
-            result.myHandles = new ArrayList<>(result.myGenes.keySet());
-            result.myHandlesByClass = new HashMap<>();
-            for (Map.Entry<Class<?>,List<Gene.Handle>> entry :
-                     myHandlesByClass.entrySet())
-            {
-                result.myHandlesByClass.put(entry.getKey(),
-                                            new ArrayList<>(entry.getValue()));
-            }
+            // myFitness and myGraphSize are inherited, since we are the
+            // same as our parent until we change. So is myProgram, unless
+            // it refers back to the genome which it was compiled from;
+            // the parent might be modified in place later on.
+            final Program program = myProgram;
+            result.myProgram =
+                (program != null && program.isSelfContained()) ? program
+                                                               : null;
+            // myOutputTypes is immutable so we can hold the cloned
+            // value, and the same goes for the genes. The slots are
+            // shared until either of us modifies them.
+            result.myGenes = myGenes.copy();
+            result.mySlots = mySlots.copy();
             return result;
         }
         catch (CloneNotSupportedException e) {
@@ -533,31 +804,46 @@ public class Genome
      */
     public void copyFrom(final Genome that)
     {
-        // The set of gene handles which we will copy
-        final Set<Gene.Handle> handles = new HashSet<>();
+        // The slots, in the other genome, of the genes which we will
+        // copy
+        final BitSet slots = new BitSet(that.getNumSlots());
 
         // Possibly pull in the full output trees from the other genome
         for (int i=0; i < that.numOutputs(); i++) {
             // Choose whether we want to take this gene
-            if (Math.random() < myMutationFactor) {
-                final List<Gene.Handle> list = new ArrayList<>();
-                getGraphHandles(that.myOutputs[i], list);
-                handles.addAll(list);
+            if (ThreadLocalRandom.current().nextDouble() < myMutationFactor) {
+                that.getGraphSlots(that.myOutputs[i], slots);
             }
         }
 
         // Now walk the genes in the other genome and possibly pull
         // them into ours
-        for (Gene.Handle handle : that.myGenes.keySet()) {
+        for (int i=0; i < that.mySlots.size(); i++) {
             // Choose whether we want to take this gene
-            if (Math.random() < myMutationFactor) {
-                handles.add(handle);
+            if (ThreadLocalRandom.current().nextDouble() < myMutationFactor) {
+                slots.set(that.mySlots.get(i));
             }
         }
+        if (slots.isEmpty()) {
+            return;
+        }
+
+        // We'll need recompiling, and re-evaluating
+        changed();
+
+        // Where we hold each of our genes, so that we can spot the ones
+        // which we already have
+        final Map<Gene.Handle,Integer> ourSlots = new HashMap<>();
+        for (int i=0; i < mySlots.size(); i++) {
+            final int slot = mySlots.get(i);
+            ourSlots.put(myGenes.get(slot).getHandle(), slot);
+        }
 
-        // Now walk the resultant set and pull them over
-        for (Gene.Handle handle : handles) {
-            final Gene gene = that.get(handle);
+        // Now walk the resultant set and pull them over. Their
+        // references are to the other genome's slots to start with.
+        final List<Integer> copied = new ArrayList<>();
+        for (int i = slots.nextSetBit(0); i >= 0; i = slots.nextSetBit(i + 1)) {
+            final Gene gene = that.getInSlot(i);
 
             // Ignore missing genes
             if (gene == null) {
@@ -566,32 +852,46 @@ public class Genome
 
             // If we already have this gene then we replace our
             // existing copy
-            if (myGenes.containsKey(handle)) {
-                myGenes.put(handle, gene);
-            }
-            else if (myGenes.isEmpty() ||
-                     Math.random() > (double)getGenomeSize() / myMaxSize)
-            {
-                // Copy in the gene directly
-                myGenes         .put(handle, gene);
-                myHandles       .add(handle);
-                myHandlesByClass.computeIfAbsent(gene.getReturnType(),
-                                                 klass -> new ArrayList<>())
-                                .add(handle);
+            final Integer slot = ourSlots.get(gene.getHandle());
+            if (slot != null) {
+                myGenes.set(slot, gene);
+                copied.add(slot);
             }
             else {
-                // Replace an existing gene with this one. First,
-                // choose a random gene and junk it.
-                removeRandomGene();
+                if (!mySlots.isEmpty() &&
+                    ThreadLocalRandom.current().nextDouble() <=
+                        (double)getGenomeSize() / myMaxSize)
+                {
+                    // Replace an existing gene with this one. First,
+                    // choose a random gene and junk it.
+                    ourSlots.remove(removeRandomGene().getHandle());
+                }
 
                 // And then add in the new gene
-                myGenes         .put(handle, gene);
-                myHandles       .add(handle);
-                myHandlesByClass.computeIfAbsent(gene.getReturnType(),
-                                                 klass -> new ArrayList<>())
-                                .add(handle);
+                final int added = addGene(gene);
+                ourSlots.put(gene.getHandle(), added);
+                copied.add(added);
             }
         }
+
+        // Now renumber the references of the genes which we copied so
+        // that they are to our slots. Anything which we don't have is
+        // missing.
+        final IntUnaryOperator mapping = thatSlot -> {
+            final Gene    gene = that.getInSlot(thatSlot);
+            final Integer slot =
+                (gene == null) ? null : ourSlots.get(gene.getHandle());
+            return (slot == null) ? -1 : slot;
+        };
+        for (int slot : copied) {
+            final Gene gene = myGenes.get(slot);
+            if (gene != null) {
+                myGenes.set(slot, gene.remap(mapping));
+            }
+        }
+
+        // Tidy up
+        compactIfSparse();
     }
 
     /**
@@ -606,67 +906,137 @@ public class Genome
                 Math.min(
                     myMaxMutationFactor,
                     myMutationFactor +
-                        (myMaxMutationFactor * 0.1 * (Math.random() - 0.5))
+                        (myMaxMutationFactor * 0.1 *
+                         (ThreadLocalRandom.current().nextDouble() - 0.5))
                 )
             );
 
-        // Mutate all the genes
-        myGenes.forEach(
-            (handle, gene) -> gene.mutate(this,
-                                          myMutationFactor)
-        );
+        // Mutate all the genes, replacing them with their mutated
+        // copies
+        boolean changed = false;
+        for (int i=0; i < mySlots.size(); i++) {
+            final int  slot    = mySlots.get(i);
+            final Gene gene    = myGenes.get(slot);
+            final Gene mutated = gene.mutate(this, myMutationFactor);
+            if (mutated != gene) {
+                myGenes.set(slot, mutated);
+                changed = true;
+            }
+        }
 
         // Possibly insert or remove a random gene
-        if (Math.random() < myMutationFactor) {
+        if (ThreadLocalRandom.current().nextDouble() < myMutationFactor) {
             // Which?
-            if (Math.random() >= 0.5) {
-                if (!myGenes.isEmpty()) {
+            if (ThreadLocalRandom.current().nextDouble() >= 0.5) {
+                if (!mySlots.isEmpty()) {
                     removeRandomGene();
+                    changed = true;
                 }
             }
             else {
-                if (myGenes.size() < myMaxSize) {
+                if (mySlots.size() < myMaxSize) {
                     final Gene gene = myFactory.generate();
                     gene.init(this);
-                    myGenes         .put(gene.getHandle(), gene);
-                    myHandles       .add(gene.getHandle());
-                    myHandlesByClass.computeIfAbsent(gene.getReturnType(),
-                                                     klass -> new ArrayList<>())
-                                    .add(gene.getHandle());
+                    addGene(gene);
+                    changed = true;
                 }
             }
         }
+
+        // We'll need recompiling, and re-evaluating, if any of that
+        // did anything
+        if (changed) {
+            changed();
+        }
+
+        // Tidy up
+        compactIfSparse();
     }
 
     // ----------------------------------------------------------------------
 
     /**
-     * Get the graph size for a handle.
+     * Add the slots of all the genes in the graph rooted at the given
+     * slot, which are not already in the given set.
      */
-    private void getGraphHandles(final Gene.Handle       handle,
-                                 final List<Gene.Handle> dest)
+    private void getGraphSlots(final int    slot,
+                               final BitSet dest)
     {
-        final Gene gene = myGenes.get(handle);
-        if (gene == null) {
-            dest.add(handle);
-        }
-        else {
-            gene.getGraphHandles(this, dest);
+        final Gene gene = getInSlot(slot);
+        if (gene != null && !dest.get(slot)) {
+            dest.set(slot);
+            gene.getGraphSlots(this, dest);
         }
     }
 
     /**
-     * Remove a random gene.
+     * Note that we have been modified, and so anything which was worked
+     * out from us is now stale.
      */
-    private void removeRandomGene()
+    private void changed()
     {
-        if (!myGenes.isEmpty()) {
-            final int index = (int)(Math.random() * myHandles.size());
-            final Gene.Handle handle = myHandles.remove(index);
-            final Gene        gene   = myGenes  .remove(handle);
-            myHandlesByClass.getOrDefault(gene.getReturnType(),
-                                          Collections.emptyList())
-                            .remove(handle);
+        myVersion   = ourNextVersion.getAndIncrement();
+        myProgram   = null;
+        myFitness   = null;
+        myGraphSize = -1;
+    }
+
+    /**
+     * Add a gene which we don't already have, giving back its slot.
+     */
+    private int addGene(final Gene gene)
+    {
+        final int slot = myGenes.size();
+        myGenes.add(gene);
+        mySlots.add(slot, SlotPools.typeOf(gene.getReturnType()));
+        return slot;
+    }
+
+    /**
+     * Remove a random gene, leaving its slot empty. There must be at
+     * least one gene.
+     */
+    private Gene removeRandomGene()
+    {
+        final int  slot =
+            mySlots.get(ThreadLocalRandom.current().nextInt(mySlots.size()));
+        final Gene gene = myGenes.get(slot);
+        myGenes.set(slot, null);
+        mySlots.remove(slot);
+        return gene;
+    }
+
+    /**
+     * Renumber all the slots if too many of them are empty, so that the
+     * number of slots does not keep on growing as genes come and go.
+     */
+    private void compactIfSparse()
+    {
+        if (myGenes.size() <= 2 * mySlots.size() + MIN_EMPTY_SLOTS) {
+            return;
+        }
+
+        // Where each of the genes is going to live
+        final ChunkedList<Gene> genes = myGenes;
+        final int[] mapping = new int[genes.size()];
+        int next = 0;
+        for (int slot=0; slot < mapping.length; slot++) {
+            mapping[slot] = (genes.get(slot) == null) ? -1 : next++;
+        }
+        final IntUnaryOperator remap =
+            slot -> (slot < 0 || slot >= mapping.length) ? -1 : mapping[slot];
+
+        // And move them there
+        myGenes = new ChunkedList<>();
+        mySlots = new SlotPools();
+        for (int slot=0; slot < mapping.length; slot++) {
+            final Gene gene = genes.get(slot);
+            if (gene != null) {
+                addGene(gene.remap(remap));
+            }
+        }
+        for (int i=0; i < myOutputs.length; i++) {
+            myOutputs[i] = remap.applyAsInt(myOutputs[i]);
         }
     }
 }
@@ -0,0 +1,1630 @@
+package genecode;
+
+import genecode.Context.Identifier;
+import genecode.function.Column;
+import genecode.function.Function;
+import genecode.gene.Gene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The compiled form of a {@link Genome}'s expressed output graph.
+ *
+ * <p>Evaluating a genome directly walks its gene graph recursively,
+ * looking up each argument gene by its handle and guarding against
+ * cycles as it goes. A program instead flattens the graph, once, into
+ * a topologically ordered list of instructions. Each instruction has
+ * an opcode, the slots of its arguments, and a result slot; the result
+ * slot of the {@code i}th instruction is always slot {@code i}, and the
+ * arguments of an instruction always refer to earlier slots. Evaluating
+ * the program in a context is then just a single pass over the
+ * instructions.
+ *
+ * <p>Cycles, and references to genes which are missing from the genome,
+ * are resolved at compile time; they become slots which always hold
+ * {@code null}, which is what the recursive evaluation would have
+ * yielded for them.
+ *
+ * <p>Numeric values are held unboxed wherever they can be. Functions
+ * which support a {@link Function.Primitive} calling convention are
+ * called with, and give back, primitive values which live in their own
+ * registers; values are only boxed where they are handed to a function
+ * which needs objects, or where they become an output.
+ *
+ * <p>A program may also be evaluated over a whole {@link Batch} of
+ * contexts at once, in which case each instruction computes a {@link
+ * Column} of values, one per context, in a single pass. This means that
+ * the cost of dispatching on each instruction is paid once per batch,
+ * rather than once per context, and that numeric values may be computed
+ * without boxing them.
+ *
+ * <p>Each instruction also has a structural key, built from its
+ * function, its constant or accessor value, and the keys of its
+ * arguments. Any two instructions with equal keys compute the same
+ * values, even when they come from different genomes, so a batch may
+ * hand back the column which some other program already computed for
+ * it (see {@link Batch#getCached(Object)}). Instructions which depend
+ * on genes evaluated directly have no key, since such genes may have
+ * state.
+ *
+ * <p>Programs which are going to be evaluated a great many times may
+ * be turned into JVM bytecode, via {@link #generate()}, so that the JIT
+ * compiler can treat the whole program as a single method; e.g. that
+ * of a solution which is then applied context by context. The {@link
+ * Solver} doesn't do this itself, since it evaluates each version of a
+ * genome only once, a batch at a time. Genomes remember their fitness
+ * until they change, and a change means a new program.
+ *
+ * <p>A program is immutable and may be shared between threads. Each
+ * thread should evaluate it using its own {@link Frame}.
+ */
+public final class Program
+{
+    /**
+     * Our logger.
+     */
+    public static final Logger LOG = Logger.getLogger(Program.class.getName());
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * A program which has been turned into JVM bytecode. The generated
+     * class implements this.
+     */
+    /*package*/ interface Compiled
+    {
+        /**
+         * Evaluate the program.
+         *
+         * @param context   The context to evaluate in.
+         * @param registers Where to put the values of the outputs.
+         */
+        public void evaluate(final Context context, final Object[] registers);
+    }
+
+    /**
+     * The place where a program's values are held while it is being
+     * evaluated. Instances are not thread-safe.
+     */
+    public static final class Frame
+    {
+        /**
+         * The program which we were created for.
+         */
+        private final Program myProgram;
+
+        /**
+         * The values of each slot. For primitive slots this instead
+         * holds whether the value is present.
+         */
+        private final Object[] myRegisters;
+
+        /**
+         * The values of the {@code double} slots.
+         */
+        private final double[] myDoubles;
+
+        /**
+         * The values of the {@code long} slots.
+         */
+        private final long[] myLongs;
+
+        /**
+         * The space for the arguments of each {@code OP_CALL}
+         * instruction, indexed by instruction.
+         */
+        private final Object[][] myArgs;
+
+        /**
+         * CTOR.
+         *
+         * @param program The program we belong to.
+         */
+        private Frame(final Program program)
+        {
+            myProgram   = program;
+            myRegisters = new Object  [program.size()];
+            myDoubles   = new double  [program.size()];
+            myLongs     = new long    [program.size()];
+            myArgs      = new Object[program.size()][];
+            for (int i=0; i < myArgs.length; i++) {
+                if (program.myArgSlots[i] != null) {
+                    myArgs[i] = new Object[program.myArgSlots[i].length];
+                }
+            }
+        }
+
+        /**
+         * Get the value of an output from the last evaluation.
+         *
+         * @param output The index of the output to get.
+         *
+         * @return The output's value, or {@code null} if it could not
+         *         be computed.
+         *
+         * @throws IndexOutOfBoundsException If the given output was not
+         *                                   in bounds.
+         */
+        public Object getOutput(final int output)
+            throws IndexOutOfBoundsException
+        {
+            return myRegisters[myProgram.myOutputSlots[output]];
+        }
+    }
+
+    /**
+     * The structural key of an instruction. Keys are equal when their
+     * instructions would compute the same value in the same context,
+     * regardless of which program they belong to.
+     *
+     * <p>Keys are hash-consed via {@link #intern}, and their arguments
+     * are always interned keys, so comparing two keys only compares
+     * their arguments by reference. Comparing them deeply would cost
+     * once per path through the graph, which is exponential in its
+     * depth when subexpressions are shared.
+     */
+    private static final class Structure
+    {
+        /**
+         * The most keys which we intern before starting afresh.
+         */
+        private static final int MAX_INTERNED = 1 << 20;
+
+        /**
+         * The interned keys, mapped to themselves.
+         */
+        private static final Map<Structure,Structure> ourInterned =
+            new ConcurrentHashMap<>();
+
+        /**
+         * The instruction's opcode.
+         */
+        private final int myOpcode;
+
+        /**
+         * The instruction's operand, if any.
+         */
+        private final Object myOperand;
+
+        /**
+         * The keys of the instruction's arguments, if any.
+         */
+        private final Structure[] myArgs;
+
+        /**
+         * Our hash code, computed up front since keys are hashed often.
+         */
+        private final int myHashCode;
+
+        /**
+         * CTOR.
+         *
+         * @param opcode  The instruction's opcode.
+         * @param operand The instruction's operand, if any.
+         * @param args    The keys of the instruction's arguments, if any.
+         */
+        private Structure(final int         opcode,
+                          final Object      operand,
+                          final Structure[] args)
+        {
+            myOpcode   = opcode;
+            myOperand  = operand;
+            myArgs     = args;
+            myHashCode =
+                ((opcode * 31) + Arrays.deepHashCode(new Object[] { operand })) * 31 +
+                Arrays.hashCode(args);
+        }
+
+        /**
+         * Get the interned key for an instruction.
+         *
+         * <p>Should there be too many interned keys then we forget them
+         * all and start again, rather than holding on to them forever.
+         * Keys from before then won't equal the ones from after, which
+         * only means that the columns cached under them go unused.
+         *
+         * @param opcode  The instruction's opcode.
+         * @param operand The instruction's operand, if any.
+         * @param args    The interned keys of the instruction's
+         *                arguments, if any.
+         *
+         * @return The interned key.
+         */
+        public static Structure intern(final int         opcode,
+                                       final Object      operand,
+                                       final Structure[] args)
+        {
+            if (ourInterned.size() >= MAX_INTERNED) {
+                ourInterned.clear();
+            }
+            final Structure structure = new Structure(opcode, operand, args);
+            final Structure interned  =
+                ourInterned.putIfAbsent(structure, structure);
+            return (interned == null) ? structure : interned;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int hashCode()
+        {
+            return myHashCode;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Structure)) {
+                return false;
+            }
+
+            final Structure that = (Structure)o;
+            if (that.myHashCode != myHashCode                  ||
+                that.myOpcode   != myOpcode                    ||
+                !Objects.deepEquals(that.myOperand, myOperand) ||
+                (that.myArgs == null) != (myArgs == null))
+            {
+                return false;
+            }
+
+            // The arguments are interned, so identity is equality
+            if (myArgs != null) {
+                if (that.myArgs.length != myArgs.length) {
+                    return false;
+                }
+                for (int i=0; i < myArgs.length; i++) {
+                    if (that.myArgs[i] != myArgs[i]) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * How a genome's genes are turned into a program. Genes add
+     * themselves to the builder via {@link Gene#compile}.
+     */
+    public static final class Builder
+    {
+        /**
+         * The genome which we are compiling.
+         */
+        private final Genome myGenome;
+
+        /**
+         * The opcodes as we accumulate them.
+         */
+        private final List<Integer> myOpcodes = new ArrayList<>();
+
+        /**
+         * The argument slots as we accumulate them.
+         */
+        private final List<int[]> myArgSlots = new ArrayList<>();
+
+        /**
+         * The operands as we accumulate them.
+         */
+        private final List<Object> myOperands = new ArrayList<>();
+
+        /**
+         * The structural key of each instruction, if it has one.
+         */
+        private final List<Structure> myStructures = new ArrayList<>();
+
+        /**
+         * The slots holding the values of the genes which we have
+         * compiled so far, by the genes' slots in the genome; {@code
+         * -1} if they have not been compiled.
+         */
+        private final int[] mySlots;
+
+        /**
+         * The genes which we are currently compiling, by their slots
+         * in the genome. Seeing one of these again means that we have
+         * found a cycle.
+         */
+        private final boolean[] myCompiling;
+
+        /**
+         * The slots holding the boxed values of primitive slots.
+         */
+        private final Map<Integer,Integer> myBoxed = new HashMap<>();
+
+        /**
+         * The slots holding the {@code double} values of object slots.
+         */
+        private final Map<Integer,Integer> myDoubles = new HashMap<>();
+
+        /**
+         * The slots holding the {@code long} values of object slots.
+         */
+        private final Map<Integer,Integer> myLongs = new HashMap<>();
+
+        /**
+         * The slots which the identifiers of access instructions are
+         * bound to, by instruction, where they are.
+         */
+        private final Map<Integer,Integer> myAccessSlots = new HashMap<>();
+
+        /**
+         * The slot which holds {@code null}, if we have made one yet.
+         */
+        private int myNullSlot = -1;
+
+        /**
+         * CTOR.
+         *
+         * @param genome The genome which we are compiling.
+         */
+        private Builder(final Genome genome)
+        {
+            myGenome    = genome;
+            mySlots     = new int[genome.getNumSlots()];
+            myCompiling = new boolean[genome.getNumSlots()];
+            Arrays.fill(mySlots, -1);
+        }
+
+        /**
+         * Get the genome which is being compiled.
+         *
+         * @return The genome.
+         */
+        public Genome getGenome()
+        {
+            return myGenome;
+        }
+
+        /**
+         * Compile the gene in the given slot of the genome, if it has
+         * not already been compiled, and get the slot which will hold
+         * its value.
+         *
+         * @param geneSlot The slot of the gene in the genome.
+         *
+         * @return The slot of the gene's value.
+         */
+        public int add(final int geneSlot)
+        {
+            // Missing genes and cycles can never compute
+            final Gene gene = myGenome.getInSlot(geneSlot);
+            if (gene == null || myCompiling[geneSlot]) {
+                return nullSlot();
+            }
+            if (mySlots[geneSlot] >= 0) {
+                return mySlots[geneSlot];
+            }
+
+            myCompiling[geneSlot] = true;
+            try {
+                final int result = gene.compile(this);
+                mySlots[geneSlot] = result;
+                return result;
+            }
+            finally {
+                myCompiling[geneSlot] = false;
+            }
+        }
+
+        /**
+         * Add an instruction which yields a constant value.
+         *
+         * @param value The value.
+         *
+         * @return The slot of the value.
+         */
+        public int constant(final Object value)
+        {
+            return (value == null) ? nullSlot()
+                                   : emit(OP_CONSTANT, null, value);
+        }
+
+        /**
+         * Add an instruction which accesses a value from the context.
+         *
+         * @param identifier The identifier of the value to access.
+         *
+         * @return The slot of the value.
+         */
+        public int access(final Identifier<?> identifier)
+        {
+            return access(identifier, -1);
+        }
+
+        /**
+         * Add an instruction which accesses a value from the context, via
+         * the slot which its identifier is bound to.
+         *
+         * @param identifier The identifier of the value to access.
+         * @param slot       The slot which the identifier is bound to, or
+         *                   {@code -1} if it isn't; see {@link
+         *                   Context#access(int,Identifier)}.
+         *
+         * @return The slot of the value.
+         */
+        public int access(final Identifier<?> identifier, final int slot)
+        {
+            final int result = emit(OP_ACCESS, null, identifier);
+            if (slot >= 0) {
+                myAccessSlots.put(result, slot);
+            }
+            return result;
+        }
+
+        /**
+         * Add an instruction which calls a function. If all the
+         * arguments are constants then the function is called now and
+         * its result becomes a constant. Functions which have a
+         * primitive calling convention are called with unboxed values.
+         * The arguments are not type-checked, so they must be of the
+         * function's argument types, as those of a bound {@link
+         * genecode.gene.FunctionGene} are.
+         *
+         * @param function The function to call.
+         * @param argSlots The slots of the function's arguments.
+         *
+         * @return The slot of the function's result.
+         */
+        public int call(final Function function, final int[] argSlots)
+        {
+            // Fold constants, since functions are stateless
+            boolean constant = true;
+            for (int slot : argSlots) {
+                if (myOpcodes.get(slot) != OP_CONSTANT) {
+                    constant = false;
+                    break;
+                }
+            }
+            if (constant) {
+                final Object[] args = new Object[argSlots.length];
+                for (int i=0; i < args.length; i++) {
+                    args[i] = myOperands.get(argSlots[i]);
+                }
+                return constant(safeCall(function, args));
+            }
+
+            // Use the primitive calling convention, if we can; it has no
+            // notion of conditional arguments
+            final Function.Primitive primitive =
+                function.hasConditionalArgs() ? null : function.getPrimitive();
+            final int[] slots = new int[argSlots.length];
+            if (primitive != null) {
+                final int opcode = opcode(primitive);
+                for (int i=0; i < slots.length; i++) {
+                    slots[i] = (argKind(opcode) == KIND_DOUBLE)
+                        ? asDouble(argSlots[i])
+                        : asLong  (argSlots[i]);
+                }
+                return emit(opcode, slots, function);
+            }
+            else {
+                for (int i=0; i < slots.length; i++) {
+                    slots[i] = asObject(argSlots[i]);
+                }
+                return emit(OP_CALL, slots, function);
+            }
+        }
+
+        /**
+         * Add an instruction which evaluates a gene directly, via
+         * {@link Gene#evaluate}. This is the fallback for genes which
+         * can't otherwise be expressed as instructions.
+         *
+         * @param gene The gene to evaluate.
+         *
+         * @return The slot of the gene's value.
+         */
+        public int gene(final Gene gene)
+        {
+            return emit(OP_GENE, null, gene);
+        }
+
+        /**
+         * Create the program.
+         */
+        private Program build(final int[] outputSlots)
+        {
+            final int[] opcodes     = new int[myOpcodes.size()];
+            final int[] accessSlots = new int[myOpcodes.size()];
+            for (int i=0; i < opcodes.length; i++) {
+                opcodes    [i] = myOpcodes.get(i);
+                accessSlots[i] = myAccessSlots.getOrDefault(i, -1);
+            }
+            return new Program(myGenome,
+                               opcodes,
+                               myArgSlots.toArray(new int[opcodes.length][]),
+                               myOperands.toArray(),
+                               accessSlots,
+                               myStructures.toArray(new Structure[opcodes.length]),
+                               outputSlots);
+        }
+
+        /**
+         * Get a slot which holds the given slot's value as an object,
+         * boxing it if need be.
+         */
+        private int asObject(final int slot)
+        {
+            final int kind = kind(myOpcodes.get(slot));
+            if (kind == KIND_OBJECT) {
+                return slot;
+            }
+            Integer boxed = myBoxed.get(slot);
+            if (boxed == null) {
+                boxed = emit((kind == KIND_DOUBLE) ? OP_BOX_DOUBLE : OP_BOX_LONG,
+                             new int[] { slot },
+                             null);
+                myBoxed.put(slot, boxed);
+            }
+            return boxed;
+        }
+
+        /**
+         * Get a slot which holds the given slot's value as a {@code
+         * double}, unboxing it if need be. Values which are not {@code
+         * Double}s will be missing.
+         */
+        private int asDouble(final int slot)
+        {
+            final int kind = kind(myOpcodes.get(slot));
+            if (kind == KIND_DOUBLE) {
+                return slot;
+            }
+            final int object = asObject(slot);
+            Integer unboxed = myDoubles.get(object);
+            if (unboxed == null) {
+                unboxed = emit(OP_UNBOX_DOUBLE, new int[] { object }, null);
+                myDoubles.put(object, unboxed);
+            }
+            return unboxed;
+        }
+
+        /**
+         * Get a slot which holds the given slot's value as a {@code
+         * long}, unboxing it if need be. Values which are not {@code
+         * Long}s will be missing.
+         */
+        private int asLong(final int slot)
+        {
+            final int kind = kind(myOpcodes.get(slot));
+            if (kind == KIND_LONG) {
+                return slot;
+            }
+            final int object = asObject(slot);
+            Integer unboxed = myLongs.get(object);
+            if (unboxed == null) {
+                unboxed = emit(OP_UNBOX_LONG, new int[] { object }, null);
+                myLongs.put(object, unboxed);
+            }
+            return unboxed;
+        }
+
+        /**
+         * Get the slot which always holds {@code null}.
+         */
+        private int nullSlot()
+        {
+            if (myNullSlot < 0) {
+                myNullSlot = emit(OP_CONSTANT, null, null);
+            }
+            return myNullSlot;
+        }
+
+        /**
+         * Append an instruction, giving back its result slot.
+         */
+        private int emit(final int    opcode,
+                         final int[]  argSlots,
+                         final Object operand)
+        {
+            myOpcodes   .add(opcode);
+            myArgSlots  .add(argSlots);
+            myOperands  .add(operand);
+            myStructures.add(structure(opcode, argSlots, operand));
+            return myOpcodes.size() - 1;
+        }
+
+        /**
+         * Get the structural key of an instruction, or {@code null} if it
+         * doesn't have one.
+         */
+        private Structure structure(final int    opcode,
+                                    final int[]  argSlots,
+                                    final Object operand)
+        {
+            switch (opcode) {
+            case OP_GENE:
+                // Genes may have state, so we can't say what they compute
+                return null;
+
+            case OP_BOX_DOUBLE:
+            case OP_BOX_LONG:
+            case OP_UNBOX_DOUBLE:
+            case OP_UNBOX_LONG:
+                // Same value, different register
+                return myStructures.get(argSlots[0]);
+
+            default:
+                Structure[] args = null;
+                if (argSlots != null) {
+                    args = new Structure[argSlots.length];
+                    for (int i=0; i < args.length; i++) {
+                        args[i] = myStructures.get(argSlots[i]);
+                        if (args[i] == null) {
+                            return null;
+                        }
+                    }
+                }
+                return Structure.intern(opcode, operand, args);
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Yield the operand.
+     */
+    /*package*/ static final int OP_CONSTANT = 0;
+
+    /**
+     * Access the operand's identifier from the context.
+     */
+    /*package*/ static final int OP_ACCESS = 1;
+
+    /**
+     * Call the operand's function with the argument slots' values.
+     */
+    /*package*/ static final int OP_CALL = 2;
+
+    /**
+     * Evaluate the operand's gene directly.
+     */
+    /*package*/ static final int OP_GENE = 3;
+
+    /**
+     * Box the argument slot's {@code double} value.
+     */
+    /*package*/ static final int OP_BOX_DOUBLE = 4;
+
+    /**
+     * Box the argument slot's {@code long} value.
+     */
+    /*package*/ static final int OP_BOX_LONG = 5;
+
+    /**
+     * Unbox the argument slot's value into a {@code double}.
+     */
+    /*package*/ static final int OP_UNBOX_DOUBLE = 6;
+
+    /**
+     * Unbox the argument slot's value into a {@code long}.
+     */
+    /*package*/ static final int OP_UNBOX_LONG = 7;
+
+    /**
+     * Call the operand's function as a {@link
+     * Function.Primitive#DOUBLE_UNARY}.
+     */
+    /*package*/ static final int OP_DOUBLE_UNARY = 8;
+
+    /**
+     * Call the operand's function as a {@link
+     * Function.Primitive#LONG_UNARY}.
+     */
+    /*package*/ static final int OP_LONG_UNARY = 9;
+
+    /**
+     * Call the operand's function as a {@link
+     * Function.Primitive#DOUBLE_TO_LONG}.
+     */
+    /*package*/ static final int OP_DOUBLE_TO_LONG = 10;
+
+    /**
+     * Call the operand's function as a {@link
+     * Function.Primitive#LONG_TO_DOUBLE}.
+     */
+    /*package*/ static final int OP_LONG_TO_DOUBLE = 11;
+
+    /**
+     * Call the operand's function as a {@link
+     * Function.Primitive#DOUBLE_BINARY}.
+     */
+    /*package*/ static final int OP_DOUBLE_BINARY = 12;
+
+    /**
+     * Call the operand's function as a {@link
+     * Function.Primitive#LONG_BINARY}.
+     */
+    /*package*/ static final int OP_LONG_BINARY = 13;
+
+    /**
+     * Call the operand's function as a {@link
+     * Function.Primitive#DOUBLE_PREDICATE}.
+     */
+    /*package*/ static final int OP_DOUBLE_PREDICATE = 14;
+
+    /**
+     * Call the operand's function as a {@link
+     * Function.Primitive#LONG_PREDICATE}.
+     */
+    /*package*/ static final int OP_LONG_PREDICATE = 15;
+
+    /**
+     * A slot which holds an object.
+     */
+    /*package*/ static final int KIND_OBJECT = 0;
+
+    /**
+     * A slot which holds a {@code double}.
+     */
+    /*package*/ static final int KIND_DOUBLE = 1;
+
+    /**
+     * A slot which holds a {@code long}.
+     */
+    /*package*/ static final int KIND_LONG = 2;
+
+    /**
+     * What primitive slots hold in the object registers when their value
+     * is present. (When it is missing they hold {@code null}.)
+     */
+    private static final Object PRESENT = new Object();
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Compile the expressed outputs of the given genome.
+     *
+     * @param genome The genome to compile.
+     *
+     * @return The program.
+     */
+    public static Program compile(final Genome genome)
+    {
+        final Builder builder = new Builder(genome);
+        final int[] outputSlots = new int[genome.numOutputs()];
+        for (int i=0; i < outputSlots.length; i++) {
+            outputSlots[i] =
+                builder.asObject(builder.add(genome.getOutputSlot(i)));
+        }
+        return builder.build(outputSlots);
+    }
+
+    /**
+     * Whether an instruction calls a function.
+     *
+     * @param opcode The instruction's opcode.
+     *
+     * @return Whether it's a call.
+     */
+    /*package*/ static boolean isCall(final int opcode)
+    {
+        switch (opcode) {
+        case OP_CALL:
+        case OP_DOUBLE_UNARY:
+        case OP_LONG_UNARY:
+        case OP_DOUBLE_TO_LONG:
+        case OP_LONG_TO_DOUBLE:
+        case OP_DOUBLE_BINARY:
+        case OP_LONG_BINARY:
+        case OP_DOUBLE_PREDICATE:
+        case OP_LONG_PREDICATE:
+            return true;
+
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * The kind of value which an instruction yields.
+     *
+     * @param opcode The instruction's opcode.
+     *
+     * @return The kind of its slot.
+     */
+    /*package*/ static int kind(final int opcode)
+    {
+        switch (opcode) {
+        case OP_UNBOX_DOUBLE:
+        case OP_DOUBLE_UNARY:
+        case OP_LONG_TO_DOUBLE:
+        case OP_DOUBLE_BINARY:
+            return KIND_DOUBLE;
+
+        case OP_UNBOX_LONG:
+        case OP_LONG_UNARY:
+        case OP_DOUBLE_TO_LONG:
+        case OP_LONG_BINARY:
+            return KIND_LONG;
+
+        default:
+            return KIND_OBJECT;
+        }
+    }
+
+    /**
+     * The kind of value which an instruction takes as its arguments.
+     *
+     * @param opcode The instruction's opcode.
+     *
+     * @return The kind of its argument slots.
+     */
+    /*package*/ static int argKind(final int opcode)
+    {
+        switch (opcode) {
+        case OP_BOX_DOUBLE:
+        case OP_DOUBLE_UNARY:
+        case OP_DOUBLE_TO_LONG:
+        case OP_DOUBLE_BINARY:
+        case OP_DOUBLE_PREDICATE:
+            return KIND_DOUBLE;
+
+        case OP_BOX_LONG:
+        case OP_LONG_UNARY:
+        case OP_LONG_TO_DOUBLE:
+        case OP_LONG_BINARY:
+        case OP_LONG_PREDICATE:
+            return KIND_LONG;
+
+        default:
+            return KIND_OBJECT;
+        }
+    }
+
+    /**
+     * The opcode for calling a function with a primitive calling
+     * convention.
+     */
+    private static int opcode(final Function.Primitive primitive)
+    {
+        switch (primitive) {
+        case DOUBLE_UNARY:     return OP_DOUBLE_UNARY;
+        case LONG_UNARY:       return OP_LONG_UNARY;
+        case DOUBLE_TO_LONG:   return OP_DOUBLE_TO_LONG;
+        case LONG_TO_DOUBLE:   return OP_LONG_TO_DOUBLE;
+        case DOUBLE_BINARY:    return OP_DOUBLE_BINARY;
+        case LONG_BINARY:      return OP_LONG_BINARY;
+        case DOUBLE_PREDICATE: return OP_DOUBLE_PREDICATE;
+        case LONG_PREDICATE:   return OP_LONG_PREDICATE;
+        default:
+            throw new IllegalArgumentException(
+                "Unknown primitive: " + primitive
+            );
+        }
+    }
+
+    /**
+     * Unbox a value, as a {@code double}. This is called by generated
+     * code.
+     *
+     * @param value The value to unbox.
+     *
+     * @return The value, or zero if it was not a {@code Double}.
+     */
+    /*package*/ static double toDouble(final Object value)
+    {
+        return (value instanceof Double) ? (Double)value : 0.0;
+    }
+
+    /**
+     * Whether a value may be unboxed as a {@code double}. This is called
+     * by generated code.
+     *
+     * @param value The value to check.
+     *
+     * @return Whether it was a {@code Double}.
+     */
+    /*package*/ static boolean isDouble(final Object value)
+    {
+        return (value instanceof Double);
+    }
+
+    /**
+     * Unbox a value, as a {@code long}. This is called by generated
+     * code.
+     *
+     * @param value The value to unbox.
+     *
+     * @return The value, or zero if it was not a {@code Long}.
+     */
+    /*package*/ static long toLong(final Object value)
+    {
+        return (value instanceof Long) ? (Long)value : 0L;
+    }
+
+    /**
+     * Whether a value may be unboxed as a {@code long}. This is called
+     * by generated code.
+     *
+     * @param value The value to check.
+     *
+     * @return Whether it was a {@code Long}.
+     */
+    /*package*/ static boolean isLong(final Object value)
+    {
+        return (value instanceof Long);
+    }
+
+    /**
+     * Box a {@code double} value. This is called by generated code.
+     *
+     * @param value   The value to box.
+     * @param present Whether the value is present.
+     *
+     * @return The boxed value, or {@code null} if it was not present.
+     */
+    /*package*/ static Object box(final double value, final boolean present)
+    {
+        return present ? Double.valueOf(value) : null;
+    }
+
+    /**
+     * Box a {@code long} value. This is called by generated code.
+     *
+     * @param value   The value to box.
+     * @param present Whether the value is present.
+     *
+     * @return The boxed value, or {@code null} if it was not present.
+     */
+    /*package*/ static Object box(final long value, final boolean present)
+    {
+        return present ? Long.valueOf(value) : null;
+    }
+
+    /**
+     * Box a {@code boolean} value. This is called by generated code.
+     *
+     * @param value   The value to box.
+     * @param present Whether the value is present.
+     *
+     * @return The boxed value, or {@code null} if it was not present.
+     */
+    /*package*/ static Object box(final boolean value, final boolean present)
+    {
+        return present ? Boolean.valueOf(value) : null;
+    }
+
+    /**
+     * Call a function, turning any failure into a {@code null} value.
+     * This is also called by generated code.
+     *
+     * @param function The function to call.
+     * @param args     The arguments to call it with.
+     *
+     * @return The result of the call, or {@code null} if it failed.
+     */
+    /*package*/ static Object safeCall(final Function function,
+                                   final Object[] args)
+    {
+        // The arguments were checked when the genes were bound
+        return function.invoke(args);
+    }
+
+    /**
+     * Call a function over a batch of rows, turning any failure into a
+     * column where every row is missing.
+     *
+     * @param function The function to call.
+     * @param args     The columns of arguments to call it with.
+     * @param size     The number of rows.
+     *
+     * @return The column of results.
+     */
+    private static Column safeCall(final Function function,
+                                   final Column[] args,
+                                   final int      size)
+    {
+        try {
+            return function.call(args, size);
+        }
+        catch (Budget.ExceededException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            LOG.log(Level.SEVERE, "Failed to evaluate: " + function, e);
+            return Column.constant(function.getReturnType(), null, size);
+        }
+    }
+
+    /**
+     * Ask a function whether it needs one of its conditional arguments
+     * for a batch of rows, assuming that it does if it fails to say.
+     *
+     * @param function The function to ask.
+     * @param index    The index of the argument.
+     * @param args     The columns of arguments which we have so far.
+     * @param size     The number of rows.
+     *
+     * @return Whether the argument is needed.
+     */
+    private static boolean isNeeded(final Function function,
+                                    final int      index,
+                                    final Column[] args,
+                                    final int      size)
+    {
+        try {
+            return function.isNeeded(index, args, size);
+        }
+        catch (Budget.ExceededException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            LOG.log(Level.SEVERE, "Failed to evaluate: " + function, e);
+            return true;
+        }
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * The genome which we were compiled from.
+     */
+    private final Genome myGenome;
+
+    /**
+     * The opcode of each instruction.
+     */
+    private final int[] myOpcodes;
+
+    /**
+     * The argument slots of each instruction, if any.
+     */
+    private final int[][] myArgSlots;
+
+    /**
+     * The operand of each instruction, if any.
+     */
+    private final Object[] myOperands;
+
+    /**
+     * The slot which the identifier of each access instruction is bound
+     * to, or {@code -1}.
+     */
+    private final int[] myAccessSlots;
+
+    /**
+     * The structural key of each instruction, if it has one.
+     */
+    private final Structure[] myStructures;
+
+    /**
+     * The slots which hold the values of the genome's outputs.
+     */
+    private final int[] myOutputSlots;
+
+    /**
+     * Whether we don't refer back to the genome which we were compiled
+     * from when we are evaluated.
+     */
+    private final boolean mySelfContained;
+
+    /**
+     * Our bytecode form, if we have been turned into one.
+     */
+    private volatile Compiled myCompiled;
+
+    /**
+     * Whether we tried, and failed, to generate our bytecode form.
+     */
+    private volatile boolean myGenerateFailed;
+
+    /**
+     * CTOR.
+     */
+    private Program(final Genome      genome,
+                    final int[]       opcodes,
+                    final int[][]     argSlots,
+                    final Object[]    operands,
+                    final int[]       accessSlots,
+                    final Structure[] structures,
+                    final int[]       outputSlots)
+    {
+        // Genes which are evaluated directly need the genome
+        boolean selfContained = true;
+        for (int opcode : opcodes) {
+            if (opcode == OP_GENE) {
+                selfContained = false;
+            }
+        }
+
+        myGenome         = genome;
+        myOpcodes        = opcodes;
+        myArgSlots       = argSlots;
+        myOperands       = operands;
+        myAccessSlots    = accessSlots;
+        myStructures     = structures;
+        myOutputSlots    = outputSlots;
+        mySelfContained  = selfContained;
+        myCompiled       = null;
+        myGenerateFailed = false;
+    }
+
+    /**
+     * The number of instructions in this program.
+     *
+     * @return The number of instructions, and slots.
+     */
+    public int size()
+    {
+        return myOpcodes.length;
+    }
+
+    /**
+     * Whether this program can be evaluated without referring back to
+     * the genome which it was compiled from; i.e. it has no genes which
+     * are evaluated directly. Such a program may be shared by copies of
+     * the genome, since what they share is immutable.
+     *
+     * @return Whether it is self-contained.
+     */
+    public boolean isSelfContained()
+    {
+        return mySelfContained;
+    }
+
+    /**
+     * Turn this program into JVM bytecode, if it has not been already.
+     * Once this has happened all subsequent evaluations will run the
+     * bytecode, which the JIT compiler may then compile as a single
+     * method. This is relatively expensive and so is best reserved for
+     * programs which will be evaluated many times.
+     *
+     * @return Whether the program is now running as bytecode.
+     */
+    public boolean generate()
+    {
+        if (myCompiled == null && !myGenerateFailed) {
+            synchronized (this) {
+                if (myCompiled == null && !myGenerateFailed) {
+                    try {
+                        myCompiled =
+                            ClassGenerator.generate(myGenome,
+                                                    myOpcodes,
+                                                    myArgSlots,
+                                                    myOperands,
+                                                    myAccessSlots,
+                                                    myOutputSlots);
+                    }
+                    catch (IllegalArgumentException e) {
+                        // We can still interpret it
+                        LOG.log(Level.WARNING,
+                                "Failed to generate bytecode for " + myGenome,
+                                e);
+                        myGenerateFailed = true;
+                    }
+                }
+            }
+        }
+        return myCompiled != null;
+    }
+
+    /**
+     * Create a new frame for evaluating this program with.
+     *
+     * @return The new frame.
+     */
+    public Frame newFrame()
+    {
+        return new Frame(this);
+    }
+
+    /**
+     * Evaluate the program in the given context. The output values may
+     * then be retrieved from the frame.
+     *
+     * @param context The context to evaluate in.
+     * @param frame   The frame to evaluate into; this must have been
+     *                created by this program.
+     *
+     * @throws Budget.ExceededException If this went over the calling
+     *                                  thread's budget.
+     */
+    public void evaluate(final Context context, final Frame frame)
+        throws Budget.ExceededException
+    {
+        final Object[] registers = frame.myRegisters;
+        final double[] doubles   = frame.myDoubles;
+        final long[]   longs     = frame.myLongs;
+        Budget.spend(myOpcodes.length);
+
+        // Run the bytecode, if we have it
+        final Compiled compiled = myCompiled;
+        if (compiled != null) {
+            compiled.evaluate(context, registers);
+            return;
+        }
+
+        // Otherwise we interpret
+        for (int i=0; i < myOpcodes.length; i++) {
+            switch (myOpcodes[i]) {
+            case OP_CONSTANT:
+                registers[i] = myOperands[i];
+                break;
+
+            case OP_ACCESS:
+                registers[i] = context.access(myAccessSlots[i],
+                                              (Identifier<?>)myOperands[i]);
+                break;
+
+            case OP_CALL: {
+                final Function function = (Function)myOperands[i];
+                final int[]    argSlots = myArgSlots[i];
+                final Object[] args     = frame.myArgs[i];
+                boolean missing = false;
+                for (int j=0; j < argSlots.length && !missing; j++) {
+                    args[j] = registers[argSlots[j]];
+                    missing = (args[j] == null && !function.isConditional(j));
+                }
+                registers[i] = missing ? null : safeCall(function, args);
+                break;
+            }
+
+            case OP_GENE:
+                registers[i] = ((Gene)myOperands[i]).evaluate(context, myGenome);
+                break;
+
+            case OP_BOX_DOUBLE: {
+                final int a = myArgSlots[i][0];
+                registers[i] =
+                    (registers[a] == null) ? null : Double.valueOf(doubles[a]);
+                break;
+            }
+
+            case OP_BOX_LONG: {
+                final int a = myArgSlots[i][0];
+                registers[i] =
+                    (registers[a] == null) ? null : Long.valueOf(longs[a]);
+                break;
+            }
+
+            case OP_UNBOX_DOUBLE: {
+                final Object value = registers[myArgSlots[i][0]];
+                if (value instanceof Double) {
+                    doubles  [i] = (Double)value;
+                    registers[i] = PRESENT;
+                }
+                else {
+                    registers[i] = null;
+                }
+                break;
+            }
+
+            case OP_UNBOX_LONG: {
+                final Object value = registers[myArgSlots[i][0]];
+                if (value instanceof Long) {
+                    longs    [i] = (Long)value;
+                    registers[i] = PRESENT;
+                }
+                else {
+                    registers[i] = null;
+                }
+                break;
+            }
+
+            case OP_DOUBLE_UNARY:
+            case OP_LONG_UNARY:
+            case OP_DOUBLE_TO_LONG:
+            case OP_LONG_TO_DOUBLE: {
+                final int a = myArgSlots[i][0];
+                if (registers[a] == null) {
+                    registers[i] = null;
+                    break;
+                }
+                final Function function = (Function)myOperands[i];
+                switch (myOpcodes[i]) {
+                case OP_DOUBLE_UNARY:
+                    doubles[i] = function.applyAsDouble(doubles[a]);
+                    break;
+                case OP_LONG_UNARY:
+                    longs[i] = function.applyAsLong(longs[a]);
+                    break;
+                case OP_DOUBLE_TO_LONG:
+                    longs[i] = function.applyAsLong(doubles[a]);
+                    break;
+                default:
+                    doubles[i] = function.applyAsDouble(longs[a]);
+                    break;
+                }
+                registers[i] = PRESENT;
+                break;
+            }
+
+            case OP_DOUBLE_BINARY:
+            case OP_LONG_BINARY:
+            case OP_DOUBLE_PREDICATE:
+            case OP_LONG_PREDICATE: {
+                final int a = myArgSlots[i][0];
+                final int b = myArgSlots[i][1];
+                if (registers[a] == null || registers[b] == null) {
+                    registers[i] = null;
+                    break;
+                }
+                final Function function = (Function)myOperands[i];
+                switch (myOpcodes[i]) {
+                case OP_DOUBLE_BINARY:
+                    doubles  [i] = function.applyAsDouble(doubles[a], doubles[b]);
+                    registers[i] = PRESENT;
+                    break;
+                case OP_LONG_BINARY:
+                    if (function.checkDefined(longs[a], longs[b], true)) {
+                        longs    [i] = function.applyAsLong(longs[a], longs[b]);
+                        registers[i] = PRESENT;
+                    }
+                    else {
+                        registers[i] = null;
+                    }
+                    break;
+                case OP_DOUBLE_PREDICATE:
+                    registers[i] =
+                        Boolean.valueOf(function.test(doubles[a], doubles[b]));
+                    break;
+                default:
+                    registers[i] =
+                        Boolean.valueOf(function.test(longs[a], longs[b]));
+                    break;
+                }
+                break;
+            }
+
+            default:
+                throw new IllegalStateException(
+                    "Unknown opcode " + myOpcodes[i] + " at " + i
+                );
+            }
+        }
+    }
+
+    /**
+     * Evaluate the program over every context in the given batch.
+     *
+     * <p>If the program has been turned into bytecode then that is run
+     * for each context in turn. Otherwise each instruction is evaluated
+     * for all the contexts at once; genes which could not be compiled
+     * into instructions are still evaluated one context at a time, in
+     * order. Any function call whose column the batch already has
+     * cached is not computed again, and nor is anything which only it
+     * needed. Likewise, the conditional arguments of a function call
+     * are not computed if none of the contexts need them; e.g. a branch
+     * of an if-else which none of them take.
+     *
+     * @param batch The batch to evaluate over.
+     *
+     * @return The columns of output values, indexed by output. These
+     *         must not be modified.
+     *
+     * @throws Budget.ExceededException If this went over the calling
+     *                                  thread's budget.
+     */
+    public Column[] evaluate(final Batch batch)
+        throws Budget.ExceededException
+    {
+        final int      size    = batch.size();
+        final Column[] outputs = new Column[myOutputSlots.length];
+
+        // Run the bytecode, if we have it
+        final Compiled compiled = myCompiled;
+        if (compiled != null) {
+            Budget.spend((long)size * myOpcodes.length);
+            for (int i=0; i < outputs.length; i++) {
+                outputs[i] = Column.create(myGenome.getOutputType(i), size);
+            }
+            final Object[] registers = new Object[myOpcodes.length];
+            for (int row=0; row < size; row++) {
+                compiled.evaluate(batch.get(row), registers);
+                for (int i=0; i < outputs.length; i++) {
+                    outputs[i].set(row, registers[myOutputSlots[i]]);
+                }
+            }
+            return outputs;
+        }
+
+        // Otherwise we interpret, a column at a time
+        final Column[] registers = new Column[myOpcodes.length];
+        compute(batch, registers, myOutputSlots);
+
+        for (int i=0; i < outputs.length; i++) {
+            outputs[i] = registers[myOutputSlots[i]];
+        }
+        return outputs;
+    }
+
+    /**
+     * Compute the columns for the given slots, and for everything which
+     * they need that has not been computed already. First we work
+     * backwards from the slots to see which instructions we need to
+     * evaluate, picking up any cached columns as we go. The conditional
+     * arguments of function calls are left out of this, and are only
+     * computed later on if the function needs them for some row.
+     *
+     * @param batch     The batch to evaluate over.
+     * @param registers The columns computed so far, by slot.
+     * @param slots     The slots to compute.
+     */
+    private void compute(final Batch    batch,
+                         final Column[] registers,
+                         final int...   slots)
+    {
+        final int size = batch.size();
+
+        int last = -1;
+        for (int slot : slots) {
+            last = Math.max(last, slot);
+        }
+        final boolean[] needed = new boolean[last + 1];
+        for (int slot : slots) {
+            needed[slot] = (registers[slot] == null);
+        }
+        for (int i = last; i >= 0; i--) {
+            if (!needed[i]) {
+                continue;
+            }
+            if (isCall(myOpcodes[i]) && myStructures[i] != null) {
+                registers[i] = batch.getCached(myStructures[i]);
+            }
+            if (registers[i] == null && myArgSlots[i] != null) {
+                final int[] argSlots = myArgSlots[i];
+                for (int j=0; j < argSlots.length; j++) {
+                    if (registers[argSlots[j]] == null &&
+                        !isConditional(i, j))
+                    {
+                        needed[argSlots[j]] = true;
+                    }
+                }
+            }
+        }
+
+        // Now compute the rest
+        for (int i=0; i <= last; i++) {
+            if (!needed[i] || registers[i] != null) {
+                continue;
+            }
+            Budget.spend(size);
+            switch (myOpcodes[i]) {
+            case OP_CONSTANT: {
+                final Object value = myOperands[i];
+                registers[i] =
+                    Column.constant((value == null) ? Object.class
+                                                    : value.getClass(),
+                                    value,
+                                    size);
+                break;
+            }
+
+            case OP_ACCESS:
+                registers[i] = batch.access(myAccessSlots[i],
+                                            (Identifier<?>)myOperands[i]);
+                break;
+
+            case OP_BOX_DOUBLE:
+            case OP_BOX_LONG:
+            case OP_UNBOX_DOUBLE:
+            case OP_UNBOX_LONG:
+                // Columns hold numbers unboxed already
+                registers[i] = registers[myArgSlots[i][0]];
+                break;
+
+            case OP_CALL:
+            case OP_DOUBLE_UNARY:
+            case OP_LONG_UNARY:
+            case OP_DOUBLE_TO_LONG:
+            case OP_LONG_TO_DOUBLE:
+            case OP_DOUBLE_BINARY:
+            case OP_LONG_BINARY:
+            case OP_DOUBLE_PREDICATE:
+            case OP_LONG_PREDICATE: {
+                final Function function = (Function)myOperands[i];
+                final int[]    argSlots = myArgSlots[i];
+                final Column[] args     = new Column[argSlots.length];
+                for (int j=0; j < argSlots.length; j++) {
+                    args[j] = registers[argSlots[j]];
+                }
+
+                // Pull in whichever conditional arguments are needed
+                for (int j=0; j < argSlots.length; j++) {
+                    if (args[j] == null && isConditional(i, j) &&
+                        isNeeded(function, j, args, size))
+                    {
+                        compute(batch, registers, argSlots[j]);
+                        args[j] = registers[argSlots[j]];
+                    }
+                }
+
+                registers[i] = safeCall(function, args, size);
+                if (myStructures[i] != null) {
+                    batch.putCached(myStructures[i], registers[i]);
+                }
+                break;
+            }
+
+            case OP_GENE: {
+                final Gene   gene   = (Gene)myOperands[i];
+                final Column column = Column.create(gene.getReturnType(), size);
+                for (int row=0; row < size; row++) {
+                    column.set(row, gene.evaluate(batch.get(row), myGenome));
+                }
+                registers[i] = column;
+                break;
+            }
+
+            default:
+                throw new IllegalStateException(
+                    "Unknown opcode " + myOpcodes[i] + " at " + i
+                );
+            }
+        }
+    }
+
+    /**
+     * Whether the given argument of an instruction is conditional.
+     */
+    private boolean isConditional(final int instruction, final int arg)
+    {
+        return (myOpcodes[instruction] == OP_CALL &&
+                ((Function)myOperands[instruction]).isConditional(arg));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        for (int i=0; i < myOpcodes.length; i++) {
+            sb.append('%').append(i).append(" = ");
+            switch (myOpcodes[i]) {
+            case OP_CONSTANT:         sb.append("CONSTANT ");         break;
+            case OP_ACCESS:           sb.append("ACCESS ");           break;
+            case OP_CALL:             sb.append("CALL ");             break;
+            case OP_GENE:             sb.append("GENE ");             break;
+            case OP_BOX_DOUBLE:       sb.append("BOX_DOUBLE ");       break;
+            case OP_BOX_LONG:         sb.append("BOX_LONG ");         break;
+            case OP_UNBOX_DOUBLE:     sb.append("UNBOX_DOUBLE ");     break;
+            case OP_UNBOX_LONG:       sb.append("UNBOX_LONG ");       break;
+            case OP_DOUBLE_UNARY:     sb.append("DOUBLE_UNARY ");     break;
+            case OP_LONG_UNARY:       sb.append("LONG_UNARY ");       break;
+            case OP_DOUBLE_TO_LONG:   sb.append("DOUBLE_TO_LONG ");   break;
+            case OP_LONG_TO_DOUBLE:   sb.append("LONG_TO_DOUBLE ");   break;
+            case OP_DOUBLE_BINARY:    sb.append("DOUBLE_BINARY ");    break;
+            case OP_LONG_BINARY:      sb.append("LONG_BINARY ");      break;
+            case OP_DOUBLE_PREDICATE: sb.append("DOUBLE_PREDICATE "); break;
+            case OP_LONG_PREDICATE:   sb.append("LONG_PREDICATE ");   break;
+            default:                  sb.append("??? ");              break;
+            }
+            if (myOperands[i] != null || myOpcodes[i] == OP_CONSTANT) {
+                sb.append(myOperands[i]);
+            }
+            if (myArgSlots[i] != null) {
+                sb.append('(');
+                for (int j=0; j < myArgSlots[i].length; j++) {
+                    if (j > 0) {
+                        sb.append(',');
+                    }
+                    sb.append('%').append(myArgSlots[i][j]);
+                }
+                sb.append(')');
+            }
+            sb.append('\n');
+        }
+        sb.append("OUTPUTS ").append(Arrays.toString(myOutputSlots));
+        return sb.toString();
+    }
+}
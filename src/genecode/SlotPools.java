@@ -0,0 +1,292 @@
+package genecode;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The slots which hold a genome's genes, as a pool of all of them and
+ * a pool for each of their return types. Adding a slot, removing one
+ * and picking one at random all take constant time: each pool is a
+ * dense array which is kept packed by moving its last element into
+ * any hole, and we know where every slot is in its pools.
+ *
+ * <p>Types are identified by small integers, which {@link
+ * #typeOf(Class)} hands out as it first sees each class.
+ *
+ * <p>Copies share their arrays with the original until either of them
+ * is modified. Instances are not thread-safe, and note that {@link
+ * #copy()} counts as a modification of the pools being copied.
+ */
+public final class SlotPools
+{
+    /**
+     * How we number the types.
+     */
+    private static final AtomicInteger ourNextType = new AtomicInteger();
+
+    /**
+     * The numbers of the types which we have seen.
+     */
+    private static final ClassValue<Integer> ourTypes =
+        new ClassValue<Integer>() {
+            @Override
+            protected Integer computeValue(final Class<?> type)
+            {
+                return ourNextType.getAndIncrement();
+            }
+        };
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * The slots in each pool. The first pool holds all the slots and
+     * the rest hold those for each type, by type number plus one.
+     */
+    private int[][] myPools;
+
+    /**
+     * The number of slots in each pool.
+     */
+    private int[] mySizes;
+
+    /**
+     * The type of the gene in each slot, or {@code -1} if it's not in
+     * any pool.
+     */
+    private int[] myTypes;
+
+    /**
+     * Where each slot is in the pool of all the slots.
+     */
+    private int[] myAllIndices;
+
+    /**
+     * Where each slot is in the pool for its type.
+     */
+    private int[] myTypeIndices;
+
+    /**
+     * Whether our arrays are shared with a copy, and so may not be
+     * written to.
+     */
+    private boolean myShared;
+
+    /**
+     * Get the number of a type.
+     *
+     * @param type The type.
+     *
+     * @return The type's number, which is small and non-negative.
+     */
+    public static int typeOf(final Class<?> type)
+    {
+        return ourTypes.get(type);
+    }
+
+    /**
+     * CTOR.
+     */
+    public SlotPools()
+    {
+        myPools       = new int[][] { new int[8] };
+        mySizes       = new int[1];
+        myTypes       = new int[0];
+        myAllIndices  = new int[0];
+        myTypeIndices = new int[0];
+        myShared      = false;
+    }
+
+    /**
+     * Copy CTOR.
+     */
+    private SlotPools(final SlotPools that)
+    {
+        myPools       = that.myPools;
+        mySizes       = that.mySizes;
+        myTypes       = that.myTypes;
+        myAllIndices  = that.myAllIndices;
+        myTypeIndices = that.myTypeIndices;
+        myShared      = true;
+    }
+
+    /**
+     * Create a copy of these pools, which shares all of their arrays.
+     *
+     * @return The copy.
+     */
+    public SlotPools copy()
+    {
+        myShared = true;
+        return new SlotPools(this);
+    }
+
+    /**
+     * The number of slots in all the pools.
+     *
+     * @return The number of slots.
+     */
+    public int size()
+    {
+        return mySizes[0];
+    }
+
+    /**
+     * Whether there are no slots at all.
+     *
+     * @return Whether there are none.
+     */
+    public boolean isEmpty()
+    {
+        return mySizes[0] == 0;
+    }
+
+    /**
+     * Get a slot from the pool of all the slots.
+     *
+     * @param index The index of the slot in the pool.
+     *
+     * @return The slot.
+     *
+     * @throws IndexOutOfBoundsException If the index was not in bounds.
+     */
+    public int get(final int index)
+        throws IndexOutOfBoundsException
+    {
+        if (index < 0 || index >= mySizes[0]) {
+            throw new IndexOutOfBoundsException(
+                "Index " + index + " not in [0.." + mySizes[0] + ")"
+            );
+        }
+        return myPools[0][index];
+    }
+
+    /**
+     * Pick a slot, of the given type, at random.
+     *
+     * @param type The number of the type.
+     *
+     * @return The slot, or {@code -1} if there were none of the type.
+     */
+    public int pick(final int type)
+    {
+        final int pool = type + 1;
+        if (pool >= mySizes.length || mySizes[pool] == 0) {
+            return -1;
+        }
+        else {
+            return myPools[pool][
+                ThreadLocalRandom.current().nextInt(mySizes[pool])
+            ];
+        }
+    }
+
+    /**
+     * Add a slot.
+     *
+     * @param slot The slot, which must not be in the pools already.
+     * @param type The number of the type of the gene in the slot.
+     *
+     * @throws IllegalArgumentException If the slot was already added.
+     */
+    public void add(final int slot, final int type)
+        throws IllegalArgumentException
+    {
+        unshare();
+
+        // Make room for the slot and its type
+        if (slot >= myTypes.length) {
+            final int length = Math.max(slot + 1, 2 * myTypes.length);
+            final int from   = myTypes.length;
+            myTypes       = Arrays.copyOf(myTypes,       length);
+            myAllIndices  = Arrays.copyOf(myAllIndices,  length);
+            myTypeIndices = Arrays.copyOf(myTypeIndices, length);
+            Arrays.fill(myTypes, from, length, -1);
+        }
+        else if (myTypes[slot] >= 0) {
+            throw new IllegalArgumentException("Already have slot " + slot);
+        }
+        if (type + 1 >= myPools.length) {
+            final int from = myPools.length;
+            myPools = Arrays.copyOf(myPools, type + 2);
+            mySizes = Arrays.copyOf(mySizes, type + 2);
+            for (int i = from; i < myPools.length; i++) {
+                myPools[i] = new int[4];
+            }
+        }
+
+        myTypes      [slot] = type;
+        myAllIndices [slot] = append(0,        slot);
+        myTypeIndices[slot] = append(type + 1, slot);
+    }
+
+    /**
+     * Remove a slot.
+     *
+     * @param slot The slot to remove.
+     *
+     * @throws IllegalArgumentException If the slot was not in the pools.
+     */
+    public void remove(final int slot)
+        throws IllegalArgumentException
+    {
+        if (slot < 0 || slot >= myTypes.length || myTypes[slot] < 0) {
+            throw new IllegalArgumentException("Don't have slot " + slot);
+        }
+
+        unshare();
+        remove(0,                 myAllIndices [slot], myAllIndices);
+        remove(myTypes[slot] + 1, myTypeIndices[slot], myTypeIndices);
+        myTypes[slot] = -1;
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Add a slot to the end of a pool, giving back its index there.
+     */
+    private int append(final int pool, final int slot)
+    {
+        final int index = mySizes[pool]++;
+        if (index == myPools[pool].length) {
+            myPools[pool] = Arrays.copyOf(myPools[pool], 2 * index);
+        }
+        myPools[pool][index] = slot;
+        return index;
+    }
+
+    /**
+     * Remove the slot at the given index of a pool, moving the last one
+     * into its place.
+     */
+    private void remove(final int   pool,
+                        final int   index,
+                        final int[] indices)
+    {
+        final int[] slots = myPools[pool];
+        final int   last  = --mySizes[pool];
+        if (index != last) {
+            final int moved = slots[last];
+            slots[index]   = moved;
+            indices[moved] = index;
+        }
+    }
+
+    /**
+     * Take our own copies of the arrays, if they are shared.
+     */
+    private void unshare()
+    {
+        if (myShared) {
+            myPools = myPools.clone();
+            for (int i=0; i < myPools.length; i++) {
+                myPools[i] = myPools[i].clone();
+            }
+            mySizes       = mySizes      .clone();
+            myTypes       = myTypes      .clone();
+            myAllIndices  = myAllIndices .clone();
+            myTypeIndices = myTypeIndices.clone();
+            myShared      = false;
+        }
+    }
+}
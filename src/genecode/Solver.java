@@ -2,6 +2,7 @@ package genecode;
 
 import genecode.StringUtil;
 import genecode.Context.Identifier;
+import genecode.function.Column;
 import genecode.function.Function;
 import genecode.gene.Accessor;
 import genecode.gene.Gene;
@@ -12,9 +13,13 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 import java.util.Objects;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountedCompleter;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
@@ -38,8 +43,35 @@ public class Solver
 
     // ----------------------------------------------------------------------
 
+    /**
+     * Which biomes send their genomes to which when they are evolved as
+     * islands; see {@link Solver#evolve}.
+     */
+    public enum Topology
+    {
+        /**
+         * Each biome sends to the next one, and the last to the first.
+         */
+        RING,
+
+        /**
+         * Each biome sends to all the others.
+         */
+        FULL,
+
+        /**
+         * Each biome sends to another one, picked at random each time.
+         */
+        RANDOM;
+    }
+
     /**
      * A variable over which the solver solves.
+     *
+     * <p>The values of a variable are either held in an array, in which
+     * case the solver will try every combination of the values of all
+     * of the variables, or are a column of a {@link Dataset}, in which
+     * case the solver will try each row of the dataset.
      */
     public static class Variable<T>
     {
@@ -49,10 +81,21 @@ public class Solver
         private final Identifier<T> myId;
 
         /**
-         * The value for the variable.
+         * The value for the variable, if they are in an array.
          */
         private final T[] myValues;
 
+        /**
+         * The dataset holding the values, if they are in one.
+         */
+        private final Dataset myDataset;
+
+        /**
+         * The column of the dataset holding the values, if they are in
+         * one.
+         */
+        private final int myColumn;
+
         /**
          * CTOR.
          *
@@ -63,8 +106,31 @@ public class Solver
                         final T[]           values)
         {
             Objects.requireNonNull(identifier, "Null identifier");
-            myId     = identifier;
-            myValues = values;
+            myId      = identifier;
+            myValues  = values;
+            myDataset = null;
+            myColumn  = -1;
+        }
+
+        /**
+         * CTOR for a variable whose values are a column of a dataset.
+         * The variable's identifier is named after the column.
+         *
+         * @param dataset The dataset.
+         * @param column  The index of the column in the dataset.
+         *
+         * @throws IndexOutOfBoundsException If there was no such column.
+         */
+        @SuppressWarnings("unchecked")
+        public Variable(final Dataset dataset, final int column)
+            throws IndexOutOfBoundsException
+        {
+            Objects.requireNonNull(dataset, "Null dataset");
+            myId      = new Identifier<>(dataset.getName(column),
+                                         (Class<T>)dataset.getType(column));
+            myValues  = null;
+            myDataset = dataset;
+            myColumn  = column;
         }
 
         /**
@@ -84,7 +150,8 @@ public class Solver
          */
         public Class<?> getType()
         {
-            return myValues.getClass().getComponentType();
+            return (myDataset == null) ? myValues.getClass().getComponentType()
+                                       : myDataset.getType(myColumn);
         }
 
         /**
@@ -96,7 +163,8 @@ public class Solver
          */
         public Object get(final int index)
         {
-            return myValues[index];
+            return (myDataset == null) ? myValues[index]
+                                       : myDataset.get(myColumn, index);
         }
 
         /**
@@ -106,7 +174,7 @@ public class Solver
          */
         public int count()
         {
-            return myValues.length;
+            return (myDataset == null) ? myValues.length : myDataset.size();
         }
 
         /**
@@ -120,8 +188,10 @@ public class Solver
             }
 
             final Variable that = (Variable)object;
-            return (myId.equals(that.myId)  &&
-                    Arrays.equals(myValues, that.myValues));
+            return (myId.equals(that.myId)             &&
+                    Arrays.equals(myValues, that.myValues) &&
+                    myDataset == that.myDataset        &&
+                    myColumn  == that.myColumn);
         }
 
         /**
@@ -131,7 +201,8 @@ public class Solver
         public int hashCode()
         {
             return (myId   .hashCode()        ^
-                    Arrays .hashCode(myValues));
+                    Arrays .hashCode(myValues) ^
+                    myColumn);
         }
 
         /**
@@ -140,7 +211,8 @@ public class Solver
         @Override
         public String toString()
         {
-            return myId + Arrays.toString(myValues);
+            return (myDataset == null) ? myId + Arrays.toString(myValues)
+                                       : myId + "@" + myDataset;
         }
     }
 
@@ -231,22 +303,32 @@ public class Solver
         public Gene generate()
         {
             final int total = myGeneSuppliers.size() + myVariables.size();
-            final int index =
-                Math.max(
-                    0,
-                    Math.min(
-                        total - 1,
-                        (int)Math.floor(Math.random() * total)
-                    )
-                );
+            final int index = ThreadLocalRandom.current().nextInt(total);
             if (index < myGeneSuppliers.size()) {
                 return myGeneSuppliers.get(index).get();
             }
             else {
-                final Variable<?> v = myVariables.get(index - myGeneSuppliers.size());
-                return new Accessor(v.getIdentifier(), v.getType());
+                // Bound to the variable's slot in our contexts
+                final int         slot = index - myGeneSuppliers.size();
+                final Variable<?> v    = myVariables.get(slot);
+                return new Accessor(v.getIdentifier(), v.getType(), slot);
             }
         }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int slotOf(final Identifier<?> identifier)
+        {
+            // The slot is the index of the variable
+            for (int i=0; i < myVariables.size(); i++) {
+                if (myVariables.get(i).getIdentifier().equals(identifier)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
     }
 
     /**
@@ -286,17 +368,7 @@ public class Solver
          */
         public int count()
         {
-            // If not variables then no values
-            if (myVariables.isEmpty()) {
-                return 0;
-            }
-
-            // Otherwise it's the product of ranges
-            int count = 1;
-            for (int i=0; i < myVariables.size(); i++) {
-                count *= myVariables.get(i).count();
-            }
-            return count;
+            return myNumContexts;
         }
 
         /**
@@ -317,6 +389,14 @@ public class Solver
          */
         public boolean next()
         {
+            // Rows just step along together
+            if (myRows != null) {
+                final int row = myVariableIndices[0] + 1;
+                Arrays.fill(myVariableIndices, row);
+                update();
+                return row < myNumContexts;
+            }
+
             try {
                 // Increment...
                 for (int i=0; i < myVariableIndices.length; i++) {
@@ -331,23 +411,34 @@ public class Solver
                 return false;
             }
             finally {
-                // Recompute the values and ID
-                myId = 0;
-                for (int i=0; i < myVariables.size(); i++) {
-                    // Compute the values
-                    final Variable variable = myVariables.get(i);
-                    myValues[i] = variable.get(myVariableIndices[i]);
-
-                    // Accumulate into the ID
-                    myId *= variable.count();
-                    myId += myVariableIndices[i];
-
-                    // Debugging...
-                    if (LOG.isLoggable(Level.FINEST)) {
-                        LOG.finest(variable + " -> " + myValues[i]);
-                    }
-                }
+                update();
+            }
+        }
+
+        /**
+         * Move to the set of variable values which the given number of
+         * calls to {@link #next()}, after a {@link #reset()}, would have
+         * stepped on to.
+         *
+         * @param index The index of the set of values, from zero.
+         */
+        public void seek(final int index)
+        {
+            // Rows are just the index
+            if (myRows != null) {
+                Arrays.fill(myVariableIndices, index);
+                update();
+                return;
+            }
+
+            // The first variable is the one which changes the fastest
+            int remainder = index;
+            for (int i=0; i < myVariableIndices.length; i++) {
+                final int count = myVariables.get(i).count();
+                myVariableIndices[i] = remainder % count;
+                remainder /= count;
             }
+            update();
         }
 
         /**
@@ -397,38 +488,766 @@ public class Solver
             // Nope, defer to the given context
             return myContext.access(this, id);
         }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object access(final int slot, final Identifier<?> id)
+        {
+            // The slot is the index of the variable, if the identifier
+            // was bound by us
+            if (slot >= 0 && slot < myValues.length &&
+                myVariables.get(slot).getIdentifier() == id)
+            {
+                return myValues[slot];
+            }
+            else {
+                return access(id);
+            }
+        }
+
+        /**
+         * Recompute the values and ID from the indices.
+         */
+        private void update()
+        {
+            myId = 0;
+            for (int i=0; i < myVariables.size(); i++) {
+                // Compute the values, steering clear of the end of the
+                // rows which next() will step on to
+                final Variable variable = myVariables.get(i);
+                final int      index    = myVariableIndices[i];
+                myValues[i] = (index < variable.count()) ? variable.get(index)
+                                                         : null;
+
+                // Accumulate into the ID; for rows it's just the row
+                if (myRows != null) {
+                    myId = index;
+                    continue;
+                }
+                myId *= variable.count();
+                myId += index;
+
+                // Debugging...
+                if (LOG.isLoggable(Level.FINEST)) {
+                    LOG.finest(variable + " -> " + myValues[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * A contiguous run of the contexts which a {@link ContextIterator}
+     * would step through, for evaluating genomes over in one go. The
+     * contexts are split into batches of {@link #myBatchSize}, bar the
+     * last one.
+     */
+    private class ContextBatch
+        extends Batch
+    {
+        /**
+         * The iterator which we position to get each context.
+         */
+        private final ContextIterator myIterator;
+
+        /**
+         * Which batch this is.
+         */
+        private final int myIndex;
+
+        /**
+         * The index of our first context.
+         */
+        private final int myStart;
+
+        /**
+         * The number of contexts which we have.
+         */
+        private final int mySize;
+
+        /**
+         * CTOR.
+         *
+         * @param iterator The iterator to position for each context.
+         * @param index    Which batch this is.
+         */
+        public ContextBatch(final ContextIterator iterator,
+                            final int             index)
+        {
+            myIterator = iterator;
+            myIndex    = index;
+            myStart    = index * myBatchSize;
+            mySize     = Math.min(myBatchSize, iterator.count() - myStart);
+        }
+
+        /**
+         * The index of our first context.
+         *
+         * @return The index.
+         */
+        public int getStart()
+        {
+            return myStart;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int size()
+        {
+            return mySize;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public ContextIterator get(final int row)
+            throws IndexOutOfBoundsException
+        {
+            if (row < 0 || row >= mySize) {
+                throw new IndexOutOfBoundsException(
+                    "Row " + row + " not in [0.." + mySize + ")"
+                );
+            }
+            myIterator.seek(myStart + row);
+            return myIterator;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Column access(final Identifier<?> id)
+        {
+            // See if it's one of our variables
+            for (int i=0; i < myVariables.size(); i++) {
+                if (myVariables.get(i).getIdentifier().equals(id)) {
+                    return variableColumn(i);
+                }
+            }
+
+            // Nope, so it's the solver context's. Go straight to that
+            // for each row, rather than looking through our variables
+            // again every time.
+            final Column column = Column.create(id.getValueType(), mySize);
+            for (int row=0; row < mySize; row++) {
+                column.set(row, myContext.access(get(row), id));
+            }
+            return column;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Column access(final int slot, final Identifier<?> id)
+        {
+            // The slot is the index of the variable, if the identifier
+            // was bound by us
+            if (slot >= 0 && slot < myVariables.size() &&
+                myVariables.get(slot).getIdentifier() == id)
+            {
+                return variableColumn(slot);
+            }
+            else {
+                return access(id);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Column getCached(final Object key)
+        {
+            return myColumnCache.get(key, myStart);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void putCached(final Object key, final Column column)
+        {
+            myColumnCache.put(key, myStart, column);
+        }
+
+        /**
+         * The values of one of our variables, which we either already
+         * have or can read from the dataset.
+         */
+        private Column variableColumn(final int index)
+        {
+            final Variable variable = myVariables.get(index);
+            return (myVariableColumns != null)
+                ? myVariableColumns[myIndex][index]
+                : variable.myDataset.column(variable.myColumn,
+                                            myStart,
+                                            mySize);
+        }
+    }
+
+    /**
+     * The targets for an output which is an array, for all the contexts,
+     * flattened into a single buffer of elements along with where each
+     * context's array starts in it. This is so that scoring a genome need
+     * only walk its own arrays.
+     *
+     * <p>Arrays are scored element by element, over the elements which
+     * the target and value have in common, and then scaled down by how
+     * much their lengths differ. Arrays of numbers are scored with R^2,
+     * arrays of strings by their similarity, and anything else by
+     * whether the elements are equal.
+     */
+    private class ArrayTargets
+    {
+        /**
+         * The score for a single genome, which is accumulated context by
+         * context.
+         */
+        public class Scorer
+        {
+            /**
+             * For arrays of numbers, the value elements which line up
+             * with each target element, or {@code NaN} where there were
+             * none.
+             */
+            private final double[] myValues;
+
+            /**
+             * For other arrays, the sum of the element scores.
+             */
+            private double mySum;
+
+            /**
+             * The number of elements which lined up.
+             */
+            private long myAligned;
+
+            /**
+             * The total of the longer of the target and value lengths.
+             */
+            private long mySpan;
+
+            /**
+             * CTOR.
+             */
+            public Scorer()
+            {
+                if (myTargetNumbers == null) {
+                    myValues = null;
+                }
+                else {
+                    myValues = new double[myTargetNumbers.length];
+                    Arrays.fill(myValues, Double.NaN);
+                }
+                mySum     = 0.0;
+                myAligned = 0;
+                mySpan    = 0;
+            }
+
+            /**
+             * Score a genome's value for a context, which must have a
+             * target.
+             *
+             * @param context The index of the context.
+             * @param value   The genome's value, which is not {@code null}.
+             */
+            public void add(final int context, final Object value)
+            {
+                final int start  = myOffsets[context];
+                final int length = myOffsets[context + 1] - start;
+                final Object[] elements =
+                    (value instanceof Object[]) ? (Object[])value : null;
+                final int count   = (elements == null) ? 0 : elements.length;
+                final int aligned = Math.min(length, count);
+                myAligned += aligned;
+                mySpan    += Math.max(length, count);
+
+                for (int i=0; i < aligned; i++) {
+                    final Object element = elements[i];
+                    final Object target  =
+                        (myTargetObjects == null) ? null
+                                                  : myTargetObjects[start + i];
+                    if (myValues != null) {
+                        myValues[start + i] =
+                            (element instanceof Number)
+                                ? ((Number)element).doubleValue()
+                                : Double.NaN;
+                    }
+                    else if (element instanceof String &&
+                             target  instanceof String)
+                    {
+                        mySum += 1.0 - distance(target, element);
+                    }
+                    else if (Objects.deepEquals(target, element)) {
+                        mySum += 1.0;
+                    }
+                }
+            }
+
+            /**
+             * Get the matchness of everything which was added.
+             *
+             * @param health How to compute R^2.
+             *
+             * @return The matchness, or {@code NaN} if it could not be computed.
+             */
+            public double matchness(final Health health)
+            {
+                // Empty arrays which were meant to be empty are perfect
+                if (mySpan == 0) {
+                    return 1.0;
+                }
+                final double matchness =
+                    (myValues != null)
+                        ? health.r2(myTargetNumbers, myValues, myValues.length)
+                        : mySum / myAligned;
+                return (myAligned == 0)
+                    ? 0.0
+                    : matchness * ((double)myAligned / mySpan);
+            }
+        }
+
+        /**
+         * Where each context's target starts in the buffer of elements,
+         * with one more at the end for where the last one stops.
+         */
+        private final int[] myOffsets;
+
+        /**
+         * The elements, for arrays of numbers; else {@code null}.
+         */
+        private final double[] myTargetNumbers;
+
+        /**
+         * The elements, for other arrays; else {@code null}.
+         */
+        private final Object[] myTargetObjects;
+
+        /**
+         * CTOR.
+         *
+         * @param targets The column of targets, which are arrays.
+         */
+        public ArrayTargets(final Column targets)
+        {
+            final int     numCxts = targets.size();
+            final boolean numeric =
+                Number.class.isAssignableFrom(
+                    targets.getType().getComponentType()
+                );
+
+            // See how big they are in total
+            int total = 0;
+            for (int i=0; i < numCxts; i++) {
+                if (targets.get(i) instanceof Object[]) {
+                    total = Math.addExact(total,
+                                          ((Object[])targets.get(i)).length);
+                }
+            }
+
+            // And flatten them
+            myOffsets       = new int[numCxts + 1];
+            myTargetNumbers = numeric ? new double[total] : null;
+            myTargetObjects = numeric ? null : new Object[total];
+            for (int i=0, offset=0; i < numCxts; i++) {
+                myOffsets[i] = offset;
+                if (targets.get(i) instanceof Object[]) {
+                    for (Object element : (Object[])targets.get(i)) {
+                        if (numeric) {
+                            myTargetNumbers[offset++] =
+                                (element instanceof Number)
+                                    ? ((Number)element).doubleValue()
+                                    : Double.NaN;
+                        }
+                        else {
+                            myTargetObjects[offset++] = element;
+                        }
+                    }
+                }
+                myOffsets[i + 1] = offset;
+            }
+        }
+    }
+
+    /**
+     * The targets of an output for all the contexts. These never change
+     * so they are computed once, when we are built, and held in the
+     * forms which scoring genomes against them wants.
+     */
+    private class Targets
+    {
+        /**
+         * The targets, with rows missing for contexts without one.
+         */
+        public final Column myColumn;
+
+        /**
+         * Which contexts have a target, packed 64 to a word.
+         */
+        public final long[] myPresent;
+
+        /**
+         * The targets as doubles, with {@code NaN} for contexts without
+         * one, if they are numbers; else {@code null}.
+         */
+        public final double[] myNumbers;
+
+        /**
+         * The flattened targets, if they are arrays; else {@code null}.
+         */
+        public final ArrayTargets myArrays;
+
+        /**
+         * CTOR.
+         *
+         * @param column The targets, for all the contexts.
+         */
+        public Targets(final Column column)
+        {
+            final int      numCxts = column.size();
+            final Class<?> type    = column.getType();
+
+            myColumn  = column;
+            final long[] missing = myColumn.missingWords();
+            myPresent = new long[missing.length];
+            for (int i=0; i < missing.length; i++) {
+                myPresent[i] = ~missing[i];
+            }
+
+            if (Number.class.isAssignableFrom(type)) {
+                myNumbers = new double[numCxts];
+                for (int i=0; i < numCxts; i++) {
+                    myNumbers[i] = myColumn.isMissing(i) ? Double.NaN
+                                                         : myColumn.getDouble(i);
+                }
+            }
+            else {
+                myNumbers = null;
+            }
+
+            myArrays = type.isArray() ? new ArrayTargets(myColumn) : null;
+        }
+    }
+
+    /**
+     * Computes the healths of a contiguous run of genomes, by splitting
+     * it in half until it's small enough to just do. The halves which
+     * are forked off are stolen by idle workers, so the work balances
+     * itself out even though some genomes are far more costly to
+     * evaluate than others.
+     */
+    private class HealthTask
+        extends RecursiveAction
+    {
+        private static final long serialVersionUID = 3871620491755218764L;
+
+        /**
+         * All the genomes.
+         */
+        private final Genome[] myGenomes;
+
+        /**
+         * The index of the first genome in our run.
+         */
+        private final int myFrom;
+
+        /**
+         * The index after the last genome in our run.
+         */
+        private final int myTo;
+
+        /**
+         * The most genomes which we compute without splitting.
+         */
+        private final int myChunk;
+
+        /**
+         * CTOR.
+         */
+        public HealthTask(final Genome[] genomes,
+                          final int      from,
+                          final int      to,
+                          final int      chunk)
+        {
+            myGenomes = genomes;
+            myFrom    = from;
+            myTo      = to;
+            myChunk   = chunk;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected void compute()
+        {
+            if (myTo - myFrom > myChunk) {
+                final int mid = (myFrom + myTo) >>> 1;
+                invokeAll(new HealthTask(myGenomes, myFrom, mid,  myChunk),
+                          new HealthTask(myGenomes, mid,    myTo, myChunk));
+            }
+            else {
+                for (int i = myFrom; i < myTo; i++) {
+                    myHealthComputer.healthOf(myGenomes[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * One of the biomes, evolving as an island; see {@link #evolve}.
+     * Each island has its own noise, so that the islands don't all
+     * favour the same genomes.
+     */
+    private class Island
+    {
+        /**
+         * Which biome we are.
+         */
+        private final int myIndex;
+
+        /**
+         * The biome itself.
+         */
+        private final Biome myBiome;
+
+        /**
+         * Where each island receives its migrants, including us.
+         */
+        private final List<Queue<Genome>> myMailboxes;
+
+        /**
+         * How many generations have been bred, over all the islands.
+         */
+        private final AtomicInteger myBred;
+
+        /**
+         * How much noise to add to the health values.
+         */
+        private final double myHealthNoise;
+
+        /**
+         * How many generations between migrations.
+         */
+        private final int myMigrationInterval;
+
+        /**
+         * How many genomes to send to each neighbour.
+         */
+        private final int myMigrationSize;
+
+        /**
+         * Which islands are our neighbours.
+         */
+        private final Topology myTopology;
+
+        /**
+         * How we determine the healths of our genomes.
+         */
+        private final Health myHealth = new Health();
+
+        /**
+         * The migrants which we are taking in.
+         */
+        private final List<Genome> myArrivals = new ArrayList<>();
+
+        /**
+         * CTOR.
+         */
+        public Island(final int                 index,
+                      final List<Queue<Genome>> mailboxes,
+                      final AtomicInteger       bred,
+                      final double              healthNoise,
+                      final int                 migrationInterval,
+                      final int                 migrationSize,
+                      final Topology            topology)
+        {
+            myIndex             = index;
+            myBiome             = myBiomes.get(index);
+            myMailboxes         = mailboxes;
+            myBred              = bred;
+            myHealthNoise       = healthNoise;
+            myMigrationInterval = migrationInterval;
+            myMigrationSize     = migrationSize;
+            myTopology          = topology;
+        }
+
+        /**
+         * Breed the given generation, taking in any migrants first and
+         * sending some off afterwards if it's time.
+         */
+        public void breed(final int generation)
+        {
+            // New noise for each generation, as with step()
+            myHealth.setHealthNoise(myHealthNoise);
+
+            // Take in whoever has turned up
+            final Queue<Genome> mailbox = myMailboxes.get(myIndex);
+            for (Genome genome; (genome = mailbox.poll()) != null; ) {
+                myArrivals.add(genome);
+            }
+            if (!myArrivals.isEmpty()) {
+                myBiome.immigrate(myArrivals, myHealth);
+                myArrivals.clear();
+            }
+
+            myBiome.nextGeneration(myHealth);
+
+            // Once the islands have bred about a generation each, drop
+            // the columns which none of them used in that time. This
+            // island is between generations, and the others don't mind.
+            if (myBred.incrementAndGet() % myMailboxes.size() == 0) {
+                LOG.fine(() -> "Finished with " + myColumnCache);
+                myColumnCache.age();
+            }
+
+            // Time to send some off? Each neighbour gets its own copies.
+            final int others = myMailboxes.size() - 1;
+            if (others > 0 &&
+                myMigrationSize > 0 &&
+                generation % myMigrationInterval == 0)
+            {
+                switch (myTopology) {
+                case RING:
+                    send((myIndex + 1) % myMailboxes.size());
+                    break;
+
+                case FULL:
+                    for (int i=0; i < myMailboxes.size(); i++) {
+                        if (i != myIndex) {
+                            send(i);
+                        }
+                    }
+                    break;
+
+                case RANDOM:
+                    // Pick from the others by skipping ourselves
+                    final int pick =
+                        ThreadLocalRandom.current().nextInt(others);
+                    send((pick < myIndex) ? pick : pick + 1);
+                    break;
+
+                default:
+                    throw new IllegalStateException(
+                        "Unhandled topology: " + myTopology
+                    );
+                }
+            }
+        }
+
+        /**
+         * Send copies of our healthiest genomes to another island.
+         */
+        private void send(final int index)
+        {
+            myMailboxes.get(index).addAll(
+                myBiome.emigrants(myMigrationSize, myHealth)
+            );
+        }
+    }
+
+    /**
+     * Breeds a generation of an island and then forks off the next one,
+     * which goes to the back of the queue. That way islands take turns
+     * on the workers, a generation at a time, when there are more
+     * islands than workers. The root which they all complete into is
+     * what {@link #evolve} waits on.
+     */
+    private class IslandGeneration
+        extends CountedCompleter<Void>
+    {
+        private static final long serialVersionUID = 6128390457198213867L;
+
+        /**
+         * The island to breed.
+         */
+        private final Island myIsland;
+
+        /**
+         * Which generation this is, starting at 1.
+         */
+        private final int myGeneration;
+
+        /**
+         * How many generations the island breeds.
+         */
+        private final int myGenerations;
+
+        /**
+         * CTOR.
+         */
+        public IslandGeneration(final CountedCompleter<?> root,
+                                final Island              island,
+                                final int                 generation,
+                                final int                 generations)
+        {
+            super(root);
+            myIsland      = island;
+            myGeneration  = generation;
+            myGenerations = generations;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void compute()
+        {
+            // Don't carry on if another island has failed
+            final CountedCompleter<?> root = getCompleter();
+            if (!root.isCompletedAbnormally()) {
+                myIsland.breed(myGeneration);
+                if (myGeneration < myGenerations) {
+                    root.addToPendingCount(1);
+                    new IslandGeneration(root,
+                                         myIsland,
+                                         myGeneration + 1,
+                                         myGenerations).fork();
+                }
+            }
+            tryComplete();
+        }
     }
 
     /**
      * How we determine the health of a genome.
+     *
+     * <p>The raw fitness of a genome is remembered by the genome itself,
+     * until it changes, so genomes which survive from one generation to
+     * the next are not re-evaluated. The noise is applied on top of that
+     * each time the health is asked for; it's derived from the genome
+     * and the step, so it does not change within a step.
+     *
+     * <p>The raw fitness is owned by the solver, rather than by any one
+     * instance, so that islands may each have their own noise while
+     * sharing the fitness of the genomes which migrate between them.
      */
     private class Health
         implements Genome.Health
     {
-        /**
-         * The cached health values.
-         */
-        private final Map<Genome,double[]> myCache = new ConcurrentHashMap<>();
-
         /**
          * The amount of noise to add to health values.
          */
         private double myHealthNoise = 0.0;
 
         /**
-         * Clear any cached data.
+         * Where this step's noise comes from.
          */
-        public void clear()
-        {
-            myCache.clear();
-        }
+        private long myNoiseSeed = 0;
 
         /**
-         * Set the amount of noise to add to the health value.
+         * Set the amount of noise to add to the health value, and pick
+         * new noise for the step.
          */
         public void setHealthNoise(final double healthNoise)
         {
             myHealthNoise = Math.max(0.0, Math.min(1.0, healthNoise));
+            myNoiseSeed   = ThreadLocalRandom.current().nextLong();
         }
 
         /**
@@ -437,14 +1256,20 @@ public class Solver
         @Override
         public double healthOf(final Genome genome)
         {
-            synchronized (genome) {
-                double[] values = myCache.get(genome);
-                if (values == null) {
-                    values = computeHealth(genome);
-                    myCache.put(genome, values);
-                }
-                return values[0];
+            // Genomes which can't compute anything are as bad as it gets
+            final Genome.Fitness fitness = fitnessOf(genome);
+            if (fitness.myCoverage == 0.0) {
+                return MIN_HEALTH;
             }
+
+            // Add some noise to the health, to allow escape from local maxima
+            final double health =
+                ((1.0 - myHealthNoise) * fitness.myMatchness +
+                 myHealthNoise         * noise(genome));
+
+            // And give it back, suitably capped
+            return Double.isNaN(health) ? MIN_HEALTH
+                                        : Math.min(MAX_HEALTH, health);
         }
 
         /**
@@ -453,42 +1278,161 @@ public class Solver
         @Override
         public double coverage(final Genome genome)
         {
-            synchronized (genome) {
-                double[] values = myCache.get(genome);
-                if (values == null) {
-                    values = computeHealth(genome);
-                    myCache.put(genome, values);
-                }
-                return values[1];
-            }
+            return fitnessOf(genome).myCoverage;
+        }
+
+        /**
+         * Get a genome's raw fitness, computing it if need be.
+         */
+        private Genome.Fitness fitnessOf(final Genome genome)
+        {
+            return genome.fitnessOf(Solver.this, this::computeFitness);
+        }
+
+        /**
+         * Scale a per-context limit up to the given number of contexts,
+         * without overflowing.
+         */
+        private long perContext(final long limit, final int numCxts)
+        {
+            return (numCxts > 0 && limit > Long.MAX_VALUE / numCxts)
+                ? Long.MAX_VALUE
+                : limit * numCxts;
         }
 
         /**
-         * Compute a genome's health.
+         * The noise for a genome in this step, between zero and one.
          */
-        private double[] computeHealth(final Genome genome)
+        private double noise(final Genome genome)
+        {
+            // The SplitMix64 finaliser, over the genome's ID and the seed
+            long z = genome.getId() * 0x9E3779B97F4A7C15L + myNoiseSeed;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z =  z ^ (z >>> 31);
+            return (z >>> 11) * 0x1.0p-53;
+        }
+
+        /**
+         * Compute a genome's raw fitness.
+         */
+        private Genome.Fitness computeFitness(final Genome genome)
         {
             // Cumulative over all the outputs
             int    totalContexts  = 0;
             int    totalCount     = 0;
             double totalMatchness = 0.0; // Yeah, I know...
 
-            // Handle all the outputs
-            for (int output = 0; output < genome.numOutputs(); output++) {
-                final ContextIterator itr     = new ContextIterator();
-                final int             numCxts = itr.count();
-                final Object[]        targets = new Object[numCxts];
-                final Object[]        values  = new Object[numCxts];
-                int count = 0;
-                for (itr.reset(); itr.next(); /*nothing*/) {
-                    final Object target = myFunctions[output].call(itr.getValues());
-                    final Object value  = genome.evaluate(itr, output);
-                    if (target != null && value != null) {
-                        targets[count] = target;
-                        values [count] = value;
-                        count++;
+            // Evaluate all the outputs over batches of contexts, using
+            // the compiled form of the genome
+            final Program         program    = genome.getProgram();
+            // What we accumulate for each output depends on its type.
+            // The values are held by context, alongside the targets.
+            final ContextIterator itr        = new ContextIterator();
+            final int             numCxts    = itr.count();
+            final int             numOutputs = genome.numOutputs();
+            final double[][]      numValues  = new double[numOutputs][];
+            final long[][]        bitValues  = new long  [numOutputs][];
+            final long[][]        bitCounted = new long  [numOutputs][];
+            final ArrayTargets.Scorer[] scorers =
+                new ArrayTargets.Scorer[numOutputs];
+            final double[]        distances  = new double[numOutputs];
+            final int[]           counts     = new int   [numOutputs];
+            for (int output = 0; output < numOutputs; output++) {
+                final Targets targets = myTargets[output];
+                if (targets.myNumbers != null) {
+                    numValues[output] = new double[numCxts];
+                    Arrays.fill(numValues[output], Double.NaN);
+                }
+                else if (targets.myColumn instanceof Column.Booleans) {
+                    // Packed into bits, so they may be compared a word
+                    // of contexts at a time
+                    bitValues [output] = new long[targets.myPresent.length];
+                    bitCounted[output] = new long[targets.myPresent.length];
+                }
+                else if (targets.myArrays != null) {
+                    scorers[output] = targets.myArrays.new Scorer();
+                }
+            }
+
+            // The program's evaluation is limited by a budget, over all
+            // the contexts, so that pathological genomes can't stall us
+            final Budget budget =
+                new Budget(perContext(myMaxOpsPerContext,      numCxts),
+                           perContext(myMaxElementsPerContext, numCxts));
+            for (int index = 0; index < myNumBatches; index++) {
+                final ContextBatch batch = new ContextBatch(itr, index);
+                final int          start = batch.getStart();
+                final Column[] columns;
+                final Budget   previous = budget.enter();
+                try {
+                    columns = program.evaluate(batch);
+                }
+                catch (Budget.ExceededException e) {
+                    // Runaway genomes are as bad as they come
+                    LOG.fine(() -> "Cut short with " + budget + ": " + genome);
+                    return new Genome.Fitness(Solver.this, MIN_HEALTH, 0.0);
+                }
+                finally {
+                    budget.exit(previous);
+                }
+                for (int output = 0; output < numOutputs; output++) {
+                    final Targets targets = myTargets[output];
+                    final Column  column  = columns[output];
+
+                    // Booleans can be taken a word at a time, provided
+                    // that the batch starts on a word boundary
+                    if (bitValues[output] != null &&
+                        column instanceof Column.Booleans &&
+                        (start & 63) == 0)
+                    {
+                        final long[] words   = ((Column.Booleans)column).words();
+                        final long[] missing = column.missingWords();
+                        for (int i=0; i < words.length; i++) {
+                            final int  word    = (start >>> 6) + i;
+                            final long counted = ~missing[i] &
+                                                 targets.myPresent[word];
+                            bitValues [output][word] = words[i] & counted;
+                            bitCounted[output][word] = counted;
+                            counts[output] += Long.bitCount(counted);
+                        }
+                        continue;
+                    }
+
+                    for (int row = 0; row < batch.size(); row++) {
+                        final int context = start + row;
+                        if (column.isMissing(row) ||
+                            targets.myColumn.isMissing(context))
+                        {
+                            continue;
+                        }
+                        counts[output]++;
+                        if (numValues[output] != null) {
+                            numValues[output][context] = column.getDouble(row);
+                        }
+                        else if (bitValues[output] != null) {
+                            // The arrays start out all false
+                            final long bit = (1L << context);
+                            bitCounted[output][context >>> 6] |= bit;
+                            if (Boolean.TRUE.equals(column.get(row))) {
+                                bitValues[output][context >>> 6] |= bit;
+                            }
+                        }
+                        else if (scorers[output] != null) {
+                            scorers[output].add(context, column.get(row));
+                        }
+                        else {
+                            distances[output] +=
+                                distance(targets.myColumn.get(context),
+                                         column.get(row));
+                        }
                     }
                 }
+            }
+
+            // Handle all the outputs
+            for (int output = 0; output < numOutputs; output++) {
+                final int count = counts[output];
 
                 // Anything?
                 if (count == 0) {
@@ -496,16 +1440,30 @@ public class Solver
                 }
 
                 double matchness;
-                if (Number.class.isAssignableFrom(genome.getOutputType(output))) {
-                    // Use R^2 to determine the health. First get all the
-                    // values we need. This isn't quite perfect since it's not
-                    // a linear regression but it's a reasonable estimation of
-                    // error for our purposes.
-                    matchness = r2(targets, values, count);
+                if (numValues[output] != null) {
+                    // Use R^2 to determine the health. This isn't quite
+                    // perfect since it's not a linear regression but it's
+                    // a reasonable estimation of error for our purposes.
+                    matchness = r2(myTargets[output].myNumbers,
+                                   numValues[output],
+                                   numCxts);
+                }
+                else if (bitValues[output] != null) {
+                    // The fraction which were right
+                    final Column.Booleans targets =
+                        (Column.Booleans)myTargets[output].myColumn;
+                    matchness = accuracy(targets.words(),
+                                         bitValues [output],
+                                         bitCounted[output],
+                                         count);
+                }
+                else if (scorers[output] != null) {
+                    // Element by element
+                    matchness = scorers[output].matchness(this);
                 }
                 else if (String.class.equals(genome.getOutputType(output))) {
                     // Simple similarity function
-                    matchness = similarity(targets, values, count);
+                    matchness = 1.0 - distances[output] / count;
                 }
                 else {
                     matchness = Double.NaN;
@@ -561,44 +1519,36 @@ public class Solver
 
             // Anything?
             if (totalCount == 0) {
-                return ZERO_COUNT_VALUE;
+                return new Genome.Fitness(Solver.this, MIN_HEALTH, 0.0);
             }
 
             // How much coverage did we have?
             final double totalCoverage = 
                 Math.max(0.0, Math.min(1.0, (double)totalCount / totalContexts));
 
-            // Add some noise to the health, to allow escape from local maxima
-            totalMatchness =
-                ((1.0 - myHealthNoise) * totalMatchness +
-                 myHealthNoise         * ThreadLocalRandom.current().nextDouble());
-
             // Talk to the animals
             if (LOG.isLoggable(Level.FINEST)) {
                 LOG.finest(
-                    "Health [" +
+                    "Fitness [" +
                         totalMatchness + ", " +
                         totalCoverage  +
                     "] for " + genome
                 );
             }
 
-            // And give back the values, suitably capped
-            return new double[] {
-                Double.isNaN(totalMatchness) ? MIN_HEALTH
-                                             : Math.min(MAX_HEALTH,
-                                                        totalMatchness),
-                totalCoverage
-            };
+            // And give back the values
+            return new Genome.Fitness(Solver.this,
+                                      totalMatchness,
+                                      totalCoverage);
         }
 
         /**
-         * Compute the R^2 for a pair of arrays of {@link Number}s.
+         * Compute the R^2 for a pair of arrays of numbers.
          *
          * @return Double.NaN if it could not be computed.
          */
-        private double r2(final Object[] targets,
-                          final Object[] values,
+        private double r2(final double[] targets,
+                          final double[] values,
                           final int      length)
         {
             // Sanity
@@ -610,17 +1560,11 @@ public class Solver
             int count = 0;
             double sum = 0;
             for (int i=0; i < length; i++) {
-                final Object target = targets[i];
-                final Object value  = values [i];
-                if (target instanceof Number &&
-                    value  instanceof Number)
-                {
-                    final double t = ((Number)target).doubleValue();
-                    final double v = ((Number)value ).doubleValue();
-                    if (!Double.isNaN(t) && !Double.isNaN(v)) {
-                        count++;
-                        sum += v;
-                    }
+                final double t = targets[i];
+                final double v = values [i];
+                if (!Double.isNaN(t) && !Double.isNaN(v)) {
+                    count++;
+                    sum += v;
                 }
             }
 
@@ -635,18 +1579,12 @@ public class Solver
             // Now compute the values needed for R^2
             double ssTot = 0.0;
             double ssRes = 0.0;
-            for (int i=0; i < values.length; i++) {
-                final Object target = targets[i];
-                final Object value  = values [i];
-                if (target instanceof Number &&
-                    value  instanceof Number)
-                {
-                    final double t = ((Number)target).doubleValue();
-                    final double v = ((Number)value ).doubleValue();
-                    if (!Double.isNaN(t) && !Double.isNaN(v)) {
-                        ssTot += (t - mean) * (t - mean);
-                        ssRes += (t - v   ) * (t - v   );
-                    }
+            for (int i=0; i < length; i++) {
+                final double t = targets[i];
+                final double v = values [i];
+                if (!Double.isNaN(t) && !Double.isNaN(v)) {
+                    ssTot += (t - mean) * (t - mean);
+                    ssRes += (t - v   ) * (t - v   );
                 }
             }
 
@@ -655,48 +1593,34 @@ public class Solver
         }
 
         /**
-         * Compute the similarity between a pair of arrays of {@link String}s.
+         * Compute the accuracy for a pair of arrays of booleans, packed
+         * 64 to a word, as the fraction of them which are the same.
+         *
+         * @param targets The target bits.
+         * @param values  The value bits.
+         * @param counted Which of the bits to count.
+         * @param count   How many bits are counted.
          *
          * @return Double.NaN if it could not be computed.
          */
-        private double similarity(final Object[] targets,
-                                  final Object[] values,
-                                  final int      length)
+        private double accuracy(final long[] targets,
+                                final long[] values,
+                                final long[] counted,
+                                final int    count)
         {
             // Sanity
-            if (targets == null || values == null || length == 0) {
+            if (targets == null || values == null || count == 0) {
                 return Double.NaN;
             }
 
-            // Compute it for each pair
-            double sum = 0;
-            for (int i=0; i < length; i++) {
-                // Cast here
-                final Object objT = targets[i];
-                final Object objV = values [i];
-
-                if (objT instanceof String && objV instanceof String) {
-                    sum +=
-                        Math.min(
-                            1.0,
-                            Math.max(
-                                0.0,
-                                StringUtil.distance(
-                                    (String)objT,
-                                    (String)objV
-                                )
-                            )
-                        );
-                }
+            // Count the differences a word at a time
+            long wrong = 0;
+            for (int i=0; i < counted.length; i++) {
+                wrong += Long.bitCount((targets[i] ^ values[i]) & counted[i]);
             }
-
-            // Give it back, suitably normalised and inverted
-            final double distance = sum / length;
-            return 1.0 - distance;
+            return 1.0 - (double)wrong / count;
         }
     }
-    private static final double[] ZERO_COUNT_VALUE =
-        new double[] { Genome.Health.MIN_HEALTH, 0.0};
 
     // ----------------------------------------------------------------------
     
@@ -718,9 +1642,32 @@ public class Solver
     private final List<Variable> myVariables;
 
     /**
-     * The function we are trying to compute.
+     * The dataset whose rows are the contexts, if the variables are its
+     * columns; else {@code null}, and the contexts are every combination
+     * of the variables' values.
+     */
+    private final Dataset myRows;
+
+    /**
+     * The number of contexts.
+     */
+    private final int myNumContexts;
+
+    /**
+     * The number of batches which the contexts are split into.
+     */
+    private int myNumBatches;
+
+    /**
+     * The targets of each of the functions, for all the contexts.
+     */
+    private final Targets[] myTargets;
+
+    /**
+     * The values of each of the variables, for each batch of contexts;
+     * or {@code null} if they are read from the dataset as needed.
      */
-    private final Function[] myFunctions;
+    private Column[][] myVariableColumns;
 
     /**
      * The client's context used for evaluating the genomes.
@@ -757,6 +1704,34 @@ public class Solver
      */
     private final Health myHealthComputer;
 
+    /**
+     * The threads which evaluate the genomes, created when first
+     * needed and kept from one step to the next.
+     */
+    private ForkJoinPool myPool;
+
+    /**
+     * The maximum number of contexts to evaluate a genome over at once.
+     */
+    private int myBatchSize;
+
+    /**
+     * The columns which genomes have computed during this step, shared
+     * between them all.
+     */
+    private final ColumnCache myColumnCache;
+
+    /**
+     * How many operations evaluating a genome may take, per context.
+     */
+    private volatile long myMaxOpsPerContext;
+
+    /**
+     * How many array elements, or string characters, evaluating a genome
+     * may allocate, per context.
+     */
+    private volatile long myMaxElementsPerContext;
+
     // ----------------------------------------------------------------------
 
     /**
@@ -779,10 +1754,87 @@ public class Solver
                   final Collection<Supplier<Gene>> geneSuppliers,
                   final int                        numBiomes,
                   final int                        biomeSize)
+    {
+        this(variables,
+             null,
+             Objects.requireNonNull(function, "Null function"),
+             -1,
+             context,
+             coverageFactor,
+             sizePenaltyFactor,
+             geneSuppliers,
+             numBiomes,
+             biomeSize);
+    }
+
+    /**
+     * CTOR for solving over the rows of a dataset. Each row is a
+     * context, where one column holds the target and the rest are the
+     * variables.
+     *
+     * @param dataset           The dataset.
+     * @param target            The name of the column holding the target.
+     * @param context           The context for accessing values from.
+     * @param coverageFactor    How much coverage factors into health.
+     * @param sizePenaltyFactor How much to penalize large genomes.
+     * @param geneSuppliers     How we create new gene instances.
+     * @param numBiomes         How many biomes to use to solve with.
+     * @param biomeSize         The number of genomes in each biome.
+     *
+     * @throws IllegalArgumentException If the dataset had no such column.
+     */
+    public Solver(final Dataset                    dataset,
+                  final String                     target,
+                  final SolverContext              context,
+                  final double                     coverageFactor,
+                  final double                     sizePenaltyFactor,
+                  final Collection<Supplier<Gene>> geneSuppliers,
+                  final int                        numBiomes,
+                  final int                        biomeSize)
+        throws IllegalArgumentException
+    {
+        this(variablesOf(dataset, target),
+             dataset,
+             null,
+             dataset.indexOf(target),
+             context,
+             coverageFactor,
+             sizePenaltyFactor,
+             geneSuppliers,
+             numBiomes,
+             biomeSize);
+    }
+
+    /**
+     * CTOR.
+     *
+     * @param variables         The variables over which we are solving.
+     * @param rows              The dataset whose rows are the contexts,
+     *                          if any.
+     * @param function          The function which we are solving for, if
+     *                          not solving over the rows of a dataset.
+     * @param target            The column of the dataset which holds the
+     *                          target, if solving over its rows.
+     * @param context           The context for accessing values from.
+     * @param coverageFactor    How much coverage factors into health.
+     * @param sizePenaltyFactor How much to penalize large genomes.
+     * @param geneSuppliers     How we create new gene instances.
+     * @param numBiomes         How many biomes to use to solve with.
+     * @param biomeSize         The number of genomes in each biome.
+     */
+    private Solver(final List<Variable>             variables,
+                   final Dataset                    rows,
+                   final Function                   function,
+                   final int                        target,
+                   final SolverContext              context,
+                   final double                     coverageFactor,
+                   final double                     sizePenaltyFactor,
+                   final Collection<Supplier<Gene>> geneSuppliers,
+                   final int                        numBiomes,
+                   final int                        biomeSize)
     {
         // Sanity checks
         Objects.requireNonNull(variables, "Null variables");
-        Objects.requireNonNull(function,  "Null function");
         Objects.requireNonNull(context,   "Null context");
         if (numBiomes <= 0) {
             throw new IllegalArgumentException(
@@ -814,13 +1866,27 @@ public class Solver
         // Assign
         myNumGenes          = 25;
         myVariables         = new ArrayList<>(variables);
-        myFunctions         = new Function[] { function };
+        myRows              = rows;
+        myNumContexts       = numContexts(variables, rows);
         myContext           = context;
         myCoverageFactor    = Math.max(0.0, Math.min(1.0, coverageFactor));
         mySizePenaltyFactor = Math.max(0.0, Math.min(1.0, sizePenaltyFactor));
         myGeneFactory       = new Factory(geneSuppliers);
         myMaxGenomeSize     = 500;
         myMaxMutationFactor = 0.10;
+        myColumnCache       = new ColumnCache(1 << 22);
+
+        myMaxOpsPerContext      = 100_000;
+        myMaxElementsPerContext =  10_000;
+
+        // The contexts never change, so we work out everything about
+        // them up front. A dataset may be too big to hold on the heap,
+        // so its variables are read from it as they are needed.
+        myTargets = new Targets[] {
+            new Targets((rows == null) ? targetColumn(function)
+                                       : rows.column(target, 0, myNumContexts))
+        };
+        batch(1024);
 
         myBiomes = new ArrayList<>(numBiomes);
         for (int i=0; i < numBiomes; i++) {
@@ -857,8 +1923,13 @@ public class Solver
     {
         LOG.fine("Stepping on");
 
-        // Flush the health cache and set the noise level
-        myHealthComputer.clear();
+        // Drop the columns which the last step did not use and set the
+        // noise level. The genomes remember their own fitness, so that
+        // does not need flushing. We keep the columns of the genomes
+        // which are still in use so that their offspring may reuse them.
+        LOG.fine(() -> "Finished with " + myColumnCache);
+        LOG.fine(() -> "Function failures so far: " + Function.getFailures());
+        myColumnCache.age();
         myHealthComputer.setHealthNoise(healthNoise);
 
         // If we have more than one worker thread then we use them to pre-cache
@@ -867,9 +1938,24 @@ public class Solver
             precacheHealth(numWorkers);
         }
 
-        // Now step all the biomes
-        for (int i=0; i < myBiomes.size(); i++) {
-            myBiomes.get(i).nextGeneration(myHealthComputer);
+        // Now step all the biomes, side by side if we have the workers;
+        // they each create their offspring on the same pool too
+        if (numWorkers > 1) {
+            final ForkJoinPool          pool  = pool(numWorkers);
+            final List<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (Biome biome : myBiomes) {
+                tasks.add(ForkJoinTask.adapt(
+                    () -> biome.nextGeneration(myHealthComputer, pool)
+                ));
+            }
+            pool.invoke(ForkJoinTask.adapt(() -> {
+                ForkJoinTask.invokeAll(tasks);
+            }));
+        }
+        else {
+            for (int i=0; i < myBiomes.size(); i++) {
+                myBiomes.get(i).nextGeneration(myHealthComputer);
+            }
         }
 
         // And precache again since callers will likely want the health value
@@ -878,6 +1964,154 @@ public class Solver
         }
     }
 
+    /**
+     * Evolve the biomes as islands, each at its own pace, for the given
+     * number of generations. Rather than waiting on one another at every
+     * step, every so often each island sends copies of its healthiest
+     * genomes to its neighbours, which take them in, in place of their
+     * least healthy ones, when they next get round to it.
+     *
+     * <p>Each generation of an island is a task on the solver's pool of
+     * workers, which breeds the biome on its own; there's no second
+     * level of parallelism within an island. When an island's generation
+     * is done it queues up its next one behind those of the other
+     * islands, so when there are fewer workers than islands they take
+     * turns, a generation at a time, and still trade genomes as they go.
+     *
+     * @param numWorkers        How many worker threads to spawn.
+     * @param generations       How many generations each island evolves.
+     * @param healthNoise       How much noise to add to the health values
+     *                          (between zero and one).
+     * @param migrationInterval How many generations between migrations.
+     * @param migrationSize     How many genomes each island sends to each
+     *                          of its neighbours.
+     * @param topology          Which islands are neighbours.
+     *
+     * @throws IllegalArgumentException If the interval was not positive or
+     *                                  the size was negative.
+     */
+    public void evolve(final int      numWorkers,
+                       final int      generations,
+                       final double   healthNoise,
+                       final int      migrationInterval,
+                       final int      migrationSize,
+                       final Topology topology)
+        throws IllegalArgumentException
+    {
+        Objects.requireNonNull(topology, "Null topology");
+        if (migrationInterval <= 0) {
+            throw new IllegalArgumentException(
+                "Non-positive migration interval: " + migrationInterval
+            );
+        }
+        if (migrationSize < 0) {
+            throw new IllegalArgumentException(
+                "Negative migration size: " + migrationSize
+            );
+        }
+
+        // As with step(). The islands each have their own noise, but
+        // this is what healthOf() will use afterwards.
+        LOG.fine(() -> "Finished with " + myColumnCache);
+        myColumnCache.age();
+        myHealthComputer.setHealthNoise(healthNoise);
+
+        // Where each island receives its migrants
+        final int numIslands = myBiomes.size();
+        final List<Queue<Genome>> mailboxes = new ArrayList<>(numIslands);
+        for (int i=0; i < numIslands; i++) {
+            mailboxes.add(new ConcurrentLinkedQueue<>());
+        }
+
+        // The islands, which count up how many generations they have
+        // bred between them
+        final AtomicInteger bred    = new AtomicInteger();
+        final List<Island>  islands = new ArrayList<>(numIslands);
+        for (int i=0; i < numIslands; i++) {
+            islands.add(new Island(i,
+                                   mailboxes,
+                                   bred,
+                                   healthNoise,
+                                   migrationInterval,
+                                   migrationSize,
+                                   topology));
+        }
+
+        // Set them all going, and wait for them; anything which goes
+        // wrong on an island is thrown from here
+        final CountedCompleter<Void> root =
+            new CountedCompleter<Void>() {
+                @Override
+                public void compute()
+                {
+                    if (generations > 0) {
+                        for (Island island : islands) {
+                            addToPendingCount(1);
+                            new IslandGeneration(this,
+                                                 island,
+                                                 1,
+                                                 generations).fork();
+                        }
+                    }
+                    tryComplete();
+                }
+            };
+        pool(Math.max(1, numWorkers)).invoke(root);
+    }
+
+    /**
+     * Set how much work evaluating a genome may do, per context which it
+     * is evaluated over; see {@link Budget}. The limits apply to the
+     * evaluation as a whole, so a genome may use more in one context if
+     * it uses less in others. Genomes which go over them are cut short
+     * and deemed to have the minimum health. This only affects genomes
+     * whose fitness has not been computed yet.
+     *
+     * @param opsPerContext      How many operations may be done.
+     * @param elementsPerContext How many array elements, or string
+     *                           characters, may be allocated.
+     *
+     * @throws IllegalArgumentException If either was not positive.
+     */
+    public void setBudget(final long opsPerContext,
+                          final long elementsPerContext)
+        throws IllegalArgumentException
+    {
+        if (opsPerContext <= 0 || elementsPerContext <= 0) {
+            throw new IllegalArgumentException(
+                "Given a non-positive budget: " +
+                opsPerContext + ", " + elementsPerContext
+            );
+        }
+        myMaxOpsPerContext      = opsPerContext;
+        myMaxElementsPerContext = elementsPerContext;
+    }
+
+    /**
+     * Set the most contexts which a genome is evaluated over at once. This
+     * only changes how fast it is evaluated, not what its health is. It
+     * should not be called while the solver is stepping.
+     *
+     * @param batchSize The number of contexts.
+     *
+     * @throws IllegalArgumentException If it was not positive.
+     */
+    public void setBatchSize(final int batchSize)
+        throws IllegalArgumentException
+    {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException(
+                "Non-positive batch size: " + batchSize
+            );
+        }
+        batch(batchSize);
+
+        // The cached columns are for the old batches, and aging twice
+        // drops all of them
+        myColumnCache.age();
+        myColumnCache.age();
+    }
+
     /**
      * Get the list of Biomes within the solver. You may modify the
      * contents of this list if you so desire.
@@ -948,7 +2182,8 @@ public class Solver
         // Add accessors for our variables
         for (int i=0; i < myVariables.size(); i++) {
             genes.add(new Accessor(myVariables.get(i).getIdentifier(),
-                                   myVariables.get(i).getType()));
+                                   myVariables.get(i).getType(),
+                                   i));
         }
             
         // Add random genes
@@ -958,8 +2193,8 @@ public class Solver
 
         // What we want
         final List<Class<?>> outputTypes = new ArrayList<>();
-        for (Function function : myFunctions) {
-            outputTypes.add(function.getReturnType());
+        for (Targets targets : myTargets) {
+            outputTypes.add(targets.myColumn.getType());
         }
 
         // Hand back the genome with these genes in it
@@ -971,6 +2206,74 @@ public class Solver
                           myMaxMutationFactor);
     }
 
+    /**
+     * Compute the targets of a function for all the contexts.
+     *
+     * @param function The function.
+     *
+     * @return The column of targets.
+     */
+    private Column targetColumn(final Function function)
+    {
+        final ContextIterator itr    = new ContextIterator();
+        final Column          column = Column.create(function.getReturnType(),
+                                                     myNumContexts);
+        for (int i=0; itr.next(); i++) {
+            column.set(i, function.call(itr.getValues()));
+        }
+        return column;
+    }
+
+    /**
+     * Split the contexts into batches of the given size, and fill in the
+     * values of the variables for each of them if we hold them.
+     *
+     * @param batchSize The most contexts in a batch.
+     */
+    private void batch(final int batchSize)
+    {
+        myBatchSize  = batchSize;
+        myNumBatches = (myNumContexts + myBatchSize - 1) / myBatchSize;
+        if (myRows == null) {
+            myVariableColumns = new Column[myNumBatches][];
+            for (int i=0; i < myNumBatches; i++) {
+                final int start = i * myBatchSize;
+                myVariableColumns[i] =
+                    variableColumns(start,
+                                    Math.min(myBatchSize, myNumContexts - start));
+            }
+        }
+        else {
+            myVariableColumns = null;
+        }
+    }
+
+    /**
+     * Fill in the values of all the variables for a run of contexts.
+     *
+     * @param start The index of the first context.
+     * @param size  The number of contexts.
+     *
+     * @return The columns of values, one for each variable.
+     */
+    private Column[] variableColumns(final int start, final int size)
+    {
+        final Column[] columns = new Column[myVariables.size()];
+        int stride = 1;
+        for (int i=0; i < columns.length; i++) {
+            final Variable variable = myVariables.get(i);
+            final int      count    = variable.count();
+            columns[i] = Column.create(variable.getIdentifier().getValueType(),
+                                       size);
+            for (int row=0; row < size; row++) {
+                columns[i].set(row,
+                               variable.get(((start + row) / stride) % count));
+            }
+            stride *= count;
+        }
+        return columns;
+    }
+
     /**
      * Generate a gene, method to bind with which will call overridden
      * generateGenome() methods correctly.
@@ -990,54 +2293,130 @@ public class Solver
             return;
         }
 
-        // Use this index to figure out which genome in all the biomes to work
-        // on. We'll spawn a bunch of computer threads to do the work.
-        final AtomicInteger index = new AtomicInteger();
-        final Thread[] computers = new Thread[numWorkers];
-        for (int i=0; i < computers.length; i++) {
-            computers[i] = new Thread(() -> {
-                while (true) {
-                    // Compute the health of the gene at this index. Assume
-                    // we're done until we find out otherwise.
-                    int idx = index.getAndIncrement();
-                    boolean done = true;
-                    for (int j=0; j < myBiomes.size(); j++) {
-                        // See if the index falls in here
-                        final Biome        biome   = myBiomes.get(j);
-                        final List<Genome> genomes = biome.getGenomes();
-                        if (idx >= genomes.size()) {
-                            // Nope, we'll look in the next ome
-                            idx -= genomes.size();
-                        }
-                        else {
-                            // Yes, compute
-                            myHealthComputer.healthOf(genomes.get(idx));
+        // Gather up all the genomes, so that the workers may be handed
+        // runs of them
+        int count = 0;
+        for (Biome biome : myBiomes) {
+            count += biome.getGenomes().size();
+        }
+        final Genome[] genomes = new Genome[count];
+        count = 0;
+        for (Biome biome : myBiomes) {
+            for (Genome genome : biome.getGenomes()) {
+                genomes[count++] = genome;
+            }
+        }
 
-                            // So we're still working...
-                            done = false;
-                        }
-                    }
+        // Enough chunks that there is something to steal, but not so
+        // many that they're all overhead
+        final int chunk = Math.max(1, count / (8 * numWorkers));
+        pool(numWorkers).invoke(new HealthTask(genomes, 0, count, chunk));
+    }
 
-                    // Done?
-                    if (done) {
-                        return;
-                    }
-                }
-            });
+    /**
+     * Get the pool of worker threads. This lives from one step to the
+     * next, unless we're asked for a different number of workers.
+     *
+     * <p>The pool is in async mode, so workers run the tasks which they
+     * fork in the order they were forked, rather than the most recent
+     * first. That's what lets islands take turns.
+     */
+    private ForkJoinPool pool(final int numWorkers)
+    {
+        if (myPool == null || myPool.getParallelism() != numWorkers) {
+            if (myPool != null) {
+                myPool.shutdown();
+            }
+            myPool =
+                new ForkJoinPool(numWorkers,
+                                 ForkJoinPool.defaultForkJoinWorkerThreadFactory,
+                                 null,
+                                 true);
+        }
+        return myPool;
+    }
+
+    /**
+     * Get variables for all the columns of a dataset bar the target.
+     *
+     * @throws IllegalArgumentException If the dataset had no such column.
+     */
+    private static List<Variable> variablesOf(final Dataset dataset,
+                                              final String  target)
+        throws IllegalArgumentException
+    {
+        Objects.requireNonNull(dataset, "Null dataset");
+        if (dataset.indexOf(target) < 0) {
+            throw new IllegalArgumentException(
+                "No column " + target + " in " + dataset
+            );
+        }
 
-            // Spawn it
-            computers[i].start();
+        final List<Variable> variables = new ArrayList<>();
+        for (int i=0; i < dataset.numColumns(); i++) {
+            if (i != dataset.indexOf(target)) {
+                variables.add(new Variable<>(dataset, i));
+            }
         }
+        return variables;
+    }
 
-        // And wait...
-        for (Thread computer : computers) {
-            try {
-                computer.join();
+    /**
+     * Count the contexts over the given variables, which are the rows of
+     * the dataset if we have one, or else every combination of their
+     * values.
+     *
+     * @throws IllegalArgumentException If there were too many.
+     */
+    private static int numContexts(final List<Variable> variables,
+                                   final Dataset        rows)
+        throws IllegalArgumentException
+    {
+        if (rows != null) {
+            for (Variable variable : variables) {
+                if (variable.myDataset != rows) {
+                    throw new IllegalArgumentException(
+                        "Variable " + variable + " is not from " + rows
+                    );
+                }
             }
-            catch (InterruptedException e) {
-                // Not expected
-                throw new RuntimeException(e);
+            return rows.size();
+        }
+
+        try {
+            int count = 1;
+            for (Variable variable : variables) {
+                count = Math.multiplyExact(count, variable.count());
             }
+            return count;
+        }
+        catch (ArithmeticException e) {
+            throw new IllegalArgumentException(
+                "Too many combinations of values of " + variables
+            );
+        }
+    }
+
+    /**
+     * Compute the distance between a target and a value, which is only
+     * defined for {@link String}s; anything else is deemed to be no
+     * distance apart.
+     *
+     * @return The distance, between zero and one.
+     */
+    private static double distance(final Object target, final Object value)
+    {
+        if (target instanceof String && value instanceof String) {
+            return Math.min(
+                1.0,
+                Math.max(
+                    0.0,
+                    StringUtil.distance((String)target, (String)value)
+                )
+            );
+        }
+        else {
+            return 0.0;
         }
     }
 }
@@ -22,6 +22,33 @@ public class Add
         super(Arrays.asList(type, type), type);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Primitive getPrimitive()
+    {
+        return Primitive.of(getArgTypes(), getReturnType());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double applyAsDouble(final double a, final double b)
+    {
+        return a + b;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long applyAsLong(final long a, final long b)
+    {
+        return a + b;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -62,4 +89,37 @@ public class Add
             return null;
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Column safeCall(final Column[] args, final int size)
+    {
+        if (args[0] instanceof Column.Doubles &&
+            args[1] instanceof Column.Doubles)
+        {
+            final Column.Doubles result = new Column.Doubles(size);
+            final double[] a = ((Column.Doubles)args[0]).values();
+            final double[] b = ((Column.Doubles)args[1]).values();
+            final double[] r = result.values();
+            Kernels.add(a, b, r, size);
+            result.setMissing(args);
+            return result;
+        }
+        else if (args[0] instanceof Column.Longs &&
+                 args[1] instanceof Column.Longs)
+        {
+            final Column.Longs result = new Column.Longs(size);
+            final long[] a = ((Column.Longs)args[0]).values();
+            final long[] b = ((Column.Longs)args[1]).values();
+            final long[] r = result.values();
+            Kernels.add(a, b, r, size);
+            result.setMissing(args);
+            return result;
+        }
+        else {
+            return super.safeCall(args, size);
+        }
+    }
 }
@@ -72,6 +72,82 @@ public abstract class BinaryLogic
         myOp = op;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isConditional(final int index)
+    {
+        // The first argument may decide the result of AND and OR
+        return index == 1 && myOp != Op.XOR;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isNeeded(final int      index,
+                            final Column[] args,
+                            final int      size)
+    {
+        // Needed if the first argument doesn't decide every row
+        if (args[0] instanceof Column.Booleans) {
+            final long[] a  = ((Column.Booleans)args[0]).words();
+            final long[] ma = args[0].missingWords();
+            for (int i=0; i < a.length; i++) {
+                if ((~ma[i] & ~decided(a[i])) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (int row=0; row < size; row++) {
+            final Object value0 = args[0].get(row);
+            if (value0 != null && !decides(value0)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Column safeCall(final Column[] args, final int size)
+    {
+        if (!(args[0] instanceof Column.Booleans) ||
+            (args[1] != null && !(args[1] instanceof Column.Booleans)))
+        {
+            return super.safeCall(args, size);
+        }
+
+        // A word of rows at a time. If the second argument was not
+        // needed then it's as if it were missing in every row.
+        final Column.Booleans result = new Column.Booleans(size);
+        final long[] r  = result.words();
+        final long[] m  = result.missingWords();
+        final long[] a  = ((Column.Booleans)args[0]).words();
+        final long[] ma = args[0].missingWords();
+        final long[] b  = (args[1] == null) ? null
+                                            : ((Column.Booleans)args[1]).words();
+        final long[] mb = (args[1] == null) ? null : args[1].missingWords();
+        for (int i=0; i < r.length; i++) {
+            final long bWord    = (b == null) ?  0L : b [i];
+            final long bMissing = (b == null) ? -1L : mb[i];
+            switch (myOp) {
+            case AND: r[i] = a[i] & bWord; break;
+            case OR:  r[i] = a[i] | bWord; break;
+            default:  r[i] = a[i] ^ bWord; break;
+            }
+
+            // Missing if the first is, or if it's not decided by the
+            // first and the second is
+            m[i] = ma[i] | (~decided(a[i]) & bMissing);
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -79,12 +155,18 @@ public abstract class BinaryLogic
     protected Object safeCall(final Object[] args)
     {
         final Object value0 = args[0];
-        final Object value1 = args[1];
-        if (!(value0 instanceof Boolean) || !(value1 instanceof Boolean)) {
+        if (!(value0 instanceof Boolean)) {
             return null;
         }
-
         final boolean bool0 = (Boolean)value0;
+        if (decides(value0)) {
+            return Boolean.valueOf(bool0);
+        }
+
+        final Object value1 = args[1];
+        if (!(value1 instanceof Boolean)) {
+            return null;
+        }
         final boolean bool1 = (Boolean)value1;
 
         switch (myOp) {
@@ -94,4 +176,33 @@ public abstract class BinaryLogic
         default:  return null;
         }
     }
+
+    /**
+     * Whether the given value of the first argument decides the result
+     * by itself: {@code false} for AND and {@code true} for OR.
+     */
+    private boolean decides(final Object value0)
+    {
+        if (!(value0 instanceof Boolean)) {
+            return false;
+        }
+        switch (myOp) {
+        case AND: return !(Boolean)value0;
+        case OR:  return  (Boolean)value0;
+        default:  return false;
+        }
+    }
+
+    /**
+     * Which of a word of values of the first argument decide the result
+     * by themselves, as per {@link #decides(Object)}.
+     */
+    private long decided(final long word)
+    {
+        switch (myOp) {
+        case AND: return ~word;
+        case OR:  return  word;
+        default:  return  0L;
+        }
+    }
 }
@@ -0,0 +1,559 @@
+package genecode.function;
+
+import java.lang.reflect.Array;
+
+import java.util.Arrays;
+
+/**
+ * A column of values, one for each of a batch of contexts.
+ *
+ * <p>Columns are how {@link Function}s are evaluated over many
+ * contexts in one go, via {@link Function#call(Column[],int)}. Numeric
+ * values are held in primitive arrays so that they may be computed
+ * without boxing, and booleans are packed into bits so that they may
+ * be computed a word of rows at a time; everything else is held as
+ * objects.
+ *
+ * <p>Any row may be "missing", which is the column equivalent of a
+ * function yielding {@code null}. The underlying arrays are exposed so
+ * that functions may operate on them directly; however, a column which
+ * is passed to a function as an argument must never be modified by it.
+ */
+public abstract class Column
+{
+    /**
+     * A column of {@code Double} values.
+     */
+    public static final class Doubles
+        extends Column
+    {
+        /**
+         * The values.
+         */
+        private final double[] myValues;
+
+        /**
+         * CTOR.
+         *
+         * @param size The number of rows.
+         */
+        public Doubles(final int size)
+        {
+            super(Double.class, size);
+            myValues = new double[size];
+        }
+
+        /**
+         * The values of this column. Missing rows have undefined values.
+         *
+         * @return The underlying array of values.
+         */
+        public double[] values()
+        {
+            return myValues;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object get(final int row)
+        {
+            return isMissing(row) ? null : Double.valueOf(myValues[row]);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public double getDouble(final int row)
+        {
+            return myValues[row];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean safeSet(final int row, final Object value)
+        {
+            if (value instanceof Double) {
+                myValues[row] = (Double)value;
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A column of {@code Long} values.
+     */
+    public static final class Longs
+        extends Column
+    {
+        /**
+         * The values.
+         */
+        private final long[] myValues;
+
+        /**
+         * CTOR.
+         *
+         * @param size The number of rows.
+         */
+        public Longs(final int size)
+        {
+            super(Long.class, size);
+            myValues = new long[size];
+        }
+
+        /**
+         * The values of this column. Missing rows have undefined values.
+         *
+         * @return The underlying array of values.
+         */
+        public long[] values()
+        {
+            return myValues;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object get(final int row)
+        {
+            return isMissing(row) ? null : Long.valueOf(myValues[row]);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public double getDouble(final int row)
+        {
+            return myValues[row];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean safeSet(final int row, final Object value)
+        {
+            if (value instanceof Long) {
+                myValues[row] = (Long)value;
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A column of {@code Boolean} values, packed 64 rows to a word so
+     * that logic may be done on a whole word of rows at a time. Row
+     * {@code r} is bit {@code r % 64} of word {@code r / 64}.
+     */
+    public static final class Booleans
+        extends Column
+    {
+        /**
+         * The values, as bits.
+         */
+        private final long[] myWords;
+
+        /**
+         * CTOR.
+         *
+         * @param size The number of rows.
+         */
+        public Booleans(final int size)
+        {
+            super(Boolean.class, size);
+            myWords = new long[words(size)];
+        }
+
+        /**
+         * The values of this column, as bits. Missing rows, and the bits
+         * past the last row, have undefined values.
+         *
+         * @return The underlying array of words.
+         */
+        public long[] words()
+        {
+            return myWords;
+        }
+
+        /**
+         * Get the value for a given row, which must not be missing.
+         *
+         * @param row The row to get.
+         *
+         * @return The value.
+         */
+        public boolean getBoolean(final int row)
+        {
+            return (myWords[row >>> 6] & (1L << row)) != 0;
+        }
+
+        /**
+         * Set the value for a given row, leaving whether it is missing
+         * alone.
+         *
+         * @param row   The row to set.
+         * @param value The value to set.
+         */
+        public void setBoolean(final int row, final boolean value)
+        {
+            if (value) {
+                myWords[row >>> 6] |=  (1L << row);
+            }
+            else {
+                myWords[row >>> 6] &= ~(1L << row);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object get(final int row)
+        {
+            return isMissing(row) ? null : Boolean.valueOf(getBoolean(row));
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean safeSet(final int row, final Object value)
+        {
+            if (value instanceof Boolean) {
+                setBoolean(row, (Boolean)value);
+                return true;
+            }
+            else {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * A column of arbitrary objects.
+     */
+    public static final class Objects
+        extends Column
+    {
+        /**
+         * The values.
+         */
+        private final Object[] myValues;
+
+        /**
+         * CTOR.
+         *
+         * @param type The type of the values in the column.
+         * @param size The number of rows.
+         */
+        public Objects(final Class<?> type, final int size)
+        {
+            super(type, size);
+            myValues = new Object[size];
+        }
+
+        /**
+         * The values of this column. Missing rows have undefined values.
+         *
+         * @return The underlying array of values.
+         */
+        public Object[] values()
+        {
+            return myValues;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public Object get(final int row)
+        {
+            return isMissing(row) ? null : myValues[row];
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        protected boolean safeSet(final int row, final Object value)
+        {
+            myValues[row] = value;
+            return true;
+        }
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * The number of 64-bit words needed to hold a bit for each of the
+     * given number of rows.
+     *
+     * @param size The number of rows.
+     *
+     * @return The number of words.
+     */
+    public static int words(final int size)
+    {
+        return (size + 63) >>> 6;
+    }
+
+    /**
+     * Create a column suitable for holding values of the given type.
+     * All rows will be present, with default values, to start with.
+     *
+     * @param type The type of the values.
+     * @param size The number of rows.
+     *
+     * @return The new column.
+     */
+    public static Column create(final Class<?> type, final int size)
+    {
+        if (Double.class.equals(type)) {
+            return new Doubles(size);
+        }
+        else if (Long.class.equals(type)) {
+            return new Longs(size);
+        }
+        else if (Boolean.class.equals(type)) {
+            return new Booleans(size);
+        }
+        else {
+            return new Objects(type, size);
+        }
+    }
+
+    /**
+     * Create a column with the same value in every row.
+     *
+     * @param type  The type of the value.
+     * @param value The value, or {@code null} if it is missing.
+     * @param size  The number of rows.
+     *
+     * @return The new column.
+     */
+    public static Column constant(final Class<?> type,
+                                  final Object   value,
+                                  final int      size)
+    {
+        final Column column = create(type, size);
+        if (value == null) {
+            Arrays.fill(column.myMissing, -1L);
+        }
+        else if (column instanceof Doubles && value instanceof Double) {
+            Arrays.fill(((Doubles)column).myValues, (Double)value);
+        }
+        else if (column instanceof Longs && value instanceof Long) {
+            Arrays.fill(((Longs)column).myValues, (Long)value);
+        }
+        else if (column instanceof Booleans && value instanceof Boolean) {
+            Arrays.fill(((Booleans)column).myWords, ((Boolean)value) ? -1L : 0L);
+        }
+        else {
+            for (int row=0; row < size; row++) {
+                column.set(row, value);
+            }
+        }
+        return column;
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * The type of the values.
+     */
+    private final Class<?> myType;
+
+    /**
+     * The number of rows.
+     */
+    private final int mySize;
+
+    /**
+     * Which rows are missing, as bits. The bits past the last row are
+     * always set.
+     */
+    private final long[] myMissing;
+
+    /**
+     * CTOR.
+     *
+     * @param type The type of the values in the column.
+     * @param size The number of rows.
+     */
+    protected Column(final Class<?> type, final int size)
+    {
+        myType    = type;
+        mySize    = size;
+        myMissing = new long[words(size)];
+        if ((size & 63) != 0) {
+            myMissing[myMissing.length - 1] = (-1L << size);
+        }
+    }
+
+    /**
+     * The type of the values in this column.
+     *
+     * @return The value type.
+     */
+    public Class<?> getType()
+    {
+        return myType;
+    }
+
+    /**
+     * The number of rows in this column.
+     *
+     * @return The number of rows.
+     */
+    public int size()
+    {
+        return mySize;
+    }
+
+    /**
+     * Whether the given row is missing.
+     *
+     * @param row The row to look at.
+     *
+     * @return Whether it is missing.
+     */
+    public boolean isMissing(final int row)
+    {
+        return (myMissing[row >>> 6] & (1L << row)) != 0;
+    }
+
+    /**
+     * Set whether the given row is missing, leaving its value as it is.
+     *
+     * @param row     The row to set.
+     * @param missing Whether it is missing.
+     */
+    public void setMissing(final int row, final boolean missing)
+    {
+        if (missing) {
+            myMissing[row >>> 6] |=  (1L << row);
+        }
+        else {
+            myMissing[row >>> 6] &= ~(1L << row);
+        }
+    }
+
+    /**
+     * Mark a row of this column as missing wherever it is missing in
+     * any of the given columns. This is what functions which work
+     * directly on the underlying arrays of their arguments typically
+     * need to do with their result.
+     *
+     * @param columns The columns to look at.
+     */
+    public void setMissing(final Column[] columns)
+    {
+        for (Column column : columns) {
+            final long[] missing = column.myMissing;
+            for (int i=0; i < myMissing.length; i++) {
+                myMissing[i] |= missing[i];
+            }
+        }
+    }
+
+    /**
+     * Which rows of this column are missing, packed into bits in the
+     * same way as the values of {@link Booleans}. The bits past the last
+     * row are set, as if those rows were missing too, so that a word of
+     * present rows is simply the complement of a word of this.
+     *
+     * @return The underlying array of words.
+     */
+    public long[] missingWords()
+    {
+        return myMissing;
+    }
+
+    /**
+     * Get the value for a given row, as an object.
+     *
+     * @param row The row to get.
+     *
+     * @return The value, or {@code null} if it was missing.
+     */
+    public abstract Object get(final int row);
+
+    /**
+     * Get the value for a given row as a {@code double}. This is only
+     * valid for rows which are not missing in columns of {@link Number}s.
+     *
+     * @param row The row to get.
+     *
+     * @return The value.
+     *
+     * @throws ClassCastException If the column does not hold numbers.
+     */
+    public double getDouble(final int row)
+        throws ClassCastException
+    {
+        return ((Number)get(row)).doubleValue();
+    }
+
+    /**
+     * Set the value for a given row. Values which are {@code null}, or
+     * which the column can't hold, will be marked as missing.
+     *
+     * @param row   The row to set.
+     * @param value The value to set.
+     */
+    public void set(final int row, final Object value)
+    {
+        setMissing(row, value == null || !safeSet(row, value));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public String toString()
+    {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(myType.getSimpleName()).append('[');
+        for (int row=0; row < size(); row++) {
+            if (row > 0) {
+                sb.append(", ");
+            }
+            final Object value = get(row);
+            if (value != null && value.getClass().isArray()) {
+                final Object[] array = new Object[Array.getLength(value)];
+                for (int i=0; i < array.length; i++) {
+                    array[i] = Array.get(value, i);
+                }
+                sb.append(Arrays.deepToString(array));
+            }
+            else {
+                sb.append(value);
+            }
+        }
+        sb.append(']');
+        return sb.toString();
+    }
+
+    /**
+     * Set a non-{@code null} value for a given row.
+     *
+     * @param row   The row to set.
+     * @param value The value to set.
+     *
+     * @return Whether the value could be held by the column.
+     */
+    protected abstract boolean safeSet(final int row, final Object value);
+}
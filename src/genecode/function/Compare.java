@@ -122,6 +122,34 @@ public abstract class Compare
         myOp = op;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Primitive getPrimitive()
+    {
+        return Primitive.of(getArgTypes(), getReturnType());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean test(final double a, final double b)
+    {
+        // The same ordering as Double.compareTo()
+        return matches(Double.compare(a, b));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean test(final long a, final long b)
+    {
+        return matches(Long.compare(a, b));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -140,14 +168,21 @@ public abstract class Compare
 
         final Comparable comparable0 = (Comparable)value0;
         final Comparable comparable1 = (Comparable)value1;
-        final int cmp = comparable0.compareTo(comparable1);
+        return Boolean.valueOf(matches(comparable0.compareTo(comparable1)));
+    }
+
+    /**
+     * Whether the result of a comparison satisfies our operation.
+     */
+    private boolean matches(final int cmp)
+    {
         switch (myOp) {
-        case lt:  return Boolean.valueOf(cmp <  0);
-        case lte: return Boolean.valueOf(cmp <= 0);
-        case eq:  return Boolean.valueOf(cmp == 0);
-        case gte: return Boolean.valueOf(cmp >= 0);
-        case gt:  return Boolean.valueOf(cmp >  0);
-        default:  return null;
+        case lt:  return (cmp <  0);
+        case lte: return (cmp <= 0);
+        case eq:  return (cmp == 0);
+        case gte: return (cmp >= 0);
+        case gt:  return (cmp >  0);
+        default:  throw new IllegalStateException("Unknown op: " + myOp);
         }
     }
 }
@@ -1,5 +1,7 @@
 package genecode.function;
 
+import genecode.Budget;
+
 import java.lang.reflect.Array;
 
 import java.util.Arrays;
@@ -58,6 +60,7 @@ public class Concat
         }
 
         // Create the new one and copy in the contents for each array
+        Budget.allocate((long)length0 + length1);
         final Object result =
             Array.newInstance(array0.getClass().getComponentType(),
                               length0 + length1);
@@ -24,6 +24,42 @@ public class Div
         super(Arrays.asList(type, type), type);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Primitive getPrimitive()
+    {
+        return Primitive.of(getArgTypes(), getReturnType());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double applyAsDouble(final double a, final double b)
+    {
+        return a / b;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long applyAsLong(final long a, final long b)
+    {
+        return (b == 0) ? 0 : a / b;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isDefined(final long a, final long b)
+    {
+        return (b != 0);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -50,8 +86,11 @@ public class Div
                                        ((Number)value1).intValue());
             }
             else if (getReturnType().equals(Long.class)) {
-                return Long.valueOf(((Number)value0).longValue() /
-                                    ((Number)value1).longValue());
+                // Check for dividing by zero, rather than paying to throw
+                final long divisor = ((Number)value1).longValue();
+                return (divisor == 0)
+                    ? null
+                    : Long.valueOf(((Number)value0).longValue() / divisor);
             }
             else if (getReturnType().equals(Float.class)) {
                 return Float.valueOf(((Number)value0).floatValue() /
@@ -70,4 +109,51 @@ public class Div
             return null;
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Column safeCall(final Column[] args, final int size)
+    {
+        if (args[0] instanceof Column.Doubles &&
+            args[1] instanceof Column.Doubles)
+        {
+            final Column.Doubles result = new Column.Doubles(size);
+            final double[] a = ((Column.Doubles)args[0]).values();
+            final double[] b = ((Column.Doubles)args[1]).values();
+            final double[] r = result.values();
+            Kernels.div(a, b, r, size);
+            result.setMissing(args);
+            return result;
+        }
+        else if (args[0] instanceof Column.Longs &&
+                 args[1] instanceof Column.Longs)
+        {
+            final Column.Longs result = new Column.Longs(size);
+            final long[] a = ((Column.Longs)args[0]).values();
+            final long[] b = ((Column.Longs)args[1]).values();
+            final long[] r = result.values();
+            long failures = 0;
+            for (int i=0; i < size; i++) {
+                if (b[i] == 0) {
+                    // Divide by zero, which is only our failure if we
+                    // were given the arguments
+                    result.setMissing(i, true);
+                    if (!args[0].isMissing(i) && !args[1].isMissing(i)) {
+                        failures++;
+                    }
+                }
+                else {
+                    r[i] = a[i] / b[i];
+                }
+            }
+            countFailures(failures);
+            result.setMissing(args);
+            return result;
+        }
+        else {
+            return super.safeCall(args, size);
+        }
+    }
 }
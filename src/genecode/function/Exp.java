@@ -27,6 +27,24 @@ public class Exp
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Primitive getPrimitive()
+    {
+        return Primitive.of(getArgTypes(), getReturnType());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double applyAsDouble(final double a)
+    {
+        return Math.exp(a);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -48,4 +66,23 @@ public class Exp
             return null;
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Column safeCall(final Column[] args, final int size)
+    {
+        if (args[0] instanceof Column.Doubles) {
+            final Column.Doubles result = new Column.Doubles(size);
+            final double[] a = ((Column.Doubles)args[0]).values();
+            final double[] r = result.values();
+            Kernels.exp(a, r, size);
+            result.setMissing(args);
+            return result;
+        }
+        else {
+            return super.safeCall(args, size);
+        }
+    }
 }
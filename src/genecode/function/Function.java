@@ -1,11 +1,13 @@
 package genecode.function;
 
+import genecode.Budget;
+
 import java.io.Serializable;
 
 import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -13,7 +15,8 @@ import java.util.logging.Logger;
  * A function. It takes an arbitrary number of inputs and yields an
  * output.
  *
- * <p>Generally speaking, all implementations should be stateless.
+ * <p>All implementations must be stateless, since instances are
+ * shared between genes and called from many threads at once.
  */
 public abstract class Function
     implements Cloneable,
@@ -26,6 +29,109 @@ public abstract class Function
 
     // ----------------------------------------------------------------------
 
+    /**
+     * The primitive calling conventions which a function may support,
+     * according to its argument and return types. A function which
+     * supports one may be called with unboxed values, via the method of
+     * the same name as the corresponding {@code java.util.function}
+     * interface, without any allocation.
+     */
+    public static enum Primitive
+    {
+        /**
+         * {@code (double) -> double}, via {@link #applyAsDouble(double)}.
+         */
+        DOUBLE_UNARY,
+
+        /**
+         * {@code (long) -> long}, via {@link #applyAsLong(long)}.
+         */
+        LONG_UNARY,
+
+        /**
+         * {@code (double) -> long}, via {@link #applyAsLong(double)}.
+         */
+        DOUBLE_TO_LONG,
+
+        /**
+         * {@code (long) -> double}, via {@link #applyAsDouble(long)}.
+         */
+        LONG_TO_DOUBLE,
+
+        /**
+         * {@code (double, double) -> double}, via {@link
+         * #applyAsDouble(double,double)}.
+         */
+        DOUBLE_BINARY,
+
+        /**
+         * {@code (long, long) -> long}, via {@link
+         * #applyAsLong(long,long)}, where {@link #isDefined(long,long)}.
+         */
+        LONG_BINARY,
+
+        /**
+         * {@code (double, double) -> boolean}, via {@link
+         * #test(double,double)}.
+         */
+        DOUBLE_PREDICATE,
+
+        /**
+         * {@code (long, long) -> boolean}, via {@link #test(long,long)}.
+         */
+        LONG_PREDICATE;
+
+        /**
+         * Get the calling convention for the given types.
+         *
+         * @param argTypes   The argument types.
+         * @param returnType The return type.
+         *
+         * @return The calling convention, or {@code null} if there isn't
+         *         a primitive one.
+         */
+        public static Primitive of(final List<Class<?>> argTypes,
+                                   final Class<?>       returnType)
+        {
+            if (argTypes.size() == 1) {
+                final Class<?> arg = argTypes.get(0);
+                if (Double.class.equals(arg)) {
+                    return Double .class.equals(returnType) ? DOUBLE_UNARY   :
+                           Long   .class.equals(returnType) ? DOUBLE_TO_LONG :
+                                                              null;
+                }
+                else if (Long.class.equals(arg)) {
+                    return Long   .class.equals(returnType) ? LONG_UNARY     :
+                           Double .class.equals(returnType) ? LONG_TO_DOUBLE :
+                                                              null;
+                }
+            }
+            else if (argTypes.size() == 2 &&
+                     argTypes.get(0).equals(argTypes.get(1)))
+            {
+                final Class<?> arg = argTypes.get(0);
+                if (Double.class.equals(arg)) {
+                    return Double .class.equals(returnType) ? DOUBLE_BINARY    :
+                           Boolean.class.equals(returnType) ? DOUBLE_PREDICATE :
+                                                              null;
+                }
+                else if (Long.class.equals(arg)) {
+                    return Long   .class.equals(returnType) ? LONG_BINARY    :
+                           Boolean.class.equals(returnType) ? LONG_PREDICATE :
+                                                              null;
+                }
+            }
+            return null;
+        }
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * How many times functions have failed.
+     */
+    private static final LongAdder ourFailures = new LongAdder();
+
     /**
      * Our argument types.
      */
@@ -89,54 +195,382 @@ public abstract class Function
     }
 
     /**
-     * Evaluate the function.
+     * Whether the given argument is conditional. A conditional argument
+     * is one which the function only needs for some values of its other
+     * arguments, like the branches of an if-else, and so which need not
+     * be evaluated up front. A conditional argument which is {@code null}
+     * only makes the function yield {@code null} when it is needed.
+     *
+     * <p>Evaluators may still evaluate conditional arguments which turn
+     * out not to be needed, so this only ever saves work; the function's
+     * result is the same either way.
+     *
+     * @param index The index of the argument.
+     *
+     * @return Whether it is conditional.
+     */
+    public boolean isConditional(final int index)
+    {
+        return false;
+    }
+
+    /**
+     * Whether any of this function's arguments are conditional.
+     *
+     * @return Whether there are any.
+     */
+    public final boolean hasConditionalArgs()
+    {
+        for (int i=0; i < myArgTypes.size(); i++) {
+            if (isConditional(i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the given conditional argument is needed by any of a batch
+     * of rows, according to the columns of the function's unconditional
+     * arguments. Conditional arguments which are not needed may be given
+     * to {@link #call(Column[],int)} as {@code null} columns.
+     *
+     * @param index The index of the conditional argument.
+     * @param args  The columns of arguments, where the unconditional
+     *              ones are always present.
+     * @param size  The number of rows.
+     *
+     * @return Whether the argument is needed for any row.
+     */
+    public boolean isNeeded(final int      index,
+                            final Column[] args,
+                            final int      size)
+    {
+        return true;
+    }
+
+    /**
+     * Evaluate the function, checking that the arguments are of the
+     * right number and types first.
      *
      * @param args The array of arguments.
      *
      * @return {@code null} if the function could not be evaluated.
      *
-     * @throws IllegalArgumentException If an error occurred during evaluation.
+     * @throws IllegalArgumentException If the wrong number, or type, of
+     *                                  arguments were given.
      */
     public final Object call(final Object... args)
+        throws IllegalArgumentException
     {
-        if (args == null && !myArgTypes.isEmpty()) {
-            throw new IllegalArgumentException(
-                "Null arg list passed in"
-            );
+        return checkArgs(args) ? tryCall(args) : null;
+    }
+
+    /**
+     * Evaluate the function at a call site which is already known to
+     * give it the right number, and types, of arguments; e.g. that of a
+     * bound {@link genecode.gene.FunctionGene}. No checks are done on
+     * the arguments here, bar looking for {@code null} ones, and so the
+     * results of calling this with the wrong ones are undefined.
+     *
+     * <p>This never throws; if the function fails then the result is
+     * simply {@code null}, and the failure is counted (see {@link
+     * #getFailures()}).
+     *
+     * @param args The array of arguments.
+     *
+     * @return {@code null} if the function could not be evaluated.
+     */
+    public final Object invoke(final Object[] args)
+    {
+        for (int i=0; i < args.length; i++) {
+            if (args[i] == null && !isConditional(i)) {
+                return null;
+            }
         }
-        else if (args.length != myArgTypes.size()) {
+        return tryCall(args);
+    }
+
+    /**
+     * The number of times which functions have failed to compute a
+     * value for the arguments which they were given, over all of them,
+     * since the JVM started.
+     *
+     * @return The number of failures.
+     */
+    public static long getFailures()
+    {
+        return ourFailures.sum();
+    }
+
+    /**
+     * Count failures of functions to compute a value which did not come
+     * from calling them with boxed arguments, such as over a column at a
+     * time.
+     *
+     * @param count The number of failures.
+     */
+    protected static void countFailures(final long count)
+    {
+        if (count > 0) {
+            ourFailures.add(count);
+        }
+    }
+
+    /**
+     * Evaluate the function over a batch of rows at once. Each argument
+     * is given as a column of values, one per row, and the result is a
+     * column of the same size. A row of the result is missing if any of
+     * the arguments were missing in that row, or if the function could
+     * not be evaluated for it. The argument columns are never modified.
+     *
+     * <p>The columns of conditional arguments may be {@code null} if no
+     * row needs them, as per {@link #isNeeded(int,Column[],int)}; they
+     * are then treated as being missing in every row.
+     *
+     * @param args The columns of arguments.
+     * @param size The number of rows.
+     *
+     * @return The column of results.
+     *
+     * @throws IllegalArgumentException If the wrong number, or type, of
+     *                                  arguments were given.
+     */
+    public final Column call(final Column[] args, final int size)
+        throws IllegalArgumentException
+    {
+        if (args == null || args.length != myArgTypes.size()) {
             throw new IllegalArgumentException(
                 "Wrong number of arguments used, " +
                 "expected " + myArgTypes.size() + " " +
-                "but had " + args.length + " for " + this
+                "but had " + (args == null ? "null" : args.length) + " " +
+                "for " + this
             );
         }
         for (int i=0; i < args.length; i++) {
-            final Object arg = args[i];
-            if (arg == null) {
-                return null;
+            // Columns of a supertype might still hold the right values,
+            // which will be checked row by row
+            if (args[i] == null && isConditional(i)) {
+                continue;
             }
-            if (!myArgTypes.get(i).isAssignableFrom(arg.getClass())) {
+            final Class<?> argType = myArgTypes.get(i);
+            final Class<?> type    = args[i].getType();
+            if (!argType.isAssignableFrom(type) &&
+                !type.isAssignableFrom(argType))
+            {
                 throw new IllegalArgumentException(
                     "Bad argument #" + i + ", " +
-                    "expected a " + myArgTypes.get(i) + " " +
-                    "but had a " + arg.getClass() + " for " + this
+                    "expected a " + argType + " " +
+                    "but had a column of " + type + " for " + this
                 );
             }
         }
+        return safeCall(args, size);
+    }
 
-        // Okay to call now
-        try {
-            return safeCall(args);
+    /**
+     * Get the primitive calling convention which this function supports,
+     * if any. Functions which support one must implement the associated
+     * method so that it computes the same value as {@link #call(Object...)}
+     * would, for all values where {@link #call(Object...)} would not yield
+     * {@code null}.
+     *
+     * @return The calling convention, or {@code null} if this function
+     *         must be called with objects.
+     */
+    public Primitive getPrimitive()
+    {
+        return null;
+    }
+
+    /**
+     * Call the function with a primitive value, as per the {@link
+     * Primitive#DOUBLE_UNARY} calling convention.
+     *
+     * @param a The argument.
+     *
+     * @return The result.
+     *
+     * @throws UnsupportedOperationException If the function does not
+     *                                       support this convention.
+     */
+    public double applyAsDouble(final double a)
+        throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(describe());
+    }
+
+    /**
+     * Call the function with a primitive value, as per the {@link
+     * Primitive#LONG_UNARY} calling convention.
+     *
+     * @param a The argument.
+     *
+     * @return The result.
+     *
+     * @throws UnsupportedOperationException If the function does not
+     *                                       support this convention.
+     */
+    public long applyAsLong(final long a)
+        throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(describe());
+    }
+
+    /**
+     * Call the function with a primitive value, as per the {@link
+     * Primitive#DOUBLE_TO_LONG} calling convention.
+     *
+     * @param a The argument.
+     *
+     * @return The result.
+     *
+     * @throws UnsupportedOperationException If the function does not
+     *                                       support this convention.
+     */
+    public long applyAsLong(final double a)
+        throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(describe());
+    }
+
+    /**
+     * Call the function with a primitive value, as per the {@link
+     * Primitive#LONG_TO_DOUBLE} calling convention.
+     *
+     * @param a The argument.
+     *
+     * @return The result.
+     *
+     * @throws UnsupportedOperationException If the function does not
+     *                                       support this convention.
+     */
+    public double applyAsDouble(final long a)
+        throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(describe());
+    }
+
+    /**
+     * Call the function with primitive values, as per the {@link
+     * Primitive#DOUBLE_BINARY} calling convention.
+     *
+     * @param a The first argument.
+     * @param b The second argument.
+     *
+     * @return The result.
+     *
+     * @throws UnsupportedOperationException If the function does not
+     *                                       support this convention.
+     */
+    public double applyAsDouble(final double a, final double b)
+        throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(describe());
+    }
+
+    /**
+     * Call the function with primitive values, as per the {@link
+     * Primitive#LONG_BINARY} calling convention. This must not throw
+     * for any values, even those where the function is not {@link
+     * #isDefined(long,long) defined}.
+     *
+     * @param a The first argument.
+     * @param b The second argument.
+     *
+     * @return The result.
+     *
+     * @throws UnsupportedOperationException If the function does not
+     *                                       support this convention.
+     */
+    public long applyAsLong(final long a, final long b)
+        throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(describe());
+    }
+
+    /**
+     * Whether the function has a value for the given arguments, under
+     * the {@link Primitive#LONG_BINARY} calling convention. This is
+     * where, say, dividing by zero would yield {@code null}.
+     *
+     * @param a The first argument.
+     * @param b The second argument.
+     *
+     * @return Whether {@link #applyAsLong(long,long)} gives a value.
+     */
+    public boolean isDefined(final long a, final long b)
+    {
+        return true;
+    }
+
+    /**
+     * Whether the function has a value for the given arguments, as with
+     * {@link #isDefined(long,long)}, counting it as a failure if it does
+     * not. Evaluators of the {@link Primitive#LONG_BINARY} calling
+     * convention use this so that their failures are counted like any
+     * others. Arguments which were missing are not the function's
+     * failure, but it has no value for them.
+     *
+     * @param a       The first argument.
+     * @param b       The second argument.
+     * @param present Whether both arguments were present.
+     *
+     * @return Whether the arguments were present and
+     *         {@link #applyAsLong(long,long)} gives a value for them.
+     */
+    public final boolean checkDefined(final long    a,
+                                      final long    b,
+                                      final boolean present)
+    {
+        if (!present) {
+            return false;
         }
-        catch (Throwable t) {
-            throw new IllegalArgumentException(
-                "Failed to call " + this + "(" + Arrays.toString(args) + ")",
-                t
-            );
+        else if (isDefined(a, b)) {
+            return true;
+        }
+        else {
+            ourFailures.increment();
+            return false;
         }
     }
 
+    /**
+     * Call the function with primitive values, as per the {@link
+     * Primitive#DOUBLE_PREDICATE} calling convention.
+     *
+     * @param a The first argument.
+     * @param b The second argument.
+     *
+     * @return The result.
+     *
+     * @throws UnsupportedOperationException If the function does not
+     *                                       support this convention.
+     */
+    public boolean test(final double a, final double b)
+        throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(describe());
+    }
+
+    /**
+     * Call the function with primitive values, as per the {@link
+     * Primitive#LONG_PREDICATE} calling convention.
+     *
+     * @param a The first argument.
+     * @param b The second argument.
+     *
+     * @return The result.
+     *
+     * @throws UnsupportedOperationException If the function does not
+     *                                       support this convention.
+     */
+    public boolean test(final long a, final long b)
+        throws UnsupportedOperationException
+    {
+        throw new UnsupportedOperationException(describe());
+    }
+
     /**
      * A detailed version of the function.
      *
@@ -192,6 +626,16 @@ public abstract class Function
         return true;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return (getClass().hashCode() * 31 + myArgTypes.hashCode()) * 31 +
+               myReturnType.hashCode();
+    }
+
     /**
      * Create a duplicate of this instance.
      *
@@ -208,7 +652,11 @@ public abstract class Function
     }
 
     /**
-     * Actually call the function in a safe context.
+     * Actually call the function in a safe context. The arguments are
+     * of the right number and types. Routine failures, like dividing by
+     * zero or indexing out of bounds, should be reported by giving back
+     * {@code null} rather than by throwing, since they are common in
+     * evolved code and throwing is comparatively expensive.
      *
      * @param args The arguments to the function.
      *
@@ -216,4 +664,229 @@ public abstract class Function
      *         if it failed to compute for some reason.
      */
     protected abstract Object safeCall(final Object[] args);
+
+    /**
+     * Actually call the function over a batch of rows. By default this
+     * calls the function for each row in turn; subclasses may override
+     * it to work directly on the underlying arrays of the columns, when
+     * they know what they are.
+     *
+     * @param args The columns of arguments, of the right number.
+     * @param size The number of rows.
+     *
+     * @return The column of results.
+     */
+    protected Column safeCall(final Column[] args, final int size)
+    {
+        // Avoid boxing if we can
+        final Column primitive = primitiveCall(args, size);
+        if (primitive != null) {
+            return primitive;
+        }
+
+        // Columns of a supertype need their values checking row by row
+        final boolean  checked = isChecked(args);
+        final Column   result  = Column.create(myReturnType, size);
+        final Object[] values  = new Object[args.length];
+        for (int row=0; row < size; row++) {
+            boolean missing = false;
+            for (int i=0; i < args.length && !missing; i++) {
+                values[i] = (args[i] == null) ? null : args[i].get(row);
+                missing = (values[i] == null)
+                    ? !isConditional(i)
+                    : !checked && !myArgTypes.get(i).isInstance(values[i]);
+            }
+            result.set(row, missing ? null : tryCall(values));
+        }
+        return result;
+    }
+
+    /**
+     * Call the function with arguments which have been checked, turning
+     * any failure into a {@code null} result and counting it.
+     *
+     * @param args The arguments.
+     *
+     * @return The result, or {@code null} if it failed.
+     */
+    private Object tryCall(final Object[] args)
+    {
+        try {
+            final Object result = safeCall(args);
+            if (result == null) {
+                ourFailures.increment();
+            }
+            return result;
+        }
+        catch (Budget.ExceededException e) {
+            // Not the function's fault, let the evaluator handle it
+            throw e;
+        }
+        catch (Throwable t) {
+            // Functions should give back null rather than throw, but
+            // this is no worse a failure for that
+            ourFailures.increment();
+            if (LOG.isLoggable(Level.FINE)) {
+                LOG.log(Level.FINE, "Failed to call " + this, t);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Whether the values in the given columns are all of our argument
+     * types.
+     */
+    private boolean isChecked(final Column[] args)
+    {
+        for (int i=0; i < args.length; i++) {
+            if (args[i] != null &&
+                !myArgTypes.get(i).isAssignableFrom(args[i].getType()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Ensure that we have been given the right arguments.
+     *
+     * @return Whether the function may be called with them, which it
+     *         may not if any unconditional argument was {@code null}.
+     */
+    private boolean checkArgs(final Object[] args)
+        throws IllegalArgumentException
+    {
+        if (args == null && !myArgTypes.isEmpty()) {
+            throw new IllegalArgumentException(
+                "Null arg list passed in"
+            );
+        }
+        else if (args.length != myArgTypes.size()) {
+            throw new IllegalArgumentException(
+                "Wrong number of arguments used, " +
+                "expected " + myArgTypes.size() + " " +
+                "but had " + args.length + " for " + this
+            );
+        }
+        for (int i=0; i < args.length; i++) {
+            final Object arg = args[i];
+            if (arg == null) {
+                if (isConditional(i)) {
+                    continue;
+                }
+                return false;
+            }
+            if (!myArgTypes.get(i).isAssignableFrom(arg.getClass())) {
+                throw new IllegalArgumentException(
+                    "Bad argument #" + i + ", " +
+                    "expected a " + myArgTypes.get(i) + " " +
+                    "but had a " + arg.getClass() + " for " + this
+                );
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Call the function over a batch of rows using its primitive calling
+     * convention, if it has one and the columns are of primitive values.
+     *
+     * @param args The columns of arguments, of the right number.
+     * @param size The number of rows.
+     *
+     * @return The column of results, or {@code null} if the primitive
+     *         calling convention could not be used.
+     */
+    private Column primitiveCall(final Column[] args, final int size)
+    {
+        final Primitive primitive = getPrimitive();
+        if (primitive == null) {
+            return null;
+        }
+
+        // Figure out which sort of columns we have
+        boolean doubles = true;
+        boolean longs   = true;
+        for (Column arg : args) {
+            doubles &= (arg instanceof Column.Doubles);
+            longs   &= (arg instanceof Column.Longs);
+        }
+
+        final Column result = Column.create(myReturnType, size);
+        final long[] bits   = (result instanceof Column.Booleans)
+            ? ((Column.Booleans)result).words()
+            : null;
+        switch (primitive) {
+        case DOUBLE_UNARY:
+        case DOUBLE_TO_LONG:
+        case DOUBLE_BINARY:
+        case DOUBLE_PREDICATE: {
+            if (!doubles) {
+                return null;
+            }
+            final double[] a = ((Column.Doubles)args[0]).values();
+            final double[] b = (args.length > 1) ? ((Column.Doubles)args[1]).values()
+                                                 : null;
+            for (int i=0; i < size; i++) {
+                switch (primitive) {
+                case DOUBLE_UNARY:
+                    ((Column.Doubles)result).values()[i] = applyAsDouble(a[i]);
+                    break;
+                case DOUBLE_TO_LONG:
+                    ((Column.Longs)result).values()[i] = applyAsLong(a[i]);
+                    break;
+                case DOUBLE_BINARY:
+                    ((Column.Doubles)result).values()[i] = applyAsDouble(a[i], b[i]);
+                    break;
+                default:
+                    // The result starts all false so we need only OR
+                    bits[i >>> 6] |= (test(a[i], b[i]) ? 1L : 0L) << i;
+                    break;
+                }
+            }
+            break;
+        }
+
+        default: {
+            if (!longs) {
+                return null;
+            }
+            final long[] a = ((Column.Longs)args[0]).values();
+            final long[] b = (args.length > 1) ? ((Column.Longs)args[1]).values()
+                                               : null;
+            long failures = 0;
+            for (int i=0; i < size; i++) {
+                switch (primitive) {
+                case LONG_UNARY:
+                    ((Column.Longs)result).values()[i] = applyAsLong(a[i]);
+                    break;
+                case LONG_TO_DOUBLE:
+                    ((Column.Doubles)result).values()[i] = applyAsDouble(a[i]);
+                    break;
+                case LONG_BINARY:
+                    ((Column.Longs)result).values()[i] = applyAsLong(a[i], b[i]);
+                    if (!isDefined(a[i], b[i])) {
+                        // Only a failure if we were given the arguments
+                        result.setMissing(i, true);
+                        if (!args[0].isMissing(i) && !args[1].isMissing(i)) {
+                            failures++;
+                        }
+                    }
+                    break;
+                default:
+                    // The result starts all false so we need only OR
+                    bits[i >>> 6] |= (test(a[i], b[i]) ? 1L : 0L) << i;
+                    break;
+                }
+            }
+            countFailures(failures);
+            break;
+        }
+        }
+
+        result.setMissing(args);
+        return result;
+    }
 }
@@ -4,7 +4,8 @@ import java.util.Arrays;
 
 /**
  * A function which picks one of two other values based on the value
- * of a third: {@code (v0) ? v1 : v2}.
+ * of a third: {@code (v0) ? v1 : v2}. Only the branch which is picked
+ * needs to be given.
  */
 public class IfElse
     extends Function
@@ -21,6 +22,68 @@ public class IfElse
         super(Arrays.asList(Boolean.class, returnType, returnType), returnType);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isConditional(final int index)
+    {
+        return index > 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isNeeded(final int      index,
+                            final Column[] args,
+                            final int      size)
+    {
+        // Needed if any row picks it
+        if (args[0] instanceof Column.Booleans) {
+            final long[] c  = ((Column.Booleans)args[0]).words();
+            final long[] mc = args[0].missingWords();
+            for (int i=0; i < c.length; i++) {
+                if ((~mc[i] & ((index == 1) ? c[i] : ~c[i])) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        final Boolean picks = Boolean.valueOf(index == 1);
+        for (int row=0; row < size; row++) {
+            if (picks.equals(args[0].get(row))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Column safeCall(final Column[] args, final int size)
+    {
+        if (Boolean.class.equals(getReturnType()) &&
+            args[0] instanceof Column.Booleans &&
+            (args[1] == null || args[1] instanceof Column.Booleans) &&
+            (args[2] == null || args[2] instanceof Column.Booleans))
+        {
+            return booleanCall(args, size);
+        }
+
+        final Column result = Column.create(getReturnType(), size);
+        for (int row=0; row < size; row++) {
+            final Object value = args[0].get(row);
+            final Column picked =
+                (value instanceof Boolean) ? args[((Boolean)value) ? 1 : 2]
+                                           : null;
+            result.set(row, (picked == null) ? null : picked.get(row));
+        }
+        return result;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -34,4 +97,33 @@ public class IfElse
             return null;
         }
     }
+
+    /**
+     * Pick between columns of booleans a word of rows at a time. A
+     * branch which was not needed is as if it were missing in every
+     * row.
+     */
+    private Column booleanCall(final Column[] args, final int size)
+    {
+        final Column.Booleans result = new Column.Booleans(size);
+        final long[] r  = result.words();
+        final long[] m  = result.missingWords();
+        final long[] c  = ((Column.Booleans)args[0]).words();
+        final long[] mc = args[0].missingWords();
+        final long[] t  = (args[1] == null) ? null
+                                            : ((Column.Booleans)args[1]).words();
+        final long[] mt = (args[1] == null) ? null : args[1].missingWords();
+        final long[] e  = (args[2] == null) ? null
+                                            : ((Column.Booleans)args[2]).words();
+        final long[] me = (args[2] == null) ? null : args[2].missingWords();
+        for (int i=0; i < r.length; i++) {
+            final long tWord    = (t == null) ?  0L : t [i];
+            final long tMissing = (t == null) ? -1L : mt[i];
+            final long eWord    = (e == null) ?  0L : e [i];
+            final long eMissing = (e == null) ? -1L : me[i];
+            r[i] = (c[i] & tWord)    | (~c[i] & eWord);
+            m[i] = (c[i] & tMissing) | (~c[i] & eMissing) | mc[i];
+        }
+        return result;
+    }
 }
@@ -1,6 +1,7 @@
 package genecode.function;
 
 import genecode.ArrayUtil;
+import genecode.Budget;
 
 import java.util.Arrays;
 
@@ -48,6 +49,12 @@ public class Join
             return strings[0];
         }
         else {
+            long length = (long)joiner.length() * (strings.length - 1);
+            for (String string : strings) {
+                length += string.length();
+            }
+            Budget.allocate(length);
+
             final StringBuilder sb = new StringBuilder();
             for (int i=0; i < strings.length; i++) {
                 if (i > 0) {
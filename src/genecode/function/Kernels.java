@@ -0,0 +1,254 @@
+package genecode.function;
+
+import java.util.logging.Level;
+
+/**
+ * The inner loops of the numeric functions, when they are evaluated
+ * over {@link Column}s.
+ *
+ * <p>When the {@code jdk.incubator.vector} module is available (e.g. by
+ * running with {@code --add-modules jdk.incubator.vector}) and the
+ * hardware has SIMD registers, these are handed off to the {@link
+ * VectorKernels}. Otherwise they are simple scalar loops.
+ */
+/*package*/ final class Kernels
+{
+    /**
+     * Whether we use the {@link VectorKernels}.
+     */
+    private static final boolean VECTORIZED = isVectorized();
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * {@code r = a + b}
+     */
+    /*package*/ static void add(final double[] a,
+                                final double[] b,
+                                final double[] r,
+                                final int      n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.add(a, b, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = a[i] + b[i];
+            }
+        }
+    }
+
+    /**
+     * {@code r = a - b}
+     */
+    /*package*/ static void sub(final double[] a,
+                                final double[] b,
+                                final double[] r,
+                                final int      n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.sub(a, b, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = a[i] - b[i];
+            }
+        }
+    }
+
+    /**
+     * {@code r = a * b}
+     */
+    /*package*/ static void mul(final double[] a,
+                                final double[] b,
+                                final double[] r,
+                                final int      n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.mul(a, b, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = a[i] * b[i];
+            }
+        }
+    }
+
+    /**
+     * {@code r = a / b}
+     */
+    /*package*/ static void div(final double[] a,
+                                final double[] b,
+                                final double[] r,
+                                final int      n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.div(a, b, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = a[i] / b[i];
+            }
+        }
+    }
+
+    /**
+     * {@code r = -a}
+     */
+    /*package*/ static void neg(final double[] a,
+                                final double[] r,
+                                final int      n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.neg(a, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = -a[i];
+            }
+        }
+    }
+
+    /**
+     * {@code r = exp(a)}
+     */
+    /*package*/ static void exp(final double[] a,
+                                final double[] r,
+                                final int      n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.exp(a, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = Math.exp(a[i]);
+            }
+        }
+    }
+
+    /**
+     * {@code r = log(a)}
+     */
+    /*package*/ static void log(final double[] a,
+                                final double[] r,
+                                final int      n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.log(a, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = Math.log(a[i]);
+            }
+        }
+    }
+
+    /**
+     * {@code r = a + b}
+     */
+    /*package*/ static void add(final long[] a,
+                                final long[] b,
+                                final long[] r,
+                                final int    n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.add(a, b, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = a[i] + b[i];
+            }
+        }
+    }
+
+    /**
+     * {@code r = a - b}
+     */
+    /*package*/ static void sub(final long[] a,
+                                final long[] b,
+                                final long[] r,
+                                final int    n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.sub(a, b, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = a[i] - b[i];
+            }
+        }
+    }
+
+    /**
+     * {@code r = a * b}
+     */
+    /*package*/ static void mul(final long[] a,
+                                final long[] b,
+                                final long[] r,
+                                final int    n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.mul(a, b, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = a[i] * b[i];
+            }
+        }
+    }
+
+    /**
+     * {@code r = -a}
+     */
+    /*package*/ static void neg(final long[] a,
+                                final long[] r,
+                                final int    n)
+    {
+        if (VECTORIZED) {
+            VectorKernels.neg(a, r, n);
+        }
+        else {
+            for (int i=0; i < n; i++) {
+                r[i] = -a[i];
+            }
+        }
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Whether the {@link VectorKernels} are available.
+     *
+     * @return Whether they are.
+     */
+    private static boolean isVectorized()
+    {
+        // Don't go anywhere near the class unless the module is there
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            Function.LOG.fine("Vector API not available, using scalar kernels");
+            return false;
+        }
+
+        try {
+            // Only worth it if we have SIMD registers to play with
+            final int lanes = VectorKernels.lanes();
+            Function.LOG.fine("Vector API has " + lanes + " lanes");
+            return (lanes > 1);
+        }
+        catch (LinkageError e) {
+            Function.LOG.log(Level.WARNING,
+                             "Failed to load vector kernels, " +
+                             "using scalar ones",
+                             e);
+            return false;
+        }
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private Kernels()
+    {
+        // Nothing
+    }
+}
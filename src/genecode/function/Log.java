@@ -27,6 +27,24 @@ public class Log
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Primitive getPrimitive()
+    {
+        return Primitive.of(getArgTypes(), getReturnType());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double applyAsDouble(final double a)
+    {
+        return Math.log(a);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -48,4 +66,23 @@ public class Log
             return null;
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Column safeCall(final Column[] args, final int size)
+    {
+        if (args[0] instanceof Column.Doubles) {
+            final Column.Doubles result = new Column.Doubles(size);
+            final double[] a = ((Column.Doubles)args[0]).values();
+            final double[] r = result.values();
+            Kernels.log(a, r, size);
+            result.setMissing(args);
+            return result;
+        }
+        else {
+            return super.safeCall(args, size);
+        }
+    }
 }
@@ -1,6 +1,7 @@
 package genecode.function;
 
 import genecode.ArrayUtil;
+import genecode.Budget;
 
 import java.lang.reflect.Array;
 
@@ -20,12 +21,7 @@ public class Map
     /**
      * Our function.
      */
-    private Function myFunction;
-
-    /**
-     * Space for the arguments to call the function with.
-     */
-    private Object[] myValues;
+    private final Function myFunction;
 
     /**
      * Whether a given function can be used to map.
@@ -75,7 +71,6 @@ public class Map
     {
         super(getArgTypes(function), getReturnType(function));
         myFunction = function;
-        myValues   = new Object[function.getArgTypes().size()];
 
         if (function.getArgTypes().size() == 0) {
             throw new IllegalArgumentException(
@@ -98,12 +93,18 @@ public class Map
      * {@inheritDoc}
      */
     @Override
-    public Map clone()
+    public boolean equals(final Object o)
+    {
+        return super.equals(o) && ((Map)o).myFunction.equals(myFunction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
     {
-        final Map map = (Map)super.clone();
-        map.myFunction = myFunction.clone();
-        map.myValues   = new Object[myValues.length];
-        return map;
+        return super.hashCode() * 31 + myFunction.hashCode();
     }
 
     /**
@@ -114,7 +115,7 @@ public class Map
     {
         if (args == null ||
             args.length == 0 ||
-            args.length != myValues.length)
+            args.length != getArgTypes().size())
         {
             return null;
         }
@@ -139,23 +140,27 @@ public class Map
             length = Math.min(Array.getLength(arg), length);
         }
 
-        // We can construct space for the result now
+        // We can construct space for the result now, and we'll call the
+        // function for each element
+        Budget.allocate(length);
+        Budget.spend(length);
         final Object result =
             Array.newInstance(myFunction.getReturnType(), length);
 
         // Now call map
+        final Object[] values = new Object[args.length];
         for (int i=0; i < length; i++) {
             // Extract the values from each array
-            for (int j=0; j < myValues.length; j++) {
+            for (int j=0; j < values.length; j++) {
                 final Object value = Array.get(args[j], i);
                 if (value == null) {
                     return null;
                 }
-                myValues[j] = value;
+                values[j] = value;
             }
 
             // Call the function
-            final Object value = myFunction.call(myValues);
+            final Object value = myFunction.invoke(values);
             if (value == null) {
                 return null;
             }
@@ -22,6 +22,33 @@ public class Neg
         super(Arrays.asList(type), type);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Primitive getPrimitive()
+    {
+        return Primitive.of(getArgTypes(), getReturnType());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double applyAsDouble(final double a)
+    {
+        return -a;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long applyAsLong(final long a)
+    {
+        return -a;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -55,4 +82,31 @@ public class Neg
             return null;
         }
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Column safeCall(final Column[] args, final int size)
+    {
+        if (args[0] instanceof Column.Doubles) {
+            final Column.Doubles result = new Column.Doubles(size);
+            final double[] a = ((Column.Doubles)args[0]).values();
+            final double[] r = result.values();
+            Kernels.neg(a, r, size);
+            result.setMissing(args);
+            return result;
+        }
+        else if (args[0] instanceof Column.Longs) {
+            final Column.Longs result = new Column.Longs(size);
+            final long[] a = ((Column.Longs)args[0]).values();
+            final long[] r = result.values();
+            Kernels.neg(a, r, size);
+            result.setMissing(args);
+            return result;
+        }
+        else {
+            return super.safeCall(args, size);
+        }
+    }
 }
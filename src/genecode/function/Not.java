@@ -28,4 +28,25 @@ public class Not
         return (value instanceof Boolean) ? Boolean.valueOf(!(Boolean)value)
                                           : null;
     }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected Column safeCall(final Column[] args, final int size)
+    {
+        if (!(args[0] instanceof Column.Booleans)) {
+            return super.safeCall(args, size);
+        }
+
+        // A word of rows at a time
+        final long[] a = ((Column.Booleans)args[0]).words();
+        final Column.Booleans result = new Column.Booleans(size);
+        final long[] r = result.words();
+        for (int i=0; i < r.length; i++) {
+            r[i] = ~a[i];
+        }
+        result.setMissing(args);
+        return result;
+    }
 }
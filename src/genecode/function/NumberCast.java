@@ -31,6 +31,51 @@ public class NumberCast
         return getReturnType().getSimpleName() + "Cast";
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Primitive getPrimitive()
+    {
+        return Primitive.of(getArgTypes(), getReturnType());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double applyAsDouble(final double a)
+    {
+        return a;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long applyAsLong(final long a)
+    {
+        return a;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public long applyAsLong(final double a)
+    {
+        return (long)a;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public double applyAsDouble(final long a)
+    {
+        return a;
+    }
+
     /**
      * {@inheritDoc}
      */
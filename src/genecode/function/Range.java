@@ -1,5 +1,7 @@
 package genecode.function;
 
+import genecode.Budget;
+
 import java.lang.reflect.Array;
 
 import java.util.Arrays;
@@ -53,6 +55,7 @@ public class Range
         }
 
         // Create the result and put in the arguments as values
+        Budget.allocate(count);
         final Object result =
             Array.newInstance(getReturnType().getComponentType(), (int)count);
         for (int i = 0; i < count; i++) {
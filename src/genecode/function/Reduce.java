@@ -1,6 +1,7 @@
 package genecode.function;
 
 import genecode.ArrayUtil;
+import genecode.Budget;
 
 import java.lang.reflect.Array;
 
@@ -24,12 +25,7 @@ public class Reduce
     /**
      * Our function.
      */
-    private Function myFunction;
-
-    /**
-     * Space for the arguments to call the function with.
-     */
-    private Object[] myValues;
+    private final Function myFunction;
 
     /**
      * Whether a given function can be used to map.
@@ -92,7 +88,6 @@ public class Reduce
     {
         super(getArgTypes(function), function.getReturnType());
         myFunction = function;
-        myValues   = new Object[2];
     }
 
     /**
@@ -108,12 +103,18 @@ public class Reduce
      * {@inheritDoc}
      */
     @Override
-    public Reduce clone()
+    public boolean equals(final Object o)
+    {
+        return super.equals(o) && ((Reduce)o).myFunction.equals(myFunction);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
     {
-        final Reduce reduce = (Reduce)super.clone();
-        reduce.myFunction = myFunction.clone();
-        reduce.myValues   = new Object[myValues.length];
-        return reduce;
+        return super.hashCode() * 31 + myFunction.hashCode();
     }
 
     /**
@@ -149,22 +150,24 @@ public class Reduce
             return Array.get(arg, 0);
         }
 
-        // Start us off
-        myValues[0] = Array.get(arg, 0);
-        myValues[1] = Array.get(arg, 1);
-        if (myValues[0] == null || myValues[1] == null) {
+        // Start us off, we'll call the function for each element
+        Budget.spend(length);
+        final Object[] values = new Object[2];
+        values[0] = Array.get(arg, 0);
+        values[1] = Array.get(arg, 1);
+        if (values[0] == null || values[1] == null) {
             return null;
         }
-        Object result = myFunction.call(myValues);
+        Object result = myFunction.invoke(values);
 
         // And accumulate
         for (int i = 2; i < length; i++) {
-            myValues[0] = result;
-            myValues[1] = Array.get(arg, i);
-            if (myValues[0] == null || myValues[1] == null) {
+            values[0] = result;
+            values[1] = Array.get(arg, i);
+            if (values[0] == null || values[1] == null) {
                 return null;
             }
-            result = myFunction.call(myValues);
+            result = myFunction.invoke(values);
         }
 
         // Now just give it back
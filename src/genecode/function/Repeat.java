@@ -1,6 +1,7 @@
 package genecode.function;
 
 import genecode.ArrayUtil;
+import genecode.Budget;
 
 import java.lang.reflect.Array;
 
@@ -38,6 +39,24 @@ public class Repeat
         myMaxLength = maxLength;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(final Object o)
+    {
+        return super.equals(o) && ((Repeat)o).myMaxLength == myMaxLength;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode()
+    {
+        return super.hashCode() * 31 + myMaxLength;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -58,6 +77,7 @@ public class Repeat
         }
 
         // Create the result and put in the arguments as values
+        Budget.allocate(length);
         final Object result =
             Array.newInstance(getReturnType().getComponentType(), length);
         for (int i=0; i < length; i++) {
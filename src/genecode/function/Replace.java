@@ -1,5 +1,7 @@
 package genecode.function;
 
+import genecode.Budget;
+
 import java.lang.reflect.Array;
 
 import java.util.Arrays;
@@ -45,23 +47,17 @@ public class Replace
     protected Object safeCall(final Object[] args)
     {
         if (args.length != 4) {
-            throw new IllegalArgumentException(
-                "Bad arguments: " + Arrays.toString(args)
-            );
+            return null;
         }
         for (Object arg : args) {
             if (arg == null) {
-                throw new IllegalArgumentException(
-                    "Bad arguments: " + Arrays.toString(args)
-                );
+                return null;
             }
         }
 
         // Max replace count
         if (!(args[3] instanceof Number)) {
-            throw new IllegalArgumentException(
-                "args[3] was not a Number: " + Arrays.toString(args)
-            );
+            return null;
         }
         final int max = ((Number)args[3]).intValue();
 
@@ -76,6 +72,7 @@ public class Replace
 
             // Array info
             final int length = Array.getLength(array);
+            Budget.allocate(length);
             final Object result =
                 Array.newInstance(array.getClass().getComponentType(), length);
 
@@ -94,9 +91,7 @@ public class Replace
             if (!(args[1] instanceof String &&
                   args[2] instanceof String))
             {
-                throw new IllegalArgumentException(
-                    "args[1] and args[2] were not Strings: " + Arrays.toString(args)
-                );
+                return null;
             }
 
             // What we're doing
@@ -119,13 +114,12 @@ public class Replace
                 }
             }
 
-            // And done
+            // And done, charging for the copy which we're about to make
+            Budget.allocate(sb.length());
             return sb.toString();
         }
         else {
-            throw new IllegalArgumentException(
-                "args[0] was not a String or array: " + args[0]
-            );
+            return null;
         }
     }
 }
@@ -1,5 +1,7 @@
 package genecode.function;
 
+import genecode.Budget;
+
 import java.util.Arrays;
 
 /**
@@ -40,6 +42,7 @@ public class StringConcat
             return string0;
         }
         else {
+            Budget.allocate((long)string0.length() + string1.length());
             return string0 + string1;
         }
     }
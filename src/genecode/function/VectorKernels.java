@@ -0,0 +1,251 @@
+package genecode.function;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.LongVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * SIMD versions of the {@link Kernels}, using the Vector API.
+ *
+ * <p>This class may only be loaded when the {@code jdk.incubator.vector}
+ * module is present, which is something that {@link Kernels} checks for
+ * before using it.
+ */
+/*package*/ final class VectorKernels
+{
+    /**
+     * The species for {@code double} values.
+     */
+    private static final VectorSpecies<Double> DOUBLES =
+        DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * The species for {@code long} values.
+     */
+    private static final VectorSpecies<Long> LONGS =
+        LongVector.SPECIES_PREFERRED;
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * The number of {@code double} values handled by each operation.
+     */
+    /*package*/ static int lanes()
+    {
+        return DOUBLES.length();
+    }
+
+    /**
+     * {@code r = a + b}
+     */
+    /*package*/ static void add(final double[] a,
+                                final double[] b,
+                                final double[] r,
+                                final int      n)
+    {
+        int i = 0;
+        for (final int upper = DOUBLES.loopBound(n); i < upper; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i)
+                        .add(DoubleVector.fromArray(DOUBLES, b, i))
+                        .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = a[i] + b[i];
+        }
+    }
+
+    /**
+     * {@code r = a - b}
+     */
+    /*package*/ static void sub(final double[] a,
+                                final double[] b,
+                                final double[] r,
+                                final int      n)
+    {
+        int i = 0;
+        for (final int upper = DOUBLES.loopBound(n); i < upper; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i)
+                        .sub(DoubleVector.fromArray(DOUBLES, b, i))
+                        .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = a[i] - b[i];
+        }
+    }
+
+    /**
+     * {@code r = a * b}
+     */
+    /*package*/ static void mul(final double[] a,
+                                final double[] b,
+                                final double[] r,
+                                final int      n)
+    {
+        int i = 0;
+        for (final int upper = DOUBLES.loopBound(n); i < upper; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i)
+                        .mul(DoubleVector.fromArray(DOUBLES, b, i))
+                        .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = a[i] * b[i];
+        }
+    }
+
+    /**
+     * {@code r = a / b}
+     */
+    /*package*/ static void div(final double[] a,
+                                final double[] b,
+                                final double[] r,
+                                final int      n)
+    {
+        int i = 0;
+        for (final int upper = DOUBLES.loopBound(n); i < upper; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i)
+                        .div(DoubleVector.fromArray(DOUBLES, b, i))
+                        .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = a[i] / b[i];
+        }
+    }
+
+    /**
+     * {@code r = -a}
+     */
+    /*package*/ static void neg(final double[] a,
+                                final double[] r,
+                                final int      n)
+    {
+        int i = 0;
+        for (final int upper = DOUBLES.loopBound(n); i < upper; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i)
+                        .neg()
+                        .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = -a[i];
+        }
+    }
+
+    /**
+     * {@code r = exp(a)}
+     */
+    /*package*/ static void exp(final double[] a,
+                                final double[] r,
+                                final int      n)
+    {
+        int i = 0;
+        for (final int upper = DOUBLES.loopBound(n); i < upper; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i)
+                        .lanewise(VectorOperators.EXP)
+                        .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = Math.exp(a[i]);
+        }
+    }
+
+    /**
+     * {@code r = log(a)}
+     */
+    /*package*/ static void log(final double[] a,
+                                final double[] r,
+                                final int      n)
+    {
+        int i = 0;
+        for (final int upper = DOUBLES.loopBound(n); i < upper; i += DOUBLES.length()) {
+            DoubleVector.fromArray(DOUBLES, a, i)
+                        .lanewise(VectorOperators.LOG)
+                        .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = Math.log(a[i]);
+        }
+    }
+
+    /**
+     * {@code r = a + b}
+     */
+    /*package*/ static void add(final long[] a,
+                                final long[] b,
+                                final long[] r,
+                                final int    n)
+    {
+        int i = 0;
+        for (final int upper = LONGS.loopBound(n); i < upper; i += LONGS.length()) {
+            LongVector.fromArray(LONGS, a, i)
+                      .add(LongVector.fromArray(LONGS, b, i))
+                      .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = a[i] + b[i];
+        }
+    }
+
+    /**
+     * {@code r = a - b}
+     */
+    /*package*/ static void sub(final long[] a,
+                                final long[] b,
+                                final long[] r,
+                                final int    n)
+    {
+        int i = 0;
+        for (final int upper = LONGS.loopBound(n); i < upper; i += LONGS.length()) {
+            LongVector.fromArray(LONGS, a, i)
+                      .sub(LongVector.fromArray(LONGS, b, i))
+                      .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = a[i] - b[i];
+        }
+    }
+
+    /**
+     * {@code r = a * b}
+     */
+    /*package*/ static void mul(final long[] a,
+                                final long[] b,
+                                final long[] r,
+                                final int    n)
+    {
+        int i = 0;
+        for (final int upper = LONGS.loopBound(n); i < upper; i += LONGS.length()) {
+            LongVector.fromArray(LONGS, a, i)
+                      .mul(LongVector.fromArray(LONGS, b, i))
+                      .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = a[i] * b[i];
+        }
+    }
+
+    /**
+     * {@code r = -a}
+     */
+    /*package*/ static void neg(final long[] a,
+                                final long[] r,
+                                final int    n)
+    {
+        int i = 0;
+        for (final int upper = LONGS.loopBound(n); i < upper; i += LONGS.length()) {
+            LongVector.fromArray(LONGS, a, i)
+                      .neg()
+                      .intoArray(r, i);
+        }
+        for (; i < n; i++) {
+            r[i] = -a[i];
+        }
+    }
+
+    /**
+     * Not instantiable.
+     */
+    private VectorKernels()
+    {
+        // Nothing
+    }
+}
@@ -1,5 +1,6 @@
 package genecode.function.test;
 
+import genecode.Budget;
 import genecode.function.*;
 import genecode.function.BinaryLogic.And;
 import genecode.function.BinaryLogic.Or;
@@ -12,6 +13,7 @@ import genecode.function.Compare.GT;
 
 
 import java.util.Arrays;
+import java.util.Random;
 
 import junit.framework.TestCase;
 
@@ -38,6 +40,137 @@ public class FunctionTest
         }
     }
 
+    /**
+     * Test arithmetic over columns, compared with doing it a value at a time.
+     */
+    public void testColumns()
+    {
+        final int size = 37;
+        final Column d1 = Column.create(Double.class, size);
+        final Column d2 = Column.create(Double.class, size);
+        final Column l1 = Column.create(Long  .class, size);
+        final Column l2 = Column.create(Long  .class, size);
+        for (int i=0; i < size; i++) {
+            d1.set(i, Double.valueOf(i - 5));
+            d2.set(i, (i == 3) ? null : Double.valueOf(5 - 2 * i));
+            l1.set(i, Long  .valueOf(i - 5));
+            l2.set(i, (i == 3) ? null : Long.valueOf(i % 4));
+        }
+
+        final Function[] functions = {
+            new Add (Double.class), new Add (Long.class),
+            new Sub (Double.class), new Sub (Long.class),
+            new Mult(Double.class), new Mult(Long.class),
+            new Div (Double.class), new Div (Long.class),
+            new Mod (Double.class), new Mod (Long.class),
+            new Neg (Double.class), new Neg (Long.class),
+            new Exp (Double.class), new Log (Double.class),
+            new LT  (Double.class), new LT  (Long.class),
+            new EQ  (Double.class), new EQ  (Long.class),
+            new NumberCast(Double.class, Long  .class),
+            new NumberCast(Long  .class, Double.class),
+        };
+        for (Function function : functions) {
+            final boolean  isDouble = function.getArgTypes().get(0).equals(Double.class);
+            final Column[] args =
+                (function.getArgTypes().size() == 1)
+                    ? new Column[] { isDouble ? d1 : l1 }
+                    : new Column[] { isDouble ? d1 : l1, isDouble ? d2 : l2 };
+            final Column result = function.call(args, size);
+            assertEquals(size, result.size());
+            for (int i=0; i < size; i++) {
+                final Object[] values = new Object[args.length];
+                for (int j=0; j < args.length; j++) {
+                    values[j] = args[j].get(i);
+                }
+                // The vector kernels may differ in the last place
+                final Object want = function.call(values);
+                final Object got  = result.get(i);
+                if (want instanceof Double && got instanceof Double &&
+                    !want.equals(got))
+                {
+                    assertEquals(function + Arrays.toString(values),
+                                 (Double)want,
+                                 (Double)got,
+                                 Math.ulp((Double)want));
+                }
+                else {
+                    assertEquals(function + Arrays.toString(values), want, got);
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that the primitive calling convention gives the same answers
+     * as calling with objects.
+     */
+    public void testPrimitive()
+    {
+        final double[] doubles = { -2.5, -1, -0.0, 0, 1, 3.5, Double.NaN };
+        final long[]   longs   = { Long.MIN_VALUE, -3, -1, 0, 1, 7 };
+
+        assertEquals(Function.Primitive.DOUBLE_BINARY,
+                     new Add(Double.class).getPrimitive());
+        assertEquals(Function.Primitive.LONG_PREDICATE,
+                     new GT(Long.class).getPrimitive());
+        assertEquals(Function.Primitive.DOUBLE_TO_LONG,
+                     new NumberCast(Double.class, Long.class).getPrimitive());
+        assertNull(new Add(Integer.class).getPrimitive());
+        assertNull(new Concat(String.class).getPrimitive());
+
+        final Function[] binaries = {
+            new Add(Double.class), new Sub (Double.class), new Mult(Double.class),
+            new Div(Double.class), new Mod (Double.class),
+            new Add(Long  .class), new Sub (Long  .class), new Mult(Long  .class),
+            new Div(Long  .class), new Mod (Long  .class),
+            new LT (Double.class), new EQ  (Double.class), new GTE (Double.class),
+            new LT (Long  .class), new EQ  (Long  .class), new GTE (Long  .class),
+        };
+        for (Function function : binaries) {
+            if (function.getArgTypes().get(0).equals(Double.class)) {
+                for (double a : doubles) {
+                    for (double b : doubles) {
+                        final Object want = function.call(a, b);
+                        final Object got =
+                            (want instanceof Boolean) ? (Object)function.test(a, b)
+                                                      : (Object)function.applyAsDouble(a, b);
+                        assertEquals(function + "(" + a + ", " + b + ")", want, got);
+                    }
+                }
+            }
+            else {
+                for (long a : longs) {
+                    for (long b : longs) {
+                        final Object want = function.call(a, b);
+                        final Object got;
+                        if (function.getPrimitive() == Function.Primitive.LONG_PREDICATE) {
+                            got = function.test(a, b);
+                        }
+                        else {
+                            got = function.isDefined(a, b) ? function.applyAsLong(a, b)
+                                                           : null;
+                        }
+                        assertEquals(function + "(" + a + ", " + b + ")", want, got);
+                    }
+                }
+            }
+        }
+
+        for (double a : doubles) {
+            assertEquals(new Neg(Double.class).call(a),
+                         new Neg(Double.class).applyAsDouble(a));
+            assertEquals(new NumberCast(Double.class, Long.class).call(a),
+                         new NumberCast(Double.class, Long.class).applyAsLong(a));
+        }
+        for (long a : longs) {
+            assertEquals(new Neg(Long.class).call(a),
+                         new Neg(Long.class).applyAsLong(a));
+            assertEquals(new NumberCast(Long.class, Double.class).call(a),
+                         new NumberCast(Long.class, Double.class).applyAsDouble(a));
+        }
+    }
+
     /**
      * Test logical operations.
      */
@@ -55,6 +188,171 @@ public class FunctionTest
         }
     }
 
+    /**
+     * Test that conditional arguments are only needed when picked.
+     */
+    public void testConditional()
+    {
+        final Boolean T = Boolean.TRUE;
+        final Boolean F = Boolean.FALSE;
+
+        // Unneeded arguments don't matter, even if they are missing
+        assertEquals("a", new IfElse(String.class).call(T, "a", null));
+        assertEquals("b", new IfElse(String.class).call(F, null, "b"));
+        assertNull(new IfElse(String.class).call(T, null, "b"));
+        assertEquals(F, new And().call(F, null));
+        assertEquals(T, new Or ().call(T, null));
+        assertNull(new And().call(T, null));
+        assertNull(new Xor().call(F, null));
+
+        // Nor do unneeded columns, which need not even be evaluated
+        final Column cond = Column.create(Boolean.class, 3);
+        final Column strs = Column.create(String .class, 3);
+        for (int i=0; i < 3; i++) {
+            cond.set(i, (i == 1) ? null : T);
+            strs.set(i, "s" + i);
+        }
+        final IfElse ifElse = new IfElse(String.class);
+        assertTrue (ifElse.isNeeded(1, new Column[] { cond, null, null }, 3));
+        assertFalse(ifElse.isNeeded(2, new Column[] { cond, null, null }, 3));
+        final Column result = ifElse.call(new Column[] { cond, strs, null }, 3);
+        assertEquals("s0", result.get(0));
+        assertNull  (      result.get(1));
+        assertEquals("s2", result.get(2));
+        assertFalse(new Or ().isNeeded(1, new Column[] { cond, null }, 3));
+        assertTrue (new And().isNeeded(1, new Column[] { cond, null }, 3));
+    }
+
+    /**
+     * Test that boolean columns, which are computed a word of rows at a
+     * time, give the same answers as calling for each row.
+     */
+    public void testBitSliced()
+    {
+        // Enough rows to have a partial last word, and some missing
+        final int    size  = 150;
+        final Column a     = Column.create(Boolean.class, size);
+        final Column b     = Column.create(Boolean.class, size);
+        final Column x     = Column.create(Long   .class, size);
+        final Column y     = Column.create(Long   .class, size);
+        final Random random = new Random(size);
+        for (int row=0; row < size; row++) {
+            a.set(row, (random.nextInt(5) == 0) ? null : random.nextBoolean());
+            b.set(row, (random.nextInt(5) == 0) ? null : random.nextBoolean());
+            x.set(row, (long)random.nextInt(3));
+            y.set(row, (long)random.nextInt(3));
+        }
+
+        final Function[] functions = {
+            new And(), new Or(), new Xor(), new Not(), new LT(Long.class),
+            new IfElse(Boolean.class)
+        };
+        final Column[][] argss = {
+            { a, b }, { a, b }, { a, b }, { a }, { x, y }, { a, b, a }
+        };
+        final String     before = a + " " + b;
+        for (int f=0; f < functions.length; f++) {
+            final Column   result = functions[f].call(argss[f], size);
+            final Object[] values = new Object[argss[f].length];
+            assertTrue(result instanceof Column.Booleans);
+            for (int row=0; row < size; row++) {
+                for (int i=0; i < values.length; i++) {
+                    values[i] = argss[f][i].get(row);
+                }
+                assertEquals(functions[f] + " row " + row,
+                             functions[f].call(values), result.get(row));
+            }
+        }
+
+        // The arguments, which share their underlying arrays, are left
+        // as they were
+        assertEquals(before, a + " " + b);
+
+        // Unneeded arguments are missing wherever they would matter
+        final Column and = new And().call(new Column[] { a, null }, size);
+        for (int row=0; row < size; row++) {
+            assertEquals(Boolean.FALSE.equals(a.get(row)) ? Boolean.FALSE : null,
+                         and.get(row));
+        }
+        assertEquals(String.class,
+                     new IfElse(String.class).call(new Column[] { a, null, null },
+                                                   size).getType());
+    }
+
+    /**
+     * Test that failures give back null, and are counted.
+     */
+    public void testFailures()
+    {
+        final long before = Function.getFailures();
+        assertNull(new Div(Long.class).call(1L, 0L));
+        assertNull(new Mod(Long.class).invoke(new Object[] { 1L, 0L }));
+        assertNull(new GetAt(Long[].class, Long.class).invoke(new Object[] { new Long[0], 3L }));
+        assertTrue(Function.getFailures() >= before + 3);
+
+        // Rows of columns count too, but not ones which were missing
+        final Column a = Column.create(Long.class, 5);
+        final Column b = Column.create(Long.class, 5);
+        for (int i=0; i < 5; i++) {
+            a.set(i, Long.valueOf(i));
+            b.set(i, (i == 2) ? null : Long.valueOf(i % 2));
+        }
+        final Function[] functions = {
+            new Div(Long.class),
+            new Mod(Long.class),
+            // Like Div but using the primitive calling convention
+            new Function(Arrays.asList(Long.class, Long.class), Long.class) {
+                @Override public Primitive getPrimitive() { return Primitive.LONG_BINARY; }
+                @Override public long applyAsLong(long x, long y) { return (y == 0) ? 0 : x / y; }
+                @Override public boolean isDefined(long x, long y) { return (y != 0); }
+                @Override protected Object safeCall(Object[] args) { return null; }
+            },
+        };
+        for (Function function : functions) {
+            final long start = Function.getFailures();
+            final Column result = function.call(new Column[] { a, b }, 5);
+            assertEquals(function.toString(), start + 2, Function.getFailures());
+            for (int i=0; i < 5; i++) {
+                assertEquals(function + "@" + i, (i % 2) == 0, result.isMissing(i));
+            }
+        }
+
+        // Bad arguments are still the caller's problem
+        try {
+            new Div(Long.class).call(1L, "0");
+            fail("Should have rejected a String");
+        }
+        catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test that a budget stops functions from allocating too much.
+     */
+    public void testBudget()
+    {
+        final Budget budget   = new Budget(1000, 1000);
+        final Budget previous = budget.enter();
+        try {
+            assertNotNull(new StringConcat().call("abc", "def"));
+            assertEquals(6, budget.getElements());
+            try {
+                new Range(Long.class).call(0L, (long)Integer.MAX_VALUE);
+                fail("Range should have exceeded the budget");
+            }
+            catch (Budget.ExceededException e) {
+                // Expected
+            }
+        }
+        finally {
+            budget.exit(previous);
+        }
+
+        // And without a budget there's no limit
+        assertNotNull(new Repeat(Long.class, 10_000).call(1L, 5_000L));
+    }
+
     /**
      * Test string operations.
      */
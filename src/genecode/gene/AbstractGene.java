@@ -1,16 +1,22 @@
 package genecode.gene;
 
+import genecode.Budget;
 import genecode.Context;
 import genecode.Genome;
+import genecode.Program;
 
 import java.io.Serializable;
 
-import java.util.List;
+import java.util.BitSet;
 import java.util.Objects;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Level;
 
 /**
  * The base class for Genes which provides some handy mechanics.
+ *
+ * <p>Subclasses must not change their state once they have been
+ * {@code init()}'d, other than in a copy made by {@link #clone()}.
  */
 public abstract class AbstractGene
     implements Gene,
@@ -31,16 +37,6 @@ public abstract class AbstractGene
      */
     private boolean myInitted;
 
-    /**
-     * Whether this gene is currently being evaluated.
-     */
-    private boolean myIsEvaluating;
-
-    // Used the cache the result for the last evaluation
-    private long   myCachedContextId;
-    private long   myCachedGenomeId;
-    private Object myCachedValue;
-
     // ----------------------------------------------------------------------
 
     /**
@@ -52,13 +48,9 @@ public abstract class AbstractGene
     {
         Objects.requireNonNull(returnType);
         
-        myReturnType      = returnType;
-        myHandle          = new Handle();
-        myInitted         = false;
-        myIsEvaluating    = false;
-        myCachedContextId = -1;
-        myCachedGenomeId  = -1;
-        myCachedValue     = null;
+        myReturnType = returnType;
+        myHandle     = new Handle();
+        myInitted    = false;
     }
 
     /**
@@ -97,12 +89,25 @@ public abstract class AbstractGene
 
     /**
      * {@inheritDoc}
+     *
+     * <p>By default the gene refers to no others.
      */
-    @Override    
-    public void getGraphHandles(final Genome            genome,
-                                final List<Gene.Handle> dest)
+    @Override
+    public void getGraphSlots(final Genome genome,
+                              final BitSet dest)
     {
-        dest.add(getHandle());
+        // Nothing
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>By default the gene refers to no others.
+     */
+    @Override
+    public Gene remap(final IntUnaryOperator mapping)
+    {
+        return this;
     }
 
     /**
@@ -121,6 +126,18 @@ public abstract class AbstractGene
     public final Object evaluate(final Context context,
                                  final Genome  genome)
         throws IllegalStateException
+    {
+        return evaluate(context, genome, Frame.current());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final Object evaluate(final Context context,
+                                 final Genome  genome,
+                                 final Frame   frame)
+        throws IllegalStateException
     {
         // Make sure we're ready
         if (!myInitted) {
@@ -128,21 +145,20 @@ public abstract class AbstractGene
         }
 
         // Ensure we've not entered a circular dependency
-        if (myIsEvaluating) {
+        frame.enter(context, genome);
+        if (!frame.startEvaluating(myHandle)) {
             return null;
         }
 
-        // See if we have a cached value
-        if (context.getId() == myCachedContextId &&
-            genome .getId() == myCachedGenomeId)
-        {
-            return myCachedValue;
-        }
-
-        // Okay, we're evaluating
-        myIsEvaluating = true;
         try {
-            final Object result = safeEvaluate(context, genome);
+            // See if we have a cached value
+            if (frame.hasValue(myHandle)) {
+                return frame.getValue(myHandle);
+            }
+
+            // Okay, we're evaluating
+            Budget.spend(1);
+            final Object result = safeEvaluate(context, genome, frame);
             if (LOG.isLoggable(Level.FINEST)) {
                 LOG.finest(
                     getClass().getSimpleName() + '{' + toString(genome) + "} => " +
@@ -151,23 +167,36 @@ public abstract class AbstractGene
             }
 
             // Cache it
-            myCachedContextId = context.getId();
-            myCachedGenomeId  = genome .getId();
-            myCachedValue     = result;
+            frame.setValue(myHandle, result);
 
             // And give it back
             return result;
         }
+        catch (Budget.ExceededException e) {
+            // Cut the whole evaluation short
+            throw e;
+        }
         catch (Exception e) {
             // Don't expect this
             LOG.log(Level.SEVERE, "Failed to evaluate: " + toString(genome), e);
             return null;
         }
         finally {
-            myIsEvaluating = false;
+            frame.finishEvaluating(myHandle);
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>By default the gene is evaluated directly by the program.
+     */
+    @Override
+    public int compile(final Program.Builder builder)
+    {
+        return builder.gene(this);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -206,12 +235,7 @@ public abstract class AbstractGene
     public Gene clone()
     {
         try {
-            final AbstractGene result = (AbstractGene)super.clone();
-            result.myIsEvaluating    = false;
-            result.myCachedContextId = -1;
-            result.myCachedGenomeId  = -1;
-            result.myCachedValue     = null;
-            return result;
+            return (AbstractGene)super.clone();
         }
         catch (CloneNotSupportedException e) {
             // Should not happen
@@ -221,16 +245,6 @@ public abstract class AbstractGene
 
     // ----------------------------------------------------------------------
 
-    /**
-     * Flush the caches.
-     */
-    protected void flush()
-    {
-        myCachedContextId = -1;
-        myCachedGenomeId  = -1;
-        myCachedValue     = null;
-    }
-
     /**
      * Actually init the gene. Only called when we know it's okay to
      * do so.
@@ -248,9 +262,11 @@ public abstract class AbstractGene
      *
      * @param context The context to evaluate this gene in.
      * @param genome  The genome which this gene lives inside.
+     * @param frame   The frame to evaluate with.
      *
      * @return The result of the evaluation.
      */
     protected abstract Object safeEvaluate(final Context context,
-                                           final Genome  genome);
+                                           final Genome  genome,
+                                           final Frame   frame);
 }
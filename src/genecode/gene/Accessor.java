@@ -3,6 +3,7 @@ package genecode.gene;
 import genecode.Context;
 import genecode.Context.Identifier;
 import genecode.Genome;
+import genecode.Program;
 
 import java.util.Arrays;
 import java.util.Collections;
@@ -22,17 +23,43 @@ public class Accessor<T>
      */
     private final Identifier<T> myIdentifier;
 
+    /**
+     * The slot which the identifier is bound to, or {@code -1} if it
+     * isn't. Unbound accessors are bound when they are init()'d, if the
+     * genome's factory knows of a slot.
+     */
+    private int mySlot;
+
     /**
      * CTOR.
      *
      * @param identifier The identifier to get the value for.
      * @param returnType The type of the accessed value.
+     * @param slot       The slot which the identifier is bound to in the
+     *                   contexts which this gene will be evaluated in,
+     *                   or {@code -1} if it isn't and should be bound
+     *                   by the genome's factory; see {@link
+     *                   Context#access(int,Identifier)}.
      */
     public Accessor(final Identifier<T>  identifier,
-                    final Class<T>       returnType)
+                    final Class<T>       returnType,
+                    final int            slot)
     {
         super(returnType);
         myIdentifier = identifier;
+        mySlot       = slot;
+    }
+
+    /**
+     * CTOR.
+     *
+     * @param identifier The identifier to get the value for.
+     * @param returnType The type of the accessed value.
+     */
+    public Accessor(final Identifier<T>  identifier,
+                    final Class<T>       returnType)
+    {
+        this(identifier, returnType, -1);
     }
 
     /**
@@ -50,10 +77,11 @@ public class Accessor<T>
      * {@inheritDoc}
      */
     @Override
-    public void mutate(final Genome genome,
+    public Gene mutate(final Genome genome,
                        final double factor)
     {
         // Nothing
+        return this;
     }
 
     /**
@@ -96,13 +124,26 @@ public class Accessor<T>
         return toString();
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compile(final Program.Builder builder)
+    {
+        return builder.access(myIdentifier, mySlot);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected void safeInit(final Genome genome)
     {
-        // Nothing
+        // Bind ourselves, if we weren't already, so that we don't have
+        // to be looked up by identifier in every context
+        if (mySlot < 0 && genome.getGeneFactory() != null) {
+            mySlot = genome.getGeneFactory().slotOf(myIdentifier);
+        }
     }
 
     /**
@@ -110,8 +151,9 @@ public class Accessor<T>
      */
     @Override
     protected Object safeEvaluate(final Context context,
-                                  final Genome  genome)
+                                  final Genome  genome,
+                                  final Frame   frame)
     {
-        return context.access(myIdentifier);
+        return context.access(mySlot, myIdentifier);
     }
 }
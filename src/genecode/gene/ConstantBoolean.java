@@ -2,6 +2,7 @@ package genecode.gene;
 
 import genecode.Context;
 import genecode.Genome;
+import genecode.Program;
 
 /**
  * A gene which is always a constant boolean value.
@@ -38,10 +39,11 @@ public class ConstantBoolean
      * {@inheritDoc}
      */
     @Override
-    public final void mutate(final Genome genome,
+    public final Gene mutate(final Genome genome,
                              final double factor)
     {
         // NOP
+        return this;
     }
 
     /**
@@ -53,6 +55,15 @@ public class ConstantBoolean
         return Boolean.toString(myValue);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int compile(final Program.Builder builder)
+    {
+        return builder.constant(myValue);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -67,7 +78,8 @@ public class ConstantBoolean
      */
     @Override
     protected final Boolean safeEvaluate(final Context context,
-                                         final Genome  genome)
+                                         final Genome  genome,
+                                         final Frame   frame)
     {
         return myValue;
     }
@@ -2,6 +2,7 @@ package genecode.gene;
 
 import genecode.Context;
 import genecode.Genome;
+import genecode.Program;
 
 /**
  * A gene which is always a constant long value.
@@ -38,10 +39,11 @@ public class ConstantLong
      * {@inheritDoc}
      */
     @Override
-    public final void mutate(final Genome genome,
+    public final Gene mutate(final Genome genome,
                              final double factor)
     {
         // NOP
+        return this;
     }
 
     /**
@@ -53,6 +55,15 @@ public class ConstantLong
         return Long.toString(myValue);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int compile(final Program.Builder builder)
+    {
+        return builder.constant(myValue);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -67,7 +78,8 @@ public class ConstantLong
      */
     @Override
     protected final Long safeEvaluate(final Context context,
-                                      final Genome  genome)
+                                      final Genome  genome,
+                                      final Frame   frame)
     {
         return myValue;
     }
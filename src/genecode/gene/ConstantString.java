@@ -2,6 +2,7 @@ package genecode.gene;
 
 import genecode.Context;
 import genecode.Genome;
+import genecode.Program;
 
 import java.util.Objects;
 
@@ -41,10 +42,11 @@ public class ConstantString
      * {@inheritDoc}
      */
     @Override
-    public final void mutate(final Genome genome,
+    public final Gene mutate(final Genome genome,
                              final double factor)
     {
         // NOP
+        return this;
     }
 
     /**
@@ -56,6 +58,15 @@ public class ConstantString
         return myValue;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public final int compile(final Program.Builder builder)
+    {
+        return builder.constant(myValue);
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -70,7 +81,8 @@ public class ConstantString
      */
     @Override
     protected final String safeEvaluate(final Context context,
-                                        final Genome  genome)
+                                        final Genome  genome,
+                                        final Frame   frame)
     {
         return myValue;
     }
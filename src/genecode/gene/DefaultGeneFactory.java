@@ -47,6 +47,7 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Supplier;
 
 /**
@@ -248,7 +249,9 @@ public class DefaultGeneFactory
     public Gene generate()
     {
         final Supplier<Gene> generator =
-            myGenerators.get((int)(myGenerators.size() * Math.random()));
+            myGenerators.get(
+                ThreadLocalRandom.current().nextInt(myGenerators.size())
+            );
         return generator.get();
     }
 }
@@ -2,6 +2,9 @@ package genecode.gene;
 
 import genecode.Context;
 import genecode.Genome;
+import genecode.Program;
+
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A gene which is just a simple double value.
@@ -28,10 +31,13 @@ public class DoubleValue
      * {@inheritDoc}
      */
     @Override
-    public void mutate(final Genome genome,
+    public Gene mutate(final Genome genome,
                        final double factor)
     {
-        myValue += factor * 2 * (Math.random() - 0.5);
+        final DoubleValue gene = (DoubleValue)clone();
+        gene.myValue +=
+            factor * 2 * (ThreadLocalRandom.current().nextDouble() - 0.5);
+        return gene;
     }
 
     /**
@@ -52,13 +58,22 @@ public class DoubleValue
         return Double.toString(myValue);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compile(final Program.Builder builder)
+    {
+        return builder.constant(myValue);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected void safeInit(final Genome genome)
     {
-        myValue = 2 * (Math.random() - 0.5);
+        myValue = 2 * (ThreadLocalRandom.current().nextDouble() - 0.5);
     }
 
     /**
@@ -66,7 +81,8 @@ public class DoubleValue
      */
     @Override
     protected Object safeEvaluate(final Context context,
-                                  final Genome  genome)
+                                  final Genome  genome,
+                                  final Frame   frame)
     {
         return myValue;
     }
@@ -2,12 +2,17 @@ package genecode.gene;
 
 import genecode.Context;
 import genecode.Genome;
+import genecode.Program;
 import genecode.function.Function;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
 
 /**
  * A gene which wraps a function call directly.
@@ -18,29 +23,30 @@ public class FunctionGene
     // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
     /**
-     * Our function.
+     * The instances which each thread is currently in {@link
+     * #getGraphSize} for.
      */
-    private Function myFunction;
+    private static final ThreadLocal<Set<FunctionGene>> ourInGetGraphSize =
+        ThreadLocal.withInitial(FunctionGene::newIdentitySet);
 
     /**
-     * The genes which we refer to as arguments, by their handles.
+     * The instances which each thread is currently in {@link
+     * #toString(Genome)} for.
      */
-    private List<Gene.Handle> myArgs;
+    private static final ThreadLocal<Set<FunctionGene>> ourInToString =
+        ThreadLocal.withInitial(FunctionGene::newIdentitySet);
 
-    /**
-     * The genes which we refer to as arguments, cached.
-     */
-    private Gene[] myArgGenes;
+    // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
     /**
-     * The genome associated with the cache.
+     * Our function.
      */
-    private Genome myArgGenesGenome;
+    private final Function myFunction;
 
     /**
-     * A place to hold the values which we pass to the function.
+     * The genes which we refer to as arguments, by their slots.
      */
-    private Object[] myValues;
+    private int[] myArgs;
 
     // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
@@ -53,11 +59,8 @@ public class FunctionGene
     {
         super(function.getReturnType());
 
-        myFunction       = function;
-        myArgs           = new ArrayList<>(function.getArgTypes().size());
-        myArgGenes       = null;
-        myArgGenesGenome = null;
-        myValues         = new Object[function.getArgTypes().size()];
+        myFunction = function;
+        myArgs     = new int[function.getArgTypes().size()];
     }
 
     /**
@@ -66,12 +69,14 @@ public class FunctionGene
      * <p>Generally speaking you should not call this method. It's
      * mainly here to facilitate testing.
      *
-     * @param args The arguments to set for this gene.
+     * @param genome The genome which this gene lives in.
+     * @param args   The handles of the arguments to set for this gene.
      *
      * @throws IllegalArgumentException If the args violate the gene's
      *                                  constraints.
      */
-    public void setArgs(final Gene.Handle... args)
+    public void setArgs(final Genome         genome,
+                        final Gene.Handle... args)
         throws IllegalArgumentException
     {
         if (args == null) {
@@ -86,20 +91,33 @@ public class FunctionGene
                 "did not match the expected number, " + argTypes.size()
             );
         }
-        for (Gene.Handle arg : args) {
-            if (arg == null) {
+        final int[] slots = new int[args.length];
+        for (int i=0; i < args.length; i++) {
+            if (args[i] == null) {
                 throw new IllegalArgumentException(
-                    "Args had a null value: " + args
+                    "Args had a null value: " + Arrays.toString(args)
+                );
+            }
+
+            // We check the types here, once, so that the function
+            // doesn't have to every time that it's called
+            slots[i] = genome.slotOf(args[i]);
+            final Gene gene = genome.getInSlot(slots[i]);
+            if (gene != null &&
+                !argTypes.get(i).isAssignableFrom(gene.getReturnType()))
+            {
+                throw new IllegalArgumentException(
+                    "Bad argument #" + i + ", " +
+                    "expected a " + argTypes.get(i) + " " +
+                    "but had a " + gene.getReturnType() + " for " + myFunction
                 );
             }
         }
 
-        // Safe to do
-        flush();
-        myArgs.clear();
-        myArgs.addAll(Arrays.asList(args));
-        myArgGenes       = null;
-        myArgGenesGenome = null;
+        // Safe to do, but anything which was computed with the old
+        // arguments is now stale
+        Frame.current().flush();
+        System.arraycopy(slots, 0, myArgs, 0, slots.length);
     }
 
     /**
@@ -109,7 +127,8 @@ public class FunctionGene
     public int getGraphSize(final Genome genome)
     {
         // Looped?
-        if (myInGetGraphSize) {
+        final Set<FunctionGene> inGetGraphSize = ourInGetGraphSize.get();
+        if (!inGetGraphSize.add(this)) {
             // If we just became re-entrant then there is nothing more
             // to see here. We return 1 since, though we have counted
             // ourselves already, we want to account for the fact that
@@ -119,74 +138,73 @@ public class FunctionGene
             return 1;
         }
 
-        myInGetGraphSize = true;
         try {
             int size = super.getGraphSize(genome);
-            for (int i=0; i < myArgs.size(); i++) {
+            for (int i=0; i < myArgs.length; i++) {
                 final Gene gene = getArg(i, genome);
                 size += (gene == null) ? 1 : gene.getGraphSize(genome);
             }
             return size;
         }
         finally {
-            myInGetGraphSize = false;
+            inGetGraphSize.remove(this);
         }
     }
-    private boolean myInGetGraphSize = false;
 
     /**
      * {@inheritDoc}
      */
-    @Override    
-    public void getGraphHandles(final Genome            genome,
-                                final List<Gene.Handle> dest)
+    @Override
+    public void getGraphSlots(final Genome genome,
+                              final BitSet dest)
     {
-        // Looped?
-        if (myInGetGraphHandles) {
-            // Like getGraphSize() we handle reentrancy by adding this node
-            dest.add(getHandle());
-            return;
-        }
-
-        myInGetGraphHandles = true;
-        try {
-            super.getGraphHandles(genome, dest);
-            for (int i=0; i < myArgs.size(); i++) {
-                final Gene gene = getArg(i, genome);
-                if (gene == null) {
-                    dest.add(myArgs.get(i));
-                }
-                else {
-                    gene.getGraphHandles(genome, dest);
-                }
+        // Cycles are cut off by the set itself
+        for (int slot : myArgs) {
+            final Gene gene = genome.getInSlot(slot);
+            if (gene != null && !dest.get(slot)) {
+                dest.set(slot);
+                gene.getGraphSlots(genome, dest);
             }
         }
-        finally {
-            myInGetGraphHandles = false;
-        }
     }
-    private boolean myInGetGraphHandles = false;
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public void mutate(final Genome genome,
+    public Gene mutate(final Genome genome,
                        final double factor)
     {
         // Possibly change an input
-        if (!myArgs.isEmpty() && Math.random() < factor) {
-            // Pick one an change it
-            final int index = (int)(Math.random() * myArgs.size());
-            myArgs.set(
-                index,
-                genome.pickAnyHandle(
-                    myFunction.getArgTypes().get(index)
-                )
-            );
+        if (myArgs.length > 0 &&
+            ThreadLocalRandom.current().nextDouble() < factor)
+        {
+            // Pick one an change it, in a copy of ourselves
+            final FunctionGene gene  = (FunctionGene)clone();
+            final int          index =
+                ThreadLocalRandom.current().nextInt(myArgs.length);
+            gene.myArgs[index] =
+                genome.pickAnySlot(myFunction.getArgTypes().get(index));
+            return gene;
+        }
+        else {
+            return this;
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public Gene remap(final IntUnaryOperator mapping)
+    {
+        final FunctionGene gene = (FunctionGene)clone();
+        for (int i=0; i < myArgs.length; i++) {
+            gene.myArgs[i] = mapping.applyAsInt(myArgs[i]);
+        }
+        return gene;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -198,13 +216,13 @@ public class FunctionGene
         final StringBuilder sb = new StringBuilder();
         sb.append(myFunction).append("(");
 
-        if (myInToString) {
+        final Set<FunctionGene> inToString = ourInToString.get();
+        if (!inToString.add(this)) {
             sb.append("<LOOPS>");
         }
         else {
-            myInToString = true;
             try {
-                for (int i=0; i < myArgs.size(); i++) {
+                for (int i=0; i < myArgs.length; i++) {
                     if (i > 0) {
                         sb.append(",");
                     }
@@ -219,14 +237,13 @@ public class FunctionGene
                 }
             }
             finally {
-                myInToString = false;
+                inToString.remove(this);
             }
         }
 
         sb.append(')');
         return sb.toString();
     }
-    private boolean myInToString = false;
 
     /**
      * {@inheritDoc}
@@ -246,7 +263,7 @@ public class FunctionGene
         if (!that.myFunction.equals(myFunction)) {
             return false;
         }
-        if (!that.myArgs.equals(myArgs)) {
+        if (!Arrays.equals(that.myArgs, myArgs)) {
             return false;
         }
 
@@ -259,15 +276,25 @@ public class FunctionGene
     @Override
     public Gene clone()
     {
+        // Functions are stateless and so may be shared
         final FunctionGene gene = (FunctionGene)super.clone();
-        gene.myFunction       = myFunction.clone();
-        gene.myArgs           = new ArrayList<>(gene.myArgs);
-        gene.myArgGenes       = null;
-        gene.myArgGenesGenome = null;
-        gene.myValues         = new Object[myValues.length];
+        gene.myArgs = gene.myArgs.clone();
         return gene;
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compile(final Program.Builder builder)
+    {
+        final int[] argSlots = new int[myArgs.length];
+        for (int i=0; i < argSlots.length; i++) {
+            argSlots[i] = builder.add(myArgs[i]);
+        }
+        return builder.call(myFunction, argSlots);
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -277,10 +304,8 @@ public class FunctionGene
     protected void safeInit(final Genome genome)
         throws IllegalStateException
     {
-        for (int i=0; i < myFunction.getArgTypes().size(); i++) {
-            myArgs.add(
-                genome.pickAnyHandle(myFunction.getArgTypes().get(i))
-            );
+        for (int i=0; i < myArgs.length; i++) {
+            myArgs[i] = genome.pickAnySlot(myFunction.getArgTypes().get(i));
         }
     }
 
@@ -289,22 +314,38 @@ public class FunctionGene
      */
     @Override
     protected Object safeEvaluate(final Context context,
-                                  final Genome  genome)
+                                  final Genome  genome,
+                                  final Frame   frame)
     {
-        // Populate the arguments for the functioon
-        for (int i=0; i < myValues.length; i++) {
-            final Gene gene = getArg(i, genome);
-            if (gene == null) {
-                return null;
-            }
-            myValues[i] = gene.evaluate(context, genome);
-            if (myValues[i] == null) {
+        // Populate the arguments for the function. The conditional ones
+        // are evaluated too, even though the function might not need
+        // them: evaluating a gene may break a cycle, and cache the
+        // result in the frame, and so we must walk the graph in the same
+        // order as the compiled program does in order to agree with it.
+        final Object[] values = new Object[myArgs.length];
+        for (int i=0; i < values.length; i++) {
+            values[i] = evaluateArg(i, context, genome, frame);
+            if (values[i] == null && !myFunction.isConditional(i)) {
                 return null;
             }
         }
 
         // Hand off
-        return myFunction.call(myValues);
+        return myFunction.invoke(values);
+    }
+
+    /**
+     * Evaluate the gene argument with the given index.
+     *
+     * @return The value, or {@code null} if there was none.
+     */
+    private Object evaluateArg(final int     index,
+                               final Context context,
+                               final Genome  genome,
+                               final Frame   frame)
+    {
+        final Gene gene = getArg(index, genome);
+        return (gene == null) ? null : gene.evaluate(context, genome, frame);
     }
 
     /**
@@ -319,24 +360,19 @@ public class FunctionGene
     private Gene getArg(final int    index,
                         final Genome genome)
     {
-        if (index < 0 || index >= myArgs.size()) {
+        if (index < 0 || index >= myArgs.length) {
             return null;
         }
         else {
-            // (Re)build the cache?
-            if (myArgGenesGenome != genome) { // pointer compare
-                myArgGenes = null;
-            }
-            if (myArgGenes == null) {
-                myArgGenes = new Gene[myArgs.size()];
-                for (int i=0; i < myArgs.size(); i++) {
-                    myArgGenes[i] = genome.get(myArgs.get(i));
-                }
-                myArgGenesGenome = genome;
-            }
-
-            // Grab from the cache
-            return myArgGenes[index];
+            return genome.getInSlot(myArgs[index]);
         }
     }
+
+    /**
+     * Create a set of instances, compared by identity.
+     */
+    private static Set<FunctionGene> newIdentitySet()
+    {
+        return Collections.newSetFromMap(new IdentityHashMap<>());
+    }
 }
@@ -2,22 +2,32 @@ package genecode.gene;
 
 import genecode.Context;
 import genecode.Genome;
+import genecode.Program;
 
 import java.io.Serializable;
 
-import java.util.List;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Logger;
 
 /**
  * A gene in the genome.
  *
- * <p>It is important that Gene instances are not shared between
- * {@link Genome} instances. As such this class is {@link Cloneable}.
+ * <p>Once a gene has been {@link #init}'d it is immutable, and so may
+ * be shared between {@link Genome} instances, and threads. Mutating a
+ * gene gives back a modified copy of it, which is why this class is
+ * {@link Cloneable}. Anything which needs to be remembered while a
+ * gene is being evaluated lives in a {@link Frame}.
  *
  * <p>Nothing, except the {@link Genome}, should hold a direct
  * reference to any instance of this class, instead one should look up
- * instances via the {@link Handle} instead.
+ * instances via their slot in the genome instead. Each gene also has
+ * a {@link Handle}, which is what identifies it across genomes.
  *
  * <p>Generally speaking, all implementations should be stateless and
  * only require a {@link Context} instance for evaluation.
@@ -29,9 +39,10 @@ public interface Gene
     /**
      * A handle on a gene.
      *
-     * <p>This is essentially an anonymous pointer. However, we use
-     * these so that one Gene may reference another without holding on
-     * to a direct pointer.
+     * <p>This is essentially an anonymous pointer. Genes refer to one
+     * another by their slots in a genome but those are only meaningful
+     * within that genome, and its clones; the handle is what tells us
+     * that genes in different genomes are copies of one another.
      *
      * <p>Note that this is unique to a gene and <i>copies</i> of that
      * gene but <i>not</i> unique to the class of that gene. I.e. two
@@ -45,14 +56,28 @@ public interface Gene
         private static final long serialVersionUID = 782829319877849781L;
 
         /**
-         * Our next handle ID.
+         * How many IDs a thread takes at a time.
          */
-        private static final AtomicLong ourNextId = new AtomicLong();
+        private static final long BLOCK_SIZE = 1L << 16;
+
+        /**
+         * The start of the next free block of IDs.
+         */
+        private static final AtomicLong ourNextBlock = new AtomicLong();
+
+        /**
+         * The next ID for each thread, and the end of its block of IDs.
+         * Threads only go back to {@link #ourNextBlock} once they have
+         * used up their block, so creating genes on many threads does
+         * not contend on it.
+         */
+        private static final ThreadLocal<long[]> ourNextIds =
+            ThreadLocal.withInitial(() -> new long[2]);
 
         /**
          * Our ID.
          */
-        private final long myId = ourNextId.getAndIncrement();
+        private final long myId = nextId();
 
         /**
          * Get the {@link Gene} referenced by this handle in the given
@@ -94,6 +119,200 @@ public interface Gene
         {
             return "Handle[" + myId + "]";
         }
+
+        /**
+         * Allocate a new ID from the calling thread's block.
+         */
+        private static long nextId()
+        {
+            final long[] ids = ourNextIds.get();
+            if (ids[0] == ids[1]) {
+                ids[0] = ourNextBlock.getAndAdd(BLOCK_SIZE);
+                ids[1] = ids[0] + BLOCK_SIZE;
+            }
+            return ids[0]++;
+        }
+    }
+
+    /**
+     * The state of an evaluation of a genome's genes. This is the cached
+     * value of each gene for the current context, which genes are in the
+     * middle of being evaluated, and anything which genes want to
+     * remember from one context to the next.
+     *
+     * <p>Each thread has its own frame, via {@link #current()}. Instances
+     * are not thread-safe.
+     */
+    public static final class Frame
+    {
+        /**
+         * Each thread's frame.
+         */
+        private static final ThreadLocal<Frame> ourFrames =
+            ThreadLocal.withInitial(Frame::new);
+
+        /**
+         * The version of the genome which we are evaluating, if any; see
+         * {@link Genome#getVersion()}.
+         */
+        private long myVersion;
+
+        /**
+         * The ID of the context which we are evaluating in.
+         */
+        private long myContextId;
+
+        /**
+         * The values of the genes in the current context, by handle.
+         */
+        private final Map<Handle,Object> myValues;
+
+        /**
+         * The genes which are currently being evaluated, by handle.
+         */
+        private final Set<Handle> myEvaluating;
+
+        /**
+         * What the genes have remembered from previous contexts, by
+         * handle.
+         */
+        private final Map<Handle,Object> myRemembered;
+
+        /**
+         * Get the calling thread's frame.
+         *
+         * @return The frame.
+         */
+        public static Frame current()
+        {
+            return ourFrames.get();
+        }
+
+        /**
+         * CTOR.
+         */
+        public Frame()
+        {
+            myVersion    = -1;
+            myContextId  = -1;
+            myValues     = new HashMap<>();
+            myEvaluating = new HashSet<>();
+            myRemembered = new HashMap<>();
+        }
+
+        /**
+         * Note that we are evaluating in the given context, for the
+         * given genome. If either has changed then the cached values are
+         * forgotten; if the genome has changed then so is everything
+         * which was remembered. A genome which has been modified since
+         * it was last evaluated counts as having changed.
+         *
+         * @param context The context being evaluated in.
+         * @param genome  The genome being evaluated.
+         */
+        public void enter(final Context context, final Genome genome)
+        {
+            if (genome.getVersion() != myVersion) {
+                myVersion = genome.getVersion();
+                myValues    .clear();
+                myRemembered.clear();
+                myContextId = context.getId();
+            }
+            else if (context.getId() != myContextId) {
+                myValues.clear();
+                myContextId = context.getId();
+            }
+        }
+
+        /**
+         * Forget all the cached values.
+         */
+        public void flush()
+        {
+            myValues.clear();
+        }
+
+        /**
+         * Whether we have a value for the given gene in the current
+         * context.
+         *
+         * @param handle The handle of the gene.
+         *
+         * @return Whether it has a value, which may be {@code null}.
+         */
+        public boolean hasValue(final Handle handle)
+        {
+            return myValues.containsKey(handle);
+        }
+
+        /**
+         * Get the value of the given gene in the current context.
+         *
+         * @param handle The handle of the gene.
+         *
+         * @return The value, if any.
+         */
+        public Object getValue(final Handle handle)
+        {
+            return myValues.get(handle);
+        }
+
+        /**
+         * Set the value of the given gene in the current context.
+         *
+         * @param handle The handle of the gene.
+         * @param value  The value.
+         */
+        public void setValue(final Handle handle, final Object value)
+        {
+            myValues.put(handle, value);
+        }
+
+        /**
+         * Note that the given gene has started being evaluated.
+         *
+         * @param handle The handle of the gene.
+         *
+         * @return Whether it was not already being evaluated.
+         */
+        public boolean startEvaluating(final Handle handle)
+        {
+            return myEvaluating.add(handle);
+        }
+
+        /**
+         * Note that the given gene has finished being evaluated.
+         *
+         * @param handle The handle of the gene.
+         */
+        public void finishEvaluating(final Handle handle)
+        {
+            myEvaluating.remove(handle);
+        }
+
+        /**
+         * Get what the given gene remembered in a previous context.
+         *
+         * @param handle The handle of the gene.
+         *
+         * @return The remembered value, if any.
+         */
+        public Object getRemembered(final Handle handle)
+        {
+            return myRemembered.get(handle);
+        }
+
+        /**
+         * Set what the given gene should remember for subsequent
+         * contexts.
+         *
+         * @param handle The handle of the gene.
+         * @param value  The value to remember.
+         */
+        public void setRemembered(final Handle handle, final Object value)
+        {
+            myRemembered.put(handle, value);
+        }
     }
 
     // ----------------------------------------------------------------------
@@ -133,13 +352,15 @@ public interface Gene
     public int getGraphSize(final Genome genome);
 
     /**
-     * Get the list of handles in the graph.
+     * Add the slots of all the genes which this one refers to, and which
+     * they refer to in turn, to the given set. Slots which are already
+     * in the set, or which are empty, are not followed.
      *
-     * @param genome The genome to use for determining representations.
-     * @param dest   The list to accumulate into.
+     * @param genome The genome which this gene lives in.
+     * @param dest   The set to accumulate into.
      */
-    public void getGraphHandles(final Genome            genome,
-                                final List<Gene.Handle> dest);
+    public void getGraphSlots(final Genome genome,
+                              final BitSet dest);
 
     /**
      * Get the return type of this gene.
@@ -149,7 +370,7 @@ public interface Gene
     public Class<?> getReturnType();
 
     /**
-     * Evaluate the gene.
+     * Evaluate the gene, using the calling thread's {@link Frame}.
      *
      * @param context The context in which we are mutating.
      * @param genome  The genome of which we are a part.
@@ -163,14 +384,56 @@ public interface Gene
         throws IllegalStateException;
 
     /**
-     * Mutate the gene.
+     * Evaluate the gene.
+     *
+     * @param context The context in which we are mutating.
+     * @param genome  The genome of which we are a part.
+     * @param frame   The frame to evaluate with.
+     *
+     * @return {@code null} if the gene could not be evaluated.
+     *
+     * @throws IllegalStateException If this is called before {@code init()}.
+     */
+    public Object evaluate(final Context context,
+                           final Genome  genome,
+                           final Frame   frame)
+        throws IllegalStateException;
+
+    /**
+     * Compile the gene into the given program builder, adding the
+     * instructions needed to compute its value. The genes which this
+     * one depends on should be added via {@link Program.Builder#add}.
+     *
+     * @param builder The builder to add to.
+     *
+     * @return The slot which will hold the gene's value.
+     */
+    public int compile(final Program.Builder builder);
+
+    /**
+     * Mutate the gene. Since genes are immutable this gives back a
+     * mutated copy, which will have the same handle.
      *
      * @param genome  The genome which this gene lives inside.
      * @param factor  The mutation factor, between 0 and 1.
+     *
+     * @return The mutated gene, or this one if it did not change.
      */
-    public void mutate(final Genome genome,
+    public Gene mutate(final Genome genome,
                        final double factor);
 
+    /**
+     * Renumber the slots of the genes which this one refers to. This is
+     * how genes are moved from one genome to another.
+     *
+     * @param mapping The mapping from old slots to new ones, where
+     *                {@code -1} means that the gene is missing.
+     *
+     * @return The renumbered gene, or this one if it refers to no
+     *         others.
+     */
+    public Gene remap(final IntUnaryOperator mapping);
+
     /**
      * Get the string representation of this gene, using the given
      * genome for reference.
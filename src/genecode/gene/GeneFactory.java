@@ -1,5 +1,8 @@
 package genecode.gene;
 
+import genecode.Context;
+import genecode.Context.Identifier;
+
 import java.util.Collection;
 import java.util.function.Supplier;
 
@@ -24,4 +27,19 @@ public interface GeneFactory
      * @return The generated gene.
      */
     public Gene generate();
+
+    /**
+     * Get the slot which the given identifier is bound to, in the
+     * contexts which the generated genes will be evaluated in; see
+     * {@link Context#access(int,Identifier)}. Genes which access values
+     * bind themselves to this when they are init()'d.
+     *
+     * @param identifier The identifier to look for.
+     *
+     * @return The slot, or {@code -1} if the identifier isn't bound.
+     */
+    public default int slotOf(final Identifier<?> identifier)
+    {
+        return -1;
+    }
 }
@@ -2,6 +2,9 @@ package genecode.gene;
 
 import genecode.Context;
 import genecode.Genome;
+import genecode.Program;
+
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
  * A gene which is just a simple long value.
@@ -28,10 +31,18 @@ public class LongValue
      * {@inheritDoc}
      */
     @Override
-    public void mutate(final Genome genome,
+    public Gene mutate(final Genome genome,
                        final double factor)
     {
-        myValue += (long)(factor * 20 * (Math.random() - 0.5));
+        final double random = ThreadLocalRandom.current().nextDouble();
+        final long   delta  = (long)(factor * 20 * (random - 0.5));
+        if (delta == 0) {
+            return this;
+        }
+
+        final LongValue gene = (LongValue)clone();
+        gene.myValue += delta;
+        return gene;
     }
 
     /**
@@ -52,13 +63,22 @@ public class LongValue
         return Long.toString(myValue);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int compile(final Program.Builder builder)
+    {
+        return builder.constant(myValue);
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     protected void safeInit(final Genome genome)
     {
-        myValue = (long)(20 * (Math.random() - 0.5));
+        myValue = (long)(20 * (ThreadLocalRandom.current().nextDouble() - 0.5));
     }
 
     /**
@@ -66,7 +86,8 @@ public class LongValue
      */
     @Override
     protected Object safeEvaluate(final Context context,
-                                  final Genome  genome)
+                                  final Genome  genome,
+                                  final Frame   frame)
     {
         return myValue;
     }
@@ -3,7 +3,11 @@ package genecode.gene;
 import genecode.Context;
 import genecode.Genome;
 
-import java.util.Objects;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntUnaryOperator;
 
 /**
  * A gene which remembers things from another gene.
@@ -11,30 +15,27 @@ import java.util.Objects;
  * <p>This gene will persist a value for a single context instance,
  * giving back the value from the previous context instance when
  * evaluated. Chaining instances will effectively create a delay
- * buffer.
+ * buffer. The remembered value is held in the evaluation's {@link
+ * Gene.Frame}.
  */
 public class MemoryGene
     extends AbstractGene
 {
     /**
-     * The gene from which we copy values.
+     * The instances which each thread is currently in {@link
+     * #getGraphSize} for.
      */
-    private Gene.Handle mySource;
+    private static final ThreadLocal<Set<MemoryGene>> ourInGetGraphSize =
+        ThreadLocal.withInitial(
+            () -> Collections.newSetFromMap(new IdentityHashMap<>())
+        );
 
-    /**
-     * Cached gene instance.
-     */
-    private Gene mySourceGene;
+    // - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - - -
 
     /**
-     * The genome from which the cached gene was retrieved.
+     * The slot of the gene from which we copy values.
      */
-    private Genome mySourceGenome;
-
-    /**
-     * The value which we have remembered.
-     */
-    private Object myValue;
+    private int mySource;
 
     /**
      * CTOR.
@@ -44,10 +45,7 @@ public class MemoryGene
     public MemoryGene(final Class<?> returnType)
     {
         super(returnType);
-        mySource       = null;
-        mySourceGene   = null;
-        mySourceGenome = null;
-        myValue        = null;
+        mySource = -1;
     }
 
     /**
@@ -56,9 +54,7 @@ public class MemoryGene
     public void setSource(final Genome      genome,
                           final Gene.Handle source)
     {
-        mySource       = source;
-        mySourceGene   = genome.get(source);
-        mySourceGenome = genome;
+        mySource = genome.slotOf(source);
     }
 
     /**
@@ -67,20 +63,37 @@ public class MemoryGene
     @Override
     public int getGraphSize(final Genome genome)
     {
+        // Looped? We may pull from ourselves, directly or via other
+        // memory genes, in which case we've already been counted.
+        final Set<MemoryGene> inGetGraphSize = ourInGetGraphSize.get();
+        if (!inGetGraphSize.add(this)) {
+            return 0;
+        }
+
         // Us, plus whatever we pull from
-        final Gene gene = getGene(genome);
-        return 1 + (gene == null ? 0 : gene.getGraphSize(genome));
+        try {
+            final Gene gene = getGene(genome);
+            return 1 + (gene == null ? 0 : gene.getGraphSize(genome));
+        }
+        finally {
+            inGetGraphSize.remove(this);
+        }
     }
 
     /**
      * {@inheritDoc}
      */
     @Override
-    public final void mutate(final Genome genome,
+    public final Gene mutate(final Genome genome,
                              final double factor)
     {
-        if (Math.random() < factor) {
-            mySource = genome.pickAnyHandle(getReturnType());
+        if (ThreadLocalRandom.current().nextDouble() < factor) {
+            final MemoryGene gene = (MemoryGene)clone();
+            gene.mySource = genome.pickAnySlot(getReturnType());
+            return gene;
+        }
+        else {
+            return this;
         }
     }
 
@@ -88,25 +101,10 @@ public class MemoryGene
      * {@inheritDoc}
      */
     @Override
-    public final String toString(final Genome genome)
-    {
-        final Gene gene = getGene(genome);
-        return "MemoryGene[" +
-            (gene == null ? "null" : gene.toString(genome)) + "->" + myValue +
-        ']';
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public Gene clone()
+    public Gene remap(final IntUnaryOperator mapping)
     {
-        final MemoryGene gene = (MemoryGene)super.clone();
-        // mySource is safe to copy
-        gene.mySourceGene   = null;
-        gene.mySourceGenome = null;
-        gene.myValue        = null;
+        final MemoryGene gene = (MemoryGene)clone();
+        gene.mySource = mapping.applyAsInt(mySource);
         return gene;
     }
 
@@ -114,12 +112,12 @@ public class MemoryGene
      * {@inheritDoc}
      */
     @Override
-    protected void flush()
+    public final String toString(final Genome genome)
     {
-        super.flush();
-        mySourceGene   = null;
-        mySourceGenome = null;
-        myValue        = null;
+        final Gene gene = getGene(genome);
+        return "MemoryGene[" +
+            (gene == null ? "null" : gene.toString(genome)) +
+        ']';
     }
 
     /**
@@ -128,10 +126,7 @@ public class MemoryGene
     @Override
     protected final void safeInit(final Genome genome)
     {
-        mySource       = genome.pickAnyHandle(getReturnType());
-        mySourceGene   = null;
-        mySourceGenome = null;
-        myValue        = null;
+        mySource = genome.pickAnySlot(getReturnType());
     }
 
     /**
@@ -139,7 +134,8 @@ public class MemoryGene
      */
     @Override
     protected final Object safeEvaluate(final Context context,
-                                        final Genome  genome)
+                                        final Genome  genome,
+                                        final Frame   frame)
     {
         // This method relies on the AbstractGene's caching logic to
         // ensure that it is only called for a new context instance
@@ -149,11 +145,14 @@ public class MemoryGene
 
         // What we'll hand back; pulled from last time we saved the
         // value
-        final Object result = myValue;
+        final Object result = frame.getRemembered(getHandle());
 
         // Get the new value to remember
         final Gene gene = getGene(genome);
-        myValue = (gene == null) ? null : gene.evaluate(context, genome);
+        frame.setRemembered(
+            getHandle(),
+            (gene == null) ? null : gene.evaluate(context, genome, frame)
+        );
 
         // And give back the old value
         return result;
@@ -165,7 +164,7 @@ public class MemoryGene
     @Override
     public final String toString()
     {
-        return super.toString() + '[' + mySource + "->" + myValue + ']';
+        return super.toString() + '[' + mySource + ']';
     }
 
     /**
@@ -183,7 +182,7 @@ public class MemoryGene
         }
 
         final MemoryGene that = (MemoryGene)o;
-        return Objects.equals(this.mySource, that.mySource);
+        return this.mySource == that.mySource;
     }
 
     /**
@@ -191,14 +190,6 @@ public class MemoryGene
      */
     private Gene getGene(final Genome genome)
     {
-        // See if the cached version is still valid
-        if (genome != mySourceGenome) { // <- Pointer compare
-            // Look for it again
-            mySourceGene   = genome.get(mySource);
-            mySourceGenome = genome;
-        }
-
-        // Safe to hand back
-        return mySourceGene;
+        return genome.getInSlot(mySource);
     }
 }
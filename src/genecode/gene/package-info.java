@@ -20,15 +20,18 @@
  * <p>Each gene instance has an associated {@link
  * genecode.gene.Gene.Handle}; this handle remains the same when that
  * gene is cloned, even though there is now a second copy of the gene
- * itself. As such, the gene for a single handle may be copied into a
+ * itself. Genes are immutable once they are in a genome, so they may
+ * be freely shared between genomes; mutating a gene gives back a new
+ * copy of it, with the same handle. As such, the gene for a single handle may be copied into a
  * new genome, get mutated, and later be copied back into another
  * child of the original genome (overwriting that child's copy) via
  * recombination.</p>
  *
  * <p>A single gene instance, like a {@link
  * genecode.gene.FunctionGene}, does not directly refer to another
- * instance but instead uses the handle to look up the required gene
- * from the genome. As such, it is possible for one gene to refer to
+ * instance but instead uses the required gene's slot to look it up
+ * from the genome; slots are renumbered when genes are copied between
+ * unrelated genomes. As such, it is possible for one gene to refer to
  * another one which is no longer in the genome, thus rendering it
  * unable to compute. Any gene which can't compute will yield a
  * "missing" value ({@link java.lang.Double#NaN}). It is also possible
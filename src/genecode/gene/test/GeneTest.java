@@ -115,7 +115,7 @@ public class GeneTest
         // And create the genome
         myGenome =
             new Genome(
-                () -> null, // Unused
+                () -> new ConstantDouble(1),
                 Arrays.asList(
                     Double.class
                 ),
@@ -171,12 +171,31 @@ public class GeneTest
         assertEquals(myAccessor.evaluate(myContext, myGenome), -12345.0);
     }
 
+    /**
+     * Test that mutating a gene leaves the original untouched.
+     */
+    public void testMutate()
+    {
+        myAdd.setArgs(myGenome,
+                      myDoubleFive    .getHandle(),
+                      myDoubleMinusTwo.getHandle());
+        final String before = myAdd.toString(myGenome);
+        for (int i=0; i < 100; i++) {
+            final Gene mutated = myAdd.mutate(myGenome, 1.0);
+            assertNotSame(myAdd, mutated);
+            assertEquals(myAdd.getHandle(), mutated.getHandle());
+        }
+        assertEquals(before, myAdd.toString(myGenome));
+        assertEquals(3.0, myAdd.evaluate(myContext, myGenome));
+    }
+
     /**
      * Test simple arithmetic.
      */
     public void testArithmetic()
     {
-        myAdd.setArgs(myDoubleFive    .getHandle(),
+        myAdd.setArgs(myGenome,
+                      myDoubleFive    .getHandle(),
                       myDoubleMinusTwo.getHandle());
         assertEquals(myAdd                   .evaluate(myContext, myGenome),
                      (Double)myDoubleFive    .evaluate(myContext, myGenome) +
@@ -188,7 +207,8 @@ public class GeneTest
      */
     public void testString()
     {
-        myStringConcat.setArgs(myStringHello.getHandle(),
+        myStringConcat.setArgs(myGenome,
+                               myStringHello.getHandle(),
                                myStringWorld.getHandle());
         assertEquals(myStringConcat       .evaluate(myContext, myGenome),
                      (String)myStringHello.evaluate(myContext, myGenome) +
@@ -200,22 +220,26 @@ public class GeneTest
      */
     public void testLogic()
     {
-        myXor.setArgs(myBooleanTrue.getHandle(),
+        myXor.setArgs(myGenome,
+                      myBooleanTrue.getHandle(),
                       myBooleanTrue.getHandle());
         assertEquals(myXor         .evaluate(myContext, myGenome),
                      myBooleanFalse.evaluate(myContext, myGenome));
 
-        myXor.setArgs(myBooleanTrue .getHandle(),
+        myXor.setArgs(myGenome,
+                      myBooleanTrue .getHandle(),
                       myBooleanFalse.getHandle());
         assertEquals(myXor        .evaluate(myContext, myGenome),
                      myBooleanTrue.evaluate(myContext, myGenome));
 
-        myXor.setArgs(myBooleanFalse.getHandle(),
+        myXor.setArgs(myGenome,
+                      myBooleanFalse.getHandle(),
                       myBooleanTrue .getHandle());
         assertEquals(myXor        .evaluate(myContext, myGenome),
                      myBooleanTrue.evaluate(myContext, myGenome));
 
-        myXor.setArgs(myBooleanFalse.getHandle(),
+        myXor.setArgs(myGenome,
+                      myBooleanFalse.getHandle(),
                       myBooleanFalse.getHandle());
         assertEquals(myXor         .evaluate(myContext, myGenome),
                      myBooleanFalse.evaluate(myContext, myGenome));
@@ -255,6 +279,47 @@ public class GeneTest
                      myDoubleFive.evaluate(context1, myGenome));
     }
 
+    /**
+     * Test that a genome forgets what its genes remembered once it has
+     * been modified.
+     */
+    public void testMemoryForgotten()
+    {
+        final Context context0 =
+            new Context() {
+                @Override public long getId() { return 0; }
+                @Override public Object access(Identifier<?> id) { return null; }
+            };
+        final Context context1 =
+            new Context() {
+                @Override public long getId() { return 1; }
+                @Override public Object access(Identifier<?> id) { return null; }
+            };
+
+        // Remember the 2 and then change the genome, which has a new
+        // version thereafter; a mutation may not change anything
+        myMemoryGene.setSource(myGenome, myDoubleTwo.getHandle());
+        assertEquals(myMemoryGene.evaluate(context0, myGenome),
+                     null);
+        final long version = myGenome.getVersion();
+        while (myGenome.getVersion() == version) {
+            myGenome.mutate();
+        }
+
+        // So nothing should have been remembered
+        assertEquals(myMemoryGene.evaluate(context1, myGenome),
+                     null);
+    }
+
+    /**
+     * Test that a memory gene which remembers itself has a size.
+     */
+    public void testMemoryLoop()
+    {
+        myMemoryGene.setSource(myGenome, myMemoryGene.getHandle());
+        assertEquals(1, myMemoryGene.getGraphSize(myGenome));
+    }
+
     /**
      * Test marshalling.
      *
@@ -0,0 +1,155 @@
+package genecode.test;
+
+import genecode.ChunkedList;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the copy-on-write list which genomes hold their genes in.
+ */
+public class ChunkedListTest
+    extends TestCase
+{
+    /**
+     * Create a list of the given number of integers, counting up from
+     * zero. This spans several chunks.
+     */
+    private static ChunkedList<Integer> list(final int size)
+    {
+        final ChunkedList<Integer> list = new ChunkedList<>();
+        for (int i=0; i < size; i++) {
+            list.add(i);
+        }
+        return list;
+    }
+
+    /**
+     * Check that a list holds the given elements, in order.
+     */
+    private static void assertElements(final ChunkedList<Integer> list,
+                                       final int...               elements)
+    {
+        assertEquals(elements.length, list.size());
+        for (int i=0; i < elements.length; i++) {
+            assertEquals(Integer.valueOf(elements[i]), list.get(i));
+        }
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Test adding, getting and setting.
+     */
+    public void testSimple()
+    {
+        final ChunkedList<Integer> list = new ChunkedList<>();
+        assertTrue(list.isEmpty());
+        assertEquals(-1, list.indexOf(0));
+
+        for (int i=0; i < 100; i++) {
+            list.add(i);
+            assertEquals(i + 1, list.size());
+        }
+        for (int i=0; i < 100; i++) {
+            assertEquals(Integer.valueOf(i), list.get(i));
+            assertEquals(i, list.indexOf(i));
+        }
+        list.set(70, -70);
+        assertEquals(Integer.valueOf(-70), list.get(70));
+        assertEquals(-1, list.indexOf(70));
+
+        for (int index : new int[] { -1, 100 }) {
+            try {
+                list.get(index);
+                fail("Got at " + index);
+            }
+            catch (IndexOutOfBoundsException e) {
+                // Good
+            }
+            try {
+                list.set(index, 0);
+                fail("Set at " + index);
+            }
+            catch (IndexOutOfBoundsException e) {
+                // Good
+            }
+        }
+    }
+
+    /**
+     * Test that removing an element moves the last one into its place.
+     */
+    public void testRemove()
+    {
+        final ChunkedList<Integer> list = list(5);
+        assertEquals(Integer.valueOf(1), list.remove(1));
+        assertElements(list, 0, 4, 2, 3);
+        assertEquals(Integer.valueOf(3), list.remove(3));
+        assertElements(list, 0, 4, 2);
+        assertEquals(Integer.valueOf(0), list.remove(0));
+        assertElements(list, 2, 4);
+        list.remove(0);
+        list.remove(0);
+        assertTrue(list.isEmpty());
+        try {
+            list.remove(0);
+            fail("Removed from an empty list");
+        }
+        catch (IndexOutOfBoundsException e) {
+            // Good
+        }
+
+        // And across chunks, where the list may be added to again after
+        final ChunkedList<Integer> big = list(100);
+        assertEquals(Integer.valueOf(3), big.remove(3));
+        assertEquals(99, big.size());
+        assertEquals(Integer.valueOf(99), big.get(3));
+        assertEquals(Integer.valueOf(98), big.get(98));
+        big.add(100);
+        assertEquals(Integer.valueOf(100), big.get(99));
+    }
+
+    /**
+     * Test that changing a copy of a list doesn't change the original,
+     * and the other way around.
+     */
+    public void testCopy()
+    {
+        final ChunkedList<Integer> original = list(100);
+        final ChunkedList<Integer> copy     = original.copy();
+        for (int i=0; i < 100; i++) {
+            assertEquals(original.get(i), copy.get(i));
+        }
+
+        // The copy writing to a shared chunk
+        copy.set(5, -5);
+        assertEquals(Integer.valueOf(-5), copy    .get(5));
+        assertEquals(Integer.valueOf( 5), original.get(5));
+
+        // And the original writing to one
+        original.set(40, -40);
+        assertEquals(Integer.valueOf(-40), original.get(40));
+        assertEquals(Integer.valueOf( 40), copy    .get(40));
+
+        // Removing writes to two chunks, and adding to the last one
+        original.remove(10);
+        original.add(-1);
+        copy.add(-2);
+        assertEquals(Integer.valueOf(99), original.get(10));
+        assertEquals(Integer.valueOf(10), copy    .get(10));
+        assertEquals(Integer.valueOf(-1), original.get(99));
+        assertEquals(Integer.valueOf(99), copy    .get(99));
+        assertEquals(Integer.valueOf(-2), copy    .get(100));
+        assertEquals(100, original.size());
+        assertEquals(101, copy    .size());
+
+        // Copying a copy, after each of them has made their own chunks
+        final ChunkedList<Integer> again = copy.copy();
+        again.set(5, 5);
+        copy .set(6, -6);
+        assertEquals(Integer.valueOf(-5), copy .get(5));
+        assertEquals(Integer.valueOf( 5), again.get(5));
+        assertEquals(Integer.valueOf( 6), again.get(6));
+        assertEquals(Integer.valueOf( 6), original.get(6));
+    }
+}
@@ -0,0 +1,179 @@
+package genecode.test;
+
+import genecode.Biome;
+import genecode.Dataset;
+import genecode.Genome;
+import genecode.Solver;
+import genecode.Solver.SolverContext;
+import genecode.function.Column;
+import genecode.gene.GeneFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+/**
+ * Test datasets, and solving over their rows.
+ */
+public class DatasetTest
+    extends TestCase
+{
+    /**
+     * Write a CSV file and convert it to a dataset.
+     */
+    private static Dataset convert(final String csv)
+        throws IOException
+    {
+        final Path in  = Files.createTempFile("dataset", ".csv");
+        final Path out = Files.createTempFile("dataset", ".gcds");
+        in .toFile().deleteOnExit();
+        out.toFile().deleteOnExit();
+
+        Files.write(in, csv.getBytes(StandardCharsets.UTF_8));
+        Dataset.fromCsv(in, out);
+        return Dataset.open(out);
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Test that a CSV file survives being converted.
+     */
+    public void testRoundTrip()
+        throws IOException
+    {
+        final Dataset dataset =
+            convert("n,x,b,s\n"                +
+                    "1,1.5,true,plain\n"       +
+                    "2,,false,\"with, comma\"\n" +
+                    ",-3,,\"say \"\"hi\"\"\"\n");
+
+        assertEquals(3, dataset.size());
+        assertEquals(4, dataset.numColumns());
+        assertEquals(2, dataset.indexOf("b"));
+        assertEquals(-1, dataset.indexOf("nope"));
+
+        assertEquals(Long   .class, dataset.getType(0));
+        assertEquals(Double .class, dataset.getType(1));
+        assertEquals(Boolean.class, dataset.getType(2));
+        assertEquals(String .class, dataset.getType(3));
+
+        assertEquals(1L,             dataset.get(0, 0));
+        assertNull  (                dataset.get(0, 2));
+        assertEquals(1.5,            dataset.get(1, 0));
+        assertNull  (                dataset.get(1, 1));
+        assertEquals(-3.0,           dataset.get(1, 2));
+        assertEquals(Boolean.FALSE,  dataset.get(2, 1));
+        assertNull  (                dataset.get(2, 2));
+        assertEquals("with, comma",  dataset.get(3, 1));
+        assertEquals("say \"hi\"",   dataset.get(3, 2));
+
+        // Columns of part of the rows should agree with the values
+        for (int c=0; c < dataset.numColumns(); c++) {
+            final Column column = dataset.column(c, 1, 2);
+            assertEquals(2, column.size());
+            for (int r=0; r < column.size(); r++) {
+                assertEquals(dataset.get(c, r + 1) == null,
+                             column.isMissing(r));
+                if (!column.isMissing(r)) {
+                    assertEquals(dataset.get(c, r + 1), column.get(r));
+                }
+            }
+        }
+    }
+
+    /**
+     * Test that blank lines are skipped, wherever they are.
+     */
+    public void testBlankLines()
+        throws IOException
+    {
+        for (String csv : new String[] {
+                 "n,s\n1,a\n2,b\n\n",
+                 "\nn,s\n\n1,a\r\n\r\n2,b\n\n\n",
+                 "n,s\r\n1,a\r\n2,b\r\n\r\n",
+             })
+        {
+            final Dataset dataset = convert(csv);
+            assertEquals(csv, 2, dataset.size());
+            assertEquals(csv, 2, dataset.numColumns());
+            assertEquals(csv, "s", dataset.getName(1));
+            assertEquals(csv, 2L,  dataset.get(0, 1));
+            assertEquals(csv, "b", dataset.get(1, 1));
+        }
+
+        // But a quoted empty field is a record
+        final Dataset dataset = convert("s\na\n\"\"\nb\n");
+        assertEquals(3, dataset.size());
+        assertNull(dataset.get(0, 1));
+    }
+
+    /**
+     * Test that files which are not whole datasets are rejected.
+     */
+    public void testTruncated()
+        throws IOException
+    {
+        final Path in  = Files.createTempFile("dataset", ".csv");
+        final Path out = Files.createTempFile("dataset", ".gcds");
+        in .toFile().deleteOnExit();
+        out.toFile().deleteOnExit();
+        Files.write(in, "long_column_name,another\n1,2\n".getBytes(StandardCharsets.UTF_8));
+        Dataset.fromCsv(in, out);
+        final byte[] bytes = Files.readAllBytes(out);
+
+        // Cut off in the fixed part of the header, in the columns' part,
+        // and in the data
+        for (int length : new int[] { 0, 10, 25, 40, bytes.length - 1 }) {
+            Files.write(out, Arrays.copyOf(bytes, length));
+            try {
+                Dataset.open(out);
+                fail("Opened a dataset cut to " + length + " bytes");
+            }
+            catch (IOException e) {
+                // Good
+            }
+        }
+    }
+
+    /**
+     * Test that we can solve over the rows of a dataset.
+     */
+    public void testSolve()
+        throws IOException
+    {
+        final StringBuilder csv = new StringBuilder("x,y\n");
+        for (int i=0; i < 2000; i++) {
+            csv.append(i).append(',').append(2.0 * i + 1).append('\n');
+        }
+        final Dataset dataset = convert(csv.toString());
+
+        try {
+            new Solver(dataset, "z", new SolverContext(),
+                       0.5, 1.0, GeneFactory.SUPPLIERS, 1, 10);
+            fail("Solved for a column which does not exist");
+        }
+        catch (IllegalArgumentException e) {
+            // Good
+        }
+
+        final Solver solver =
+            new Solver(dataset, "y", new SolverContext(),
+                       0.5, 1.0, GeneFactory.SUPPLIERS, 1, 20);
+        for (int i=0; i < 3; i++) {
+            solver.step(3, 0.01);
+        }
+        for (Biome biome : solver.getBiomes()) {
+            for (Genome genome : biome.getGenomes()) {
+                final double health = solver.healthOf(genome);
+                assertTrue(String.valueOf(health),
+                           Double.isNaN(health) || health <= 1.0);
+            }
+        }
+    }
+}
@@ -0,0 +1,509 @@
+package genecode.test;
+
+import genecode.Batch;
+import genecode.Context;
+import genecode.Context.Identifier;
+import genecode.Genome;
+import genecode.Program;
+import genecode.gene.Accessor;
+import genecode.gene.ConstantDouble;
+import genecode.gene.DefaultGeneFactory;
+import genecode.gene.FunctionGene;
+import genecode.gene.Gene;
+import genecode.gene.GeneFactory;
+import genecode.gene.MemoryGene;
+import genecode.function.Add;
+import genecode.function.Column;
+import genecode.function.Div;
+import genecode.function.Function;
+import genecode.function.Mult;
+import genecode.function.NumberCast;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the compiled form of genomes.
+ */
+public class ProgramTest
+    extends TestCase
+{
+    /**
+     * The identifier which the contexts provide.
+     */
+    private static final Identifier<Double> X =
+        new Identifier<>("x", Double.class);
+
+    /**
+     * A context which gives back a value for {@link #X}.
+     */
+    private static class XContext
+        extends Context
+    {
+        private final long   myId;
+        private final Double myX;
+
+        public XContext(final long id, final double x)
+        {
+            myId = id;
+            myX  = x;
+        }
+
+        @Override
+        public long getId()
+        {
+            return myId;
+        }
+
+        @Override
+        public Object access(final Identifier<?> id)
+        {
+            return X.equals(id) ? myX : null;
+        }
+    }
+
+    /**
+     * A batch of {@link XContext}s, with consecutive values for {@link #X}.
+     */
+    private static class XBatch
+        extends Batch
+    {
+        private final int myStart;
+        private final int mySize;
+
+        public XBatch(final int start, final int size)
+        {
+            myStart = start;
+            mySize  = size;
+        }
+
+        @Override
+        public int size()
+        {
+            return mySize;
+        }
+
+        @Override
+        public Context get(final int row)
+        {
+            return new XContext(row, myStart + row);
+        }
+    }
+
+    /**
+     * An {@link XBatch} which caches every column it's given.
+     */
+    private static class CachingBatch
+        extends XBatch
+    {
+        private final Map<Object,Column> myCache = new HashMap<>();
+        private int myHits = 0;
+
+        public CachingBatch(final int start, final int size)
+        {
+            super(start, size);
+        }
+
+        @Override
+        public Column getCached(final Object key)
+        {
+            final Column column = myCache.get(key);
+            if (column != null) {
+                myHits++;
+            }
+            return column;
+        }
+
+        @Override
+        public void putCached(final Object key, final Column column)
+        {
+            myCache.put(key, column);
+        }
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Test that a simple genome compiles to what we expect.
+     */
+    public void testSimple()
+    {
+        // x * (x + 1)
+        final Accessor<Double> x    = new Accessor<>(X);
+        final ConstantDouble   one  = new ConstantDouble(1);
+        final FunctionGene     add  = new FunctionGene(new Add (Double.class));
+        final FunctionGene     mult = new FunctionGene(new Mult(Double.class));
+        final Genome genome =
+            new Genome(() -> null,
+                       Arrays.asList(Double.class),
+                       Arrays.asList(x, one, add, mult));
+        add .setArgs(genome, x.getHandle(), one.getHandle());
+        mult.setArgs(genome, x.getHandle(), add.getHandle());
+
+        // The arithmetic should all be unboxed
+        final Program program = Program.compile(genome);
+        if (genome.getOutputHandle(0).equals(mult.getHandle())) {
+            assertTrue(program.toString(),
+                       program.toString().contains("DOUBLE_BINARY"));
+            assertFalse(program.toString(),
+                        program.toString().contains("CALL"));
+        }
+
+        final Program.Frame frame = program.newFrame();
+        for (int i = -5; i <= 5; i++) {
+            program.evaluate(new XContext(i, i), frame);
+            final Object value = frame.getOutput(0);
+            if (genome.getOutputHandle(0).equals(mult.getHandle())) {
+                assertEquals(Double.valueOf(i * (i + 1.0)), value);
+            }
+            assertEquals(genome.evaluate(new XContext(i, i), 0), value);
+        }
+    }
+
+    /**
+     * Test that a simple genome computes the right columns over a batch.
+     */
+    public void testBatch()
+    {
+        // x * (x + 1)
+        final Accessor<Double> x    = new Accessor<>(X);
+        final ConstantDouble   one  = new ConstantDouble(1);
+        final FunctionGene     add  = new FunctionGene(new Add (Double.class));
+        final FunctionGene     mult = new FunctionGene(new Mult(Double.class));
+        final Genome genome =
+            new Genome(() -> null,
+                       Arrays.asList(Double.class),
+                       Arrays.asList(x, one, add, mult));
+        add .setArgs(genome, x.getHandle(), one.getHandle());
+        mult.setArgs(genome, x.getHandle(), add.getHandle());
+
+        final Column column = Program.compile(genome).evaluate(new XBatch(-5, 11))[0];
+        assertEquals(11, column.size());
+        for (int i = -5; i <= 5; i++) {
+            if (genome.getOutputHandle(0).equals(mult.getHandle())) {
+                assertTrue(column instanceof Column.Doubles);
+                assertEquals(Double.valueOf(i * (i + 1.0)), column.get(i + 5));
+            }
+            assertEquals(genome.evaluate(new XContext(i, i), 0),
+                         column.get(i + 5));
+        }
+    }
+
+    /**
+     * Test that accessors which are bound to a slot access their values
+     * via it, however they are evaluated.
+     */
+    public void testBound()
+    {
+        // Only has values by slot
+        class SlotContext
+            extends XContext
+        {
+            public SlotContext(final double x)
+            {
+                super(0, x);
+            }
+
+            @Override
+            public Object access(final Identifier<?> id)
+            {
+                return null;
+            }
+
+            @Override
+            public Object access(final int slot, final Identifier<?> id)
+            {
+                return (slot == 0) ? super.access(id) : access(id);
+            }
+        }
+
+        // x + 1
+        final Accessor<Double> x   = new Accessor<>(X, Double.class, 0);
+        final ConstantDouble   one = new ConstantDouble(1);
+        final FunctionGene     add = new FunctionGene(new Add(Double.class));
+        final Genome genome =
+            new Genome(() -> null,
+                       Arrays.asList(Double.class),
+                       Arrays.asList(x, one, add));
+        add.setArgs(genome, x.getHandle(), one.getHandle());
+        final Object expected =
+            genome.getOutputHandle(0).equals(add.getHandle()) ? 3.0 :
+            genome.getOutputHandle(0).equals(x  .getHandle()) ? 2.0 : 1.0;
+
+        // Both interpreted and as bytecode
+        final Program       program = Program.compile(genome);
+        final Program.Frame frame   = program.newFrame();
+        for (int i=0; i < 2; i++) {
+            program.evaluate(new SlotContext(2.0), frame);
+            assertEquals(expected, frame.getOutput(0));
+            assertTrue(program.generate());
+        }
+
+        // And directly
+        assertEquals(expected, genome.evaluate(new SlotContext(2.0), 0));
+        assertEquals(2.0,      x.evaluate(new SlotContext(2.0), genome));
+
+        // Unbound accessors are bound by their genome's factory
+        final Accessor<Double> y = new Accessor<>(X);
+        final GeneFactory factory =
+            new GeneFactory() {
+                @Override public Gene generate() { return null; }
+                @Override public int slotOf(Identifier<?> id) { return (id == X) ? 0 : -1; }
+            };
+        final Genome bound =
+            new Genome(factory,
+                       Arrays.asList(Double.class),
+                       Arrays.asList(y));
+        assertEquals(2.0, y.evaluate(new SlotContext(2.0), bound));
+    }
+
+    /**
+     * Test that cycles are broken at compile time.
+     */
+    public void testCycle()
+    {
+        final ConstantDouble one  = new ConstantDouble(1);
+        final FunctionGene   add1 = new FunctionGene(new Add(Double.class));
+        final FunctionGene   add2 = new FunctionGene(new Add(Double.class));
+        final Genome genome =
+            new Genome(() -> null,
+                       Arrays.asList(Double.class),
+                       Arrays.asList(one, add1, add2));
+        add1.setArgs(genome, one.getHandle(), add2.getHandle());
+        add2.setArgs(genome, add1.getHandle(), one.getHandle());
+
+        final Program program = Program.compile(genome);
+        final Program.Frame frame = program.newFrame();
+        program.evaluate(new XContext(0, 0), frame);
+        if (!genome.getOutputHandle(0).equals(one.getHandle())) {
+            assertNull(frame.getOutput(0));
+        }
+        assertEquals(genome.evaluate(new XContext(0, 0), 0),
+                     frame.getOutput(0));
+    }
+
+    /**
+     * Test that random genomes compute the same values when compiled as
+     * when evaluated directly.
+     */
+    public void testRandom()
+    {
+        testRandom(false);
+    }
+
+    /**
+     * Test that random genomes compute the same values when compiled
+     * into bytecode as when evaluated directly.
+     */
+    public void testGenerated()
+    {
+        testRandom(true);
+    }
+
+    /**
+     * Test that columns which one program computed are picked up by
+     * another one with the same structure.
+     */
+    public void testShared()
+    {
+        final CachingBatch batch = new CachingBatch(-5, 10);
+        for (int i=0; i < 100; i++) {
+            // The clone has all the same structure but none of the same
+            // objects
+            final Genome   genome = newRandomGenome();
+            final Genome   clone  = genome.clone();
+            final Column[] direct = Program.compile(clone).evaluate(new XBatch(-5, 10));
+            final Column[] first  = Program.compile(genome).evaluate(batch);
+            final Column[] second = Program.compile(clone) .evaluate(batch);
+            for (int j=0; j < 10; j++) {
+                for (int k=0; k < genome.numOutputs(); k++) {
+                    assertTrue(same(direct[k].get(j), first [k].get(j)));
+                    assertTrue(same(direct[k].get(j), second[k].get(j)));
+                }
+            }
+        }
+        assertTrue(batch.myHits > 0);
+    }
+
+    /**
+     * Test that programs whose subexpressions are shared many times over
+     * can still find their columns quickly.
+     */
+    public void testDeepShared()
+    {
+        // x + x, then that plus itself, and so on; there are 2^depth
+        // paths through the graph from the last one, which we want to
+        // be the output
+        final int  depth = 40;
+        List<Gene> genes;
+        Genome     genome;
+        do {
+            genes = new ArrayList<>();
+            genes.add(new Accessor<>(X));
+            for (int i=0; i < depth; i++) {
+                genes.add(new FunctionGene(new Add(Double.class)));
+            }
+            genome = new Genome(() -> null, genes, 100,
+                                Arrays.asList(Double.class), null, 0.1);
+        }
+        while (!genome.getOutputHandle(0).equals(genes.get(depth).getHandle()));
+        for (int i=1; i <= depth; i++) {
+            ((FunctionGene)genes.get(i)).setArgs(genome,
+                                                 genes.get(i - 1).getHandle(),
+                                                 genes.get(i - 1).getHandle());
+        }
+
+        // Would take forever if the keys were compared deeply
+        final CachingBatch batch  = new CachingBatch(-5, 10);
+        final Column[]     first  = Program.compile(genome)        .evaluate(batch);
+        final Column[]     second = Program.compile(genome.clone()).evaluate(batch);
+        for (int j=0; j < 10; j++) {
+            assertTrue(same(first[0].get(j), second[0].get(j)));
+        }
+        assertTrue(batch.myHits > 0);
+    }
+
+    /**
+     * Test that rows where a function has no value count as failures,
+     * however the program is evaluated.
+     */
+    public void testFailures()
+    {
+        // x / x, as longs; this has no value for the row where x is zero
+        List<Gene> genes;
+        Genome     genome;
+        do {
+            genes = Arrays.asList(
+                new Accessor<>(X),
+                new FunctionGene(new NumberCast(Double.class, Long.class)),
+                new FunctionGene(new Div(Long.class))
+            );
+            genome = new Genome(() -> null, genes, 100,
+                                Arrays.asList(Long.class), null, 0.1);
+        }
+        while (!genome.getOutputHandle(0).equals(genes.get(2).getHandle()));
+        ((FunctionGene)genes.get(1)).setArgs(genome, genes.get(0).getHandle());
+        ((FunctionGene)genes.get(2)).setArgs(genome,
+                                             genes.get(1).getHandle(),
+                                             genes.get(1).getHandle());
+
+        // Interpreted, then as bytecode, then over a batch
+        final Program       program = Program.compile(genome);
+        final Program.Frame frame   = program.newFrame();
+        assertTrue(program.toString(),
+                   program.toString().contains("LONG_BINARY"));
+        for (int i=0; i < 3; i++) {
+            final long before = Function.getFailures();
+            if (i < 2) {
+                for (int x = -5; x <= 5; x++) {
+                    program.evaluate(new XContext(x, x), frame);
+                    assertEquals((x == 0) ? null : Long.valueOf(1),
+                                 frame.getOutput(0));
+                }
+                assertTrue(program.generate());
+            }
+            else {
+                final Column column = program.evaluate(new XBatch(-5, 11))[0];
+                for (int j=0; j < 11; j++) {
+                    assertEquals(j == 5, column.isMissing(j));
+                }
+            }
+            assertEquals(before + 1, Function.getFailures());
+        }
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Compare the compiled, batched and direct evaluation of random
+     * genomes.
+     */
+    private void testRandom(final boolean generate)
+    {
+        for (int i=0; i < 200; i++) {
+            final Genome  genome  = newRandomGenome();
+            final Program program = genome.getProgram();
+            if (generate) {
+                assertTrue(program.toString(), program.generate());
+            }
+            final Program.Frame frame = program.newFrame();
+            for (int j=0; j < 10; j++) {
+                final Context context = new XContext(j, j - 5);
+                program.evaluate(context, frame);
+                for (int k=0; k < genome.numOutputs(); k++) {
+                    assertTrue(
+                        genome.toString() + "\n" + program,
+                        Objects.deepEquals(genome.evaluate(context, k),
+                                           frame.getOutput(k))
+                    );
+                }
+            }
+
+            // And the same again, all at once
+            final Column[] columns = program.evaluate(new XBatch(-5, 10));
+            for (int j=0; j < 10; j++) {
+                final Context context = new XContext(j, j - 5);
+                for (int k=0; k < genome.numOutputs(); k++) {
+                    assertTrue(
+                        genome.toString() + "\n" + program,
+                        same(genome.evaluate(context, k), columns[k].get(j))
+                    );
+                }
+            }
+        }
+    }
+
+    /**
+     * Create a random genome, with outputs of each of the primitive
+     * types and strings.
+     */
+    private static Genome newRandomGenome()
+    {
+        // Memory genes are stateful, so we avoid them here
+        final GeneFactory defaults = new DefaultGeneFactory();
+        final GeneFactory factory = () -> {
+            while (true) {
+                final Gene gene = defaults.generate();
+                if (!(gene instanceof MemoryGene)) {
+                    return gene;
+                }
+            }
+        };
+
+        final List<Gene> genes = new ArrayList<>();
+        genes.add(new Accessor<>(X));
+        for (int j=0; j < 50; j++) {
+            genes.add(factory.generate());
+        }
+        return new Genome(factory, genes, 100,
+                          Arrays.asList(Double.class,
+                                        Long.class,
+                                        Boolean.class,
+                                        String.class),
+                          null, 0.1);
+    }
+
+    /**
+     * Whether two values are the same, allowing for the vector kernels
+     * computing some functions slightly differently.
+     */
+    private static boolean same(final Object a, final Object b)
+    {
+        if (a instanceof Double && b instanceof Double) {
+            final double da = (Double)a;
+            final double db = (Double)b;
+            return (Double.compare(da, db) == 0 ||
+                    Math.abs(da - db) <= 1e-9 * Math.max(Math.abs(da),
+                                                         Math.abs(db)));
+        }
+        else {
+            return Objects.deepEquals(a, b);
+        }
+    }
+}
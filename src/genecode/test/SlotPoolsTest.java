@@ -0,0 +1,195 @@
+package genecode.test;
+
+import genecode.SlotPools;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the pools which genomes pick the slots of their genes from.
+ */
+public class SlotPoolsTest
+    extends TestCase
+{
+    /**
+     * The numbers of the types which we use.
+     */
+    private static final int DOUBLE = SlotPools.typeOf(Double .class);
+    private static final int LONG   = SlotPools.typeOf(Long   .class);
+    private static final int STRING = SlotPools.typeOf(String .class);
+    private static final int BOOL   = SlotPools.typeOf(Boolean.class);
+
+    /**
+     * Check that the pool of all the slots holds just the given ones.
+     */
+    private static void assertAll(final SlotPools  pools,
+                                  final Integer... slots)
+    {
+        final Set<Integer> got = new HashSet<>();
+        for (int i=0; i < pools.size(); i++) {
+            assertTrue("Repeated " + pools.get(i), got.add(pools.get(i)));
+        }
+        assertEquals(new HashSet<>(Arrays.asList(slots)), got);
+        assertEquals(slots.length == 0, pools.isEmpty());
+    }
+
+    /**
+     * Check that picking from the pool for a type gives back just the
+     * given slots. There are few enough that we should see all of them.
+     */
+    private static void assertPicks(final SlotPools  pools,
+                                    final int        type,
+                                    final Integer... slots)
+    {
+        final Set<Integer> got = new HashSet<>();
+        for (int i=0; i < 1000; i++) {
+            final int slot = pools.pick(type);
+            if (slot < 0) {
+                break;
+            }
+            got.add(slot);
+        }
+        assertEquals(new HashSet<>(Arrays.asList(slots)), got);
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Test that types are numbered consistently.
+     */
+    public void testTypes()
+    {
+        assertEquals(DOUBLE, SlotPools.typeOf(Double.class));
+        assertTrue(DOUBLE >= 0);
+        assertTrue(DOUBLE != LONG);
+        assertTrue(DOUBLE != STRING);
+        assertTrue(LONG   != STRING);
+    }
+
+    /**
+     * Test picking slots by type.
+     */
+    public void testPick()
+    {
+        final SlotPools pools = new SlotPools();
+        assertAll  (pools);
+        assertPicks(pools, DOUBLE);
+
+        pools.add(0, DOUBLE);
+        pools.add(3, LONG);
+        pools.add(1, DOUBLE);
+        pools.add(7, STRING);
+        assertAll  (pools, 0, 1, 3, 7);
+        assertPicks(pools, DOUBLE, 0, 1);
+        assertPicks(pools, LONG,   3);
+        assertPicks(pools, STRING, 7);
+        assertPicks(pools, BOOL);
+
+        try {
+            pools.add(3, STRING);
+            fail("Added a slot twice");
+        }
+        catch (IllegalArgumentException e) {
+            // Good
+        }
+    }
+
+    /**
+     * Test that removing slots, which moves the last one in each of its
+     * pools into its place, keeps track of where everything is.
+     */
+    public void testRemove()
+    {
+        // Interleave the types so that the pools are in different orders
+        final SlotPools pools = new SlotPools();
+        for (int slot=0; slot < 12; slot++) {
+            pools.add(slot, (slot % 3 == 0) ? DOUBLE : LONG);
+        }
+        assertPicks(pools, DOUBLE, 0, 3, 6, 9);
+        assertPicks(pools, LONG,   1, 2, 4, 5, 7, 8, 10, 11);
+
+        // The first of each, so the last of each is moved to the front,
+        // and then those moved slots, which needs to know where they went
+        pools.remove(0);
+        pools.remove(1);
+        assertPicks(pools, DOUBLE, 3, 6, 9);
+        assertPicks(pools, LONG,   2, 4, 5, 7, 8, 10, 11);
+        pools.remove(9);
+        pools.remove(11);
+        assertAll  (pools, 2, 3, 4, 5, 6, 7, 8, 10);
+        assertPicks(pools, DOUBLE, 3, 6);
+        assertPicks(pools, LONG,   2, 4, 5, 7, 8, 10);
+
+        // The last of a pool
+        pools.remove(10);
+        assertPicks(pools, LONG, 2, 4, 5, 7, 8);
+
+        // Slots may be added back, with another type
+        pools.add(0, STRING);
+        pools.add(9, DOUBLE);
+        assertAll  (pools, 0, 2, 3, 4, 5, 6, 7, 8, 9);
+        assertPicks(pools, DOUBLE, 3, 6, 9);
+        assertPicks(pools, STRING, 0);
+
+        // Empty out everything
+        for (int slot : new int[] { 6, 0, 2, 3, 9, 4, 5, 7, 8 }) {
+            pools.remove(slot);
+        }
+        assertAll  (pools);
+        assertPicks(pools, DOUBLE);
+        assertPicks(pools, LONG);
+        assertPicks(pools, STRING);
+
+        for (int slot : new int[] { -1, 0, 100 }) {
+            try {
+                pools.remove(slot);
+                fail("Removed slot " + slot);
+            }
+            catch (IllegalArgumentException e) {
+                // Good
+            }
+        }
+    }
+
+    /**
+     * Test that changing a copy of the pools doesn't change the original,
+     * and the other way around.
+     */
+    public void testCopy()
+    {
+        final SlotPools original = new SlotPools();
+        for (int slot=0; slot < 6; slot++) {
+            original.add(slot, (slot % 2 == 0) ? DOUBLE : LONG);
+        }
+
+        // The copy changing
+        final SlotPools copy = original.copy();
+        copy.remove(0);
+        copy.add(6, STRING);
+        assertAll  (copy,     1, 2, 3, 4, 5, 6);
+        assertAll  (original, 0, 1, 2, 3, 4, 5);
+        assertPicks(copy,     DOUBLE, 2, 4);
+        assertPicks(original, DOUBLE, 0, 2, 4);
+        assertPicks(copy,     STRING, 6);
+        assertPicks(original, STRING);
+
+        // And the original changing, after a copy which is not changed
+        final SlotPools unchanged = original.copy();
+        original.remove(1);
+        original.remove(4);
+        assertAll  (original,  0, 2, 3, 5);
+        assertAll  (unchanged, 0, 1, 2, 3, 4, 5);
+        assertAll  (copy,      1, 2, 3, 4, 5, 6);
+        assertPicks(unchanged, LONG, 1, 3, 5);
+        assertPicks(original,  LONG, 3, 5);
+        assertPicks(copy,      LONG, 1, 3, 5);
+
+        // Which is still fine to change after the original has
+        unchanged.remove(5);
+        assertAll  (unchanged, 0, 1, 2, 3, 4);
+        assertAll  (original,  0, 2, 3, 5);
+    }
+}
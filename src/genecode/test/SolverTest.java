@@ -0,0 +1,506 @@
+package genecode.test;
+
+import genecode.Biome;
+import genecode.Context.Identifier;
+import genecode.Genome;
+import genecode.Solver;
+import genecode.Solver.SolverContext;
+import genecode.Solver.Topology;
+import genecode.Solver.Variable;
+import genecode.StringUtil;
+import genecode.function.Compare.GT;
+import genecode.function.Function;
+import genecode.gene.Accessor;
+import genecode.gene.ConstantDouble;
+import genecode.gene.FunctionGene;
+import genecode.gene.Gene;
+import genecode.gene.GeneFactory;
+import genecode.gene.MemoryGene;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleFunction;
+import java.util.function.Supplier;
+
+import junit.framework.TestCase;
+
+/**
+ * Test evolving the solver's biomes as islands.
+ */
+public class SolverTest
+    extends TestCase
+{
+    /**
+     * A biome which notes when it first receives any migrants.
+     */
+    private static class RecordingBiome
+        extends Biome
+    {
+        /**
+         * How many generations we have bred.
+         */
+        public volatile int generations;
+
+        /**
+         * The generation before which we first took in migrants, or
+         * {@code -1} if we have not.
+         */
+        public volatile int firstArrival = -1;
+
+        /**
+         * CTOR.
+         */
+        public RecordingBiome(final List<Genome> seed)
+        {
+            super(seed.size(), 0.25, 0.10, 0.50, 0.50, seed,
+                  () -> seed.get(0).clone());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void nextGeneration(final Genome.Health genomeHealth)
+        {
+            super.nextGeneration(genomeHealth);
+            generations++;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void immigrate(final Collection<Genome> migrants,
+                              final Genome.Health      genomeHealth)
+        {
+            super.immigrate(migrants, genomeHealth);
+            if (!migrants.isEmpty() && firstArrival < 0) {
+                firstArrival = generations;
+            }
+        }
+    }
+
+    /**
+     * The thing which we solve for, {@code 2x + 1}.
+     */
+    private static class Line
+        extends Function
+    {
+        public Line()
+        {
+            super(Arrays.asList(Double.class), Double.class);
+        }
+
+        @Override
+        protected Object safeCall(final Object[] args)
+        {
+            return 2 * (Double)args[0] + 1;
+        }
+    }
+
+    /**
+     * The thing which we classify by, {@code x > 0}.
+     */
+    private static class Positive
+        extends Function
+    {
+        public Positive()
+        {
+            super(Arrays.asList(Double.class), Boolean.class);
+        }
+
+        @Override
+        protected Object safeCall(final Object[] args)
+        {
+            return (Double)args[0] > 0;
+        }
+    }
+
+    /**
+     * Arrays computed from {@code x}. These are only ever equal to
+     * themselves, so that genomes don't share their columns.
+     */
+    private static class Elements
+        extends Function
+    {
+        private final DoubleFunction<Object[]> myElements;
+
+        public Elements(final Class<?>                 type,
+                        final DoubleFunction<Object[]> elements)
+        {
+            super(Arrays.asList(Double.class), type);
+            myElements = elements;
+        }
+
+        @Override
+        protected Object safeCall(final Object[] args)
+        {
+            return myElements.apply((Double)args[0]);
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            return (o == this);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return System.identityHashCode(this);
+        }
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Create a solver over a single variable.
+     */
+    private static Solver solver(final int numBiomes, final int biomeSize)
+    {
+        return solver(new Line(), 0.5, 1.0, numBiomes, biomeSize);
+    }
+
+    /**
+     * Create a solver over a single variable, {@code x}, which takes
+     * values from {@code -50} to {@code 49}.
+     */
+    private static Solver solver(final Function target,
+                                 final double   coverageFactor,
+                                 final double   sizePenaltyFactor,
+                                 final int      numBiomes,
+                                 final int      biomeSize)
+    {
+        final Double[] values = new Double[100];
+        for (int i=0; i < values.length; i++) {
+            values[i] = i - 50.0;
+        }
+
+        // Memory genes would make the health depend on the order of
+        // evaluation
+        final List<Supplier<Gene>> suppliers = new ArrayList<>();
+        for (Supplier<Gene> supplier : GeneFactory.SUPPLIERS) {
+            if (!(supplier.get() instanceof MemoryGene)) {
+                suppliers.add(supplier);
+            }
+        }
+
+        return new Solver(
+            Collections.singletonList(
+                new Variable<>(new Identifier<>("x", Double.class), values)
+            ),
+            target,
+            new SolverContext(),
+            coverageFactor, sizePenaltyFactor, suppliers, numBiomes, biomeSize
+        );
+    }
+
+    /**
+     * Check that all the biomes of a solver are full of healthy genomes.
+     */
+    private static void assertSane(final Solver solver, final int biomeSize)
+    {
+        for (Biome biome : solver.getBiomes()) {
+            assertEquals(biomeSize, biome.getGenomes().size());
+            for (Genome genome : biome.getGenomes()) {
+                assertNotNull(genome);
+                final double health = solver.healthOf(genome);
+                assertTrue(String.valueOf(health),
+                           Double.isNaN(health) || health <= 1.0);
+            }
+        }
+    }
+
+    /**
+     * Create a genome which computes {@code x > value}.
+     */
+    private static Genome isMore(final double value)
+    {
+        List<Gene> genes;
+        Genome     genome;
+        do {
+            genes = Arrays.asList(
+                new Accessor<>(new Identifier<>("x", Double.class)),
+                new ConstantDouble(value),
+                new FunctionGene(new GT(Double.class))
+            );
+            genome = new Genome(() -> null,
+                                Arrays.asList(Boolean.class),
+                                genes);
+        }
+        while (!genome.getOutputHandle(0).equals(genes.get(2).getHandle()));
+        ((FunctionGene)genes.get(2)).setArgs(genome,
+                                             genes.get(0).getHandle(),
+                                             genes.get(1).getHandle());
+        return genome;
+    }
+
+    /**
+     * Create a genome which computes the given arrays from {@code x}.
+     */
+    private static Genome elements(final Class<?>                 type,
+                                   final DoubleFunction<Object[]> elements)
+    {
+        final Gene         x     = new Accessor<>(new Identifier<>("x", Double.class));
+        final FunctionGene array = new FunctionGene(new Elements(type, elements));
+        final Genome genome =
+            new Genome(() -> null,
+                       Arrays.asList(type),
+                       Arrays.asList(x, array));
+        array.setArgs(genome, x.getHandle());
+        return genome;
+    }
+
+    // ----------------------------------------------------------------------
+
+    /**
+     * Test evolving with each topology, with fewer workers than islands
+     * and with more.
+     */
+    public void testEvolve()
+    {
+        for (Topology topology : Topology.values()) {
+            for (int numWorkers : new int[] { 1, 4 }) {
+                final Solver solver = solver(3, 20);
+                solver.evolve(numWorkers, 4, 0.01, 1, 2, topology);
+                assertSane(solver, 20);
+            }
+        }
+
+        try {
+            solver(1, 5).evolve(1, 1, 0.01, 0, 1, Topology.RING);
+            fail("Evolved with a zero migration interval");
+        }
+        catch (IllegalArgumentException e) {
+            // Good
+        }
+        try {
+            solver(1, 5).evolve(1, 1, 0.01, 1, -1, Topology.RING);
+            fail("Evolved with a negative migration size");
+        }
+        catch (IllegalArgumentException e) {
+            // Good
+        }
+    }
+
+    /**
+     * Test that the islands take turns, so that even with a single worker
+     * they each get migrants from the others while they are still
+     * evolving.
+     */
+    public void testInterleaved()
+    {
+        final int generations = 5;
+        for (Topology topology : Topology.values()) {
+            final Solver solver = solver(2, 10);
+            final List<RecordingBiome> islands = new ArrayList<>();
+            for (int i=0; i < solver.getBiomes().size(); i++) {
+                final RecordingBiome island =
+                    new RecordingBiome(
+                        new ArrayList<>(solver.getBiomes().get(i).getGenomes())
+                    );
+                solver.getBiomes().set(i, island);
+                islands.add(island);
+            }
+
+            solver.evolve(1, generations, 0.01, 1, 1, topology);
+
+            for (RecordingBiome island : islands) {
+                assertEquals(generations, island.generations);
+                assertTrue(topology + ": " + island.firstArrival,
+                           island.firstArrival >= 0 &&
+                           island.firstArrival < generations);
+            }
+            assertSane(solver, 10);
+        }
+    }
+
+    /**
+     * Test that boolean outputs are scored by their accuracy, whether or
+     * not the batches which they are evaluated in start on a word.
+     */
+    public void testBooleanAccuracy()
+    {
+        final Double[] values = new Double[200];
+        for (int i=0; i < values.length; i++) {
+            values[i] = i - 100.0;
+        }
+        final Solver solver =
+            new Solver(
+                Collections.singletonList(
+                    new Variable<>(new Identifier<>("x", Double.class), values)
+                ),
+                new Positive(),
+                new SolverContext(),
+                0.0, 0.0, GeneFactory.SUPPLIERS, 1, 1
+            );
+
+        // Whole words, words and a bit, and not on words at all
+        for (int batchSize : new int[] { 1024, 64, 50, 7 }) {
+            solver.setBatchSize(batchSize);
+
+            // x > 0 is right everywhere, x > 10 is wrong for 1 to 10
+            assertEquals(1.0,  solver.healthOf(isMore(0)),  1e-12);
+            assertEquals(0.95, solver.healthOf(isMore(10)), 1e-12);
+            assertEquals(0.5,  solver.healthOf(isMore(-100)), 1e-12);
+        }
+
+        try {
+            solver.setBatchSize(0);
+            fail("Set a zero batch size");
+        }
+        catch (IllegalArgumentException e) {
+            // Good
+        }
+    }
+
+    /**
+     * Test that array outputs are scored element by element, and scaled
+     * down by how much their lengths differ.
+     */
+    public void testArrays()
+    {
+        // Numbers are scored by R^2, which is perfect over the elements
+        // which line up with the target
+        final DoubleFunction<Object[]> doubles =
+            x -> new Double[] { x, x + 1, x + 2 };
+        final DoubleFunction<Object[]> longs =
+            x -> new Long[] { (long)x, (long)x * 2, 7L };
+        for (Object[] test : new Object[][] {
+                 { Double[].class, doubles },
+                 { Long  [].class, longs   },
+             })
+        {
+            final Class<?> type = (Class<?>)test[0];
+            @SuppressWarnings("unchecked")
+            final DoubleFunction<Object[]> target =
+                (DoubleFunction<Object[]>)test[1];
+            final Solver solver =
+                solver(new Elements(type, target), 0.0, 0.0, 1, 1);
+
+            // The same, short by one, and long by one
+            assertEquals(type.toString(), 1.0,
+                         solver.healthOf(elements(type, target)), 1e-12);
+            assertEquals(type.toString(), 2.0 / 3.0,
+                         solver.healthOf(
+                             elements(type, x -> Arrays.copyOf(target.apply(x), 2))
+                         ), 1e-12);
+            assertEquals(type.toString(), 3.0 / 4.0,
+                         solver.healthOf(
+                             elements(type, x -> Arrays.copyOf(target.apply(x), 4))
+                         ), 1e-12);
+
+            // Nothing lining up is as bad as it gets
+            assertEquals(type.toString(), 0.0,
+                         solver.healthOf(
+                             elements(type, x -> Arrays.copyOf(target.apply(x), 0))
+                         ), 1e-12);
+        }
+
+        // Strings are scored by how similar they are, else by equality
+        final DoubleFunction<Object[]> strings =
+            x -> new String[] { "abcd", "efgh" };
+        final Solver solver =
+            solver(new Elements(String[].class, strings), 0.0, 0.0, 1, 1);
+        final double similar = 1.0 - StringUtil.distance("efgh", "efgx");
+        assertEquals(1.0,
+                     solver.healthOf(elements(String[].class, strings)),
+                     1e-12);
+        assertEquals((1.0 + similar) / 2,
+                     solver.healthOf(
+                         elements(String[].class,
+                                  x -> new String[] { "abcd", "efgx" })
+                     ), 1e-12);
+        assertEquals((1.0 + similar) / 2 * 2 / 3,
+                     solver.healthOf(
+                         elements(String[].class,
+                                  x -> new String[] { "abcd", "efgx", "ijkl" })
+                     ), 1e-12);
+        assertEquals(0.5,
+                     solver.healthOf(
+                         elements(String[].class,
+                                  x -> new String[] { "abcd" })
+                     ), 1e-12);
+
+        // Empty arrays which should be empty are perfect, but not ones
+        // which should have something in them
+        final DoubleFunction<Object[]> empty = x -> new Double[0];
+        final Solver emptySolver =
+            solver(new Elements(Double[].class, empty), 0.0, 0.0, 1, 1);
+        assertEquals(1.0,
+                     emptySolver.healthOf(elements(Double[].class, empty)),
+                     1e-12);
+        assertEquals(0.0,
+                     emptySolver.healthOf(elements(Double[].class, doubles)),
+                     1e-12);
+        assertEquals(0.0,
+                     solver(new Elements(Double[].class, doubles), 0.0, 0.0, 1, 1)
+                         .healthOf(elements(Double[].class, empty)),
+                     1e-12);
+    }
+
+    /**
+     * Test that the healthiest genomes leave a biome, and that they replace
+     * the least healthy ones in another.
+     */
+    public void testMigration()
+    {
+        final GeneFactory factory = () -> new ConstantDouble(1);
+        final Map<Genome,Double> healths = new IdentityHashMap<>();
+        final List<Genome> seed = new ArrayList<>();
+        for (int i=0; i < 6; i++) {
+            final Genome genome =
+                new Genome(factory,
+                           Arrays.asList(Double.class),
+                           Arrays.asList(new ConstantDouble(i)));
+            healths.put(genome, (double)i);
+            seed.add(genome);
+        }
+        final Genome.Health health =
+            new Genome.Health() {
+                @Override
+                public double healthOf(final Genome genome)
+                {
+                    return healths.getOrDefault(genome, -1.0);
+                }
+
+                @Override
+                public double coverage(final Genome genome)
+                {
+                    return 1.0;
+                }
+            };
+
+        // Healthiest first, and copies
+        final Biome source = new Biome(6, 0.25, 0.10, 0.50, 0.50, seed, null);
+        final List<Genome> emigrants = source.emigrants(2, health);
+        assertEquals(2, emigrants.size());
+        for (int i=0; i < emigrants.size(); i++) {
+            final Genome original = source.getGenomes().get(i);
+            assertEquals(5.0 - i, healths.get(original));
+            assertNotSame(original, emigrants.get(i));
+        }
+        assertEquals(6, source.emigrants(10, health).size());
+        assertTrue(source.emigrants(0, health).isEmpty());
+
+        // The migrants take the place of the least healthy
+        final Biome target = new Biome(6, 0.25, 0.10, 0.50, 0.50, seed, null);
+        for (int i=0; i < emigrants.size(); i++) {
+            healths.put(emigrants.get(i), 10.0 + i);
+        }
+        target.immigrate(emigrants, health);
+        final List<Genome> genomes = target.getGenomes();
+        assertEquals(6, genomes.size());
+        assertTrue(genomes.containsAll(emigrants));
+        assertFalse(genomes.contains(seed.get(0)));
+        assertFalse(genomes.contains(seed.get(1)));
+        for (int i=2; i < seed.size(); i++) {
+            assertTrue(genomes.contains(seed.get(i)));
+        }
+    }
+}
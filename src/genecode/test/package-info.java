@@ -0,0 +1,4 @@
+/**
+ * <p>Unit tests for the core classes.</p>
+ */
+package genecode.test;